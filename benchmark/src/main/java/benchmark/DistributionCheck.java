@@ -0,0 +1,170 @@
+package benchmark;
+
+import model.ExponentialSampler;
+import model.RandomStream;
+
+import java.util.Arrays;
+
+/**
+ * Statistical validation of the ziggurat exponential sampler against inverse transform sampling
+ * Runs a set of goodness-of-fit tests and exits with status 1 if any of them fail.
+ */
+public class DistributionCheck {
+    private static final int SAMPLES = 2000000;
+    private static final double ALPHA = 0.001; //per test, low to keep false alarms rare
+    private static final double ZIGGURAT_R = 7.697117470131487;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 4005;
+        double rate = 0.217182777;
+
+        double[] ziggurat = new double[SAMPLES];
+        ExponentialSampler sampler = new ExponentialSampler(new RandomStream(seed), rate);
+        for (int i = 0; i < SAMPLES; i++) {
+            ziggurat[i] = sampler.next();
+        }
+        double[] inverse = new double[SAMPLES];
+        RandomStream stream = new RandomStream(seed + 1);
+        for (int i = 0; i < SAMPLES; i++) {
+            inverse[i] = -Math.log(1 - stream.nextDouble()) / rate;
+        }
+
+        System.out.println("Exponential sampler validation, rate " + rate + ", " + SAMPLES + " samples, seed " + seed);
+        checkMoments("ziggurat", ziggurat, rate);
+        checkMoments("inverse transform", inverse, rate);
+
+        Arrays.sort(ziggurat);
+        Arrays.sort(inverse);
+        checkOneSampleKs("ziggurat", ziggurat, rate);
+        checkOneSampleKs("inverse transform", inverse, rate);
+        checkTwoSampleKs(ziggurat, inverse);
+        checkChiSquare("ziggurat", ziggurat, rate, 100);
+        checkTail("ziggurat", ziggurat, rate, ZIGGURAT_R / rate);
+        checkTail("ziggurat", ziggurat, rate, 0.5 * ZIGGURAT_R / rate);
+
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Compare the sample mean, variance and skewness to 1/rate, 1/rate^2 and 2 with a z-test on the mean
+     */
+    private static void checkMoments(String name, double[] samples, double rate) {
+        double mean = 0;
+        for (double x : samples) {
+            mean += x;
+        }
+        mean /= samples.length;
+        double m2 = 0;
+        double m3 = 0;
+        for (double x : samples) {
+            double d = x - mean;
+            m2 += d * d;
+            m3 += d * d * d;
+        }
+        m2 /= samples.length;
+        m3 /= samples.length;
+        double skewness = m3 / Math.pow(m2, 1.5);
+
+        double z = (mean - 1 / rate) / (1 / rate / Math.sqrt(samples.length));
+        report(name + " mean", Math.abs(z) < 3.29,
+                String.format("mean %.5f (expected %.5f, z %.3f), variance %.5f (expected %.5f), skewness %.4f (expected 2)",
+                        mean, 1 / rate, z, m2, 1 / (rate * rate), skewness));
+    }
+
+    /**
+     * Kolmogorov-Smirnov test against the exact exponential CDF
+     */
+    private static void checkOneSampleKs(String name, double[] sorted, double rate) {
+        int n = sorted.length;
+        double d = 0;
+        for (int i = 0; i < n; i++) {
+            double cdf = 1 - Math.exp(-rate * sorted[i]);
+            d = Math.max(d, Math.max((i + 1.0) / n - cdf, cdf - (double) i / n));
+        }
+        double p = kolmogorovPValue(d, n);
+        report(name + " one-sample KS", p > ALPHA, String.format("D %.6f, p %.4f", d, p));
+    }
+
+    /**
+     * Two-sample Kolmogorov-Smirnov test between the ziggurat and inverse transform samples
+     */
+    private static void checkTwoSampleKs(double[] first, double[] second) {
+        int i = 0;
+        int j = 0;
+        double d = 0;
+        while (i < first.length && j < second.length) {
+            double x = Math.min(first[i], second[j]);
+            while (i < first.length && first[i] <= x) i++;
+            while (j < second.length && second[j] <= x) j++;
+            d = Math.max(d, Math.abs((double) i / first.length - (double) j / second.length));
+        }
+        double effective = (double) first.length * second.length / (first.length + second.length);
+        double p = kolmogorovPValue(d, effective);
+        report("two-sample KS", p > ALPHA, String.format("D %.6f, p %.4f", d, p));
+    }
+
+    /**
+     * Chi-square test over equiprobable bins
+     */
+    private static void checkChiSquare(String name, double[] sorted, double rate, int bins) {
+        double expected = (double) sorted.length / bins;
+        double chiSquare = 0;
+        int index = 0;
+        for (int b = 0; b < bins; b++) {
+            double upper = b == bins - 1 ? Double.POSITIVE_INFINITY : -Math.log(1 - (b + 1.0) / bins) / rate;
+            int count = 0;
+            while (index < sorted.length && sorted[index] < upper) {
+                index++;
+                count++;
+            }
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        //Wilson-Hilferty approximation of the chi-square quantile for 1 - ALPHA
+        int df = bins - 1;
+        double h = 2.0 / (9 * df);
+        double critical = df * Math.pow(1 - h + 3.090232 * Math.sqrt(h), 3);
+        report(name + " chi-square", chiSquare < critical,
+                String.format("chi2 %.2f with %d df, critical %.2f", chiSquare, df, critical));
+    }
+
+    /**
+     * Compare the fraction of samples beyond a point to the exact tail probability
+     */
+    private static void checkTail(String name, double[] sorted, double rate, double point) {
+        int index = Arrays.binarySearch(sorted, point);
+        if (index < 0)
+            index = -index - 1;
+        int beyond = sorted.length - index;
+        double probability = Math.exp(-rate * point);
+        double expected = probability * sorted.length;
+        double z = (beyond - expected) / Math.sqrt(expected * (1 - probability));
+        report(String.format("%s tail beyond %.3f", name, point), Math.abs(z) < 3.29,
+                String.format("%d samples (expected %.1f, z %.3f)", beyond, expected, z));
+    }
+
+    /**
+     * Asymptotic p-value of the Kolmogorov distribution with Stephens' small sample correction
+     */
+    private static double kolmogorovPValue(double d, double n) {
+        double sqrtN = Math.sqrt(n);
+        double lambda = (sqrtN + 0.12 + 0.11 / sqrtN) * d;
+        double sum = 0;
+        for (int k = 1; k <= 100; k++) {
+            double term = Math.exp(-2 * k * k * lambda * lambda);
+            sum += (k % 2 == 1 ? 2 : -2) * term;
+            if (term < 1e-12)
+                break;
+        }
+        return Math.max(0, Math.min(1, sum));
+    }
+
+    private static void report(String check, boolean passed, String detail) {
+        if (!passed)
+            failures++;
+        System.out.printf("%-6s %-40s %s%n", passed ? "PASS" : "FAIL", check, detail);
+    }
+}
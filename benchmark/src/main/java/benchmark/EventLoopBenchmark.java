@@ -0,0 +1,105 @@
+package benchmark;
+
+import model.BatchSimulation;
+import model.CompiledLine;
+import model.CompiledSimulation;
+import model.Insp1Routing;
+import model.Insp1RoutingP1First;
+import model.Insp1RoutingRotatingPriority;
+import model.LineModel;
+import model.ModelCompiler;
+import model.Simulation;
+import model.SimulationOutput;
+import model.SimulationScenario;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Events per second of the full event loop for each inspector 1 routing
+ * The events counter is the figure to track, the ops figure is whole runs per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventLoopBenchmark {
+    @Param({"P1First", "RotatingPriority"})
+    public String routing;
+
+    @Param({"10000"})
+    public int products;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private Supplier<Insp1Routing> routingFactory;
+    private CompiledLine compiledLine;
+    private long seed;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class EventCounter {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        switch (routing) {
+            case "P1First":
+                routingFactory = Insp1RoutingP1First::new;
+                break;
+            case "RotatingPriority":
+                routingFactory = Insp1RoutingRotatingPriority::new;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown routing: " + routing);
+        }
+        compiledLine = ModelCompiler.compile(LineModel.builtIn(), routingFactory);
+    }
+
+    @Benchmark
+    public SimulationOutput runSimulation(EventCounter counter) {
+        //New seed each run so the JIT can't specialise on one sample path
+        Simulation simulation = new Simulation(new SimulationScenario(seed++, products, routingFactory, false, false, false));
+        SimulationOutput output = simulation.runSimulation();
+        counter.events += simulation.getNumberEvents();
+        return output;
+    }
+
+    /**
+     * The same runs with the event loop generated for the line and routing
+     */
+    @Benchmark
+    public SimulationOutput runCompiled(EventCounter counter) {
+        CompiledSimulation simulation = compiledLine.create(new SimulationScenario(seed++, products, routingFactory, false, false, false));
+        SimulationOutput output = simulation.runSimulation();
+        counter.events += simulation.getNumberEvents();
+        return output;
+    }
+
+    /**
+     * The same runs in lock step with BatchSimulation, batchSize seeds per operation
+     */
+    @Benchmark
+    public List<SimulationOutput> runBatch(EventCounter counter) {
+        List<SimulationScenario> scenarios = new ArrayList<>(batchSize);
+        for (int r = 0; r < batchSize; r++) {
+            scenarios.add(new SimulationScenario(seed++, products, routingFactory, false, false, false));
+        }
+        BatchSimulation batch = new BatchSimulation(scenarios);
+        List<SimulationOutput> outputs = batch.runSimulation();
+        counter.events += batch.getNumberEvents();
+        return outputs;
+    }
+}
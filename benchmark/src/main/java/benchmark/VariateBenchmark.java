@@ -0,0 +1,79 @@
+package benchmark;
+
+import model.InputModel;
+import model.LineModel;
+import model.SamplingMethod;
+import model.SimulationHistoricalData;
+import model.SimulationRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of single service time draws from the random and historical generators
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariateBenchmark {
+    private SimulationRandom random;
+    private SimulationHistoricalData historical;
+    private SimulationRandom inverseCdf;
+    private SimulationRandom alias;
+    private SimulationRandom kernel;
+    private int ws1;
+    private int servinsp1;
+
+    @Setup
+    public void setup() {
+        random = new SimulationRandom(0);
+        historical = new SimulationHistoricalData(0);
+        LineModel model = LineModel.builtIn();
+        inverseCdf = new SimulationRandom(model, 0, 0, SamplingMethod.Ziggurat, InputModel.InverseCdf);
+        alias = new SimulationRandom(model, 0, 0, SamplingMethod.Ziggurat, InputModel.Alias);
+        kernel = new SimulationRandom(model, 0, 0, SamplingMethod.Ziggurat, InputModel.Kernel);
+        ws1 = model.getWorkstationSource(0);
+        servinsp1 = model.getInspectorSources(0)[0];
+    }
+
+    /**
+     * Inverse transform reference for the buffered ziggurat sampler behind nextWs1Random
+     */
+    @Benchmark
+    public double nextExponential() {
+        return random.NextExponential(ws1, 0.217182777);
+    }
+
+    @Benchmark
+    public double nextWs1Random() {
+        return random.nextService(ws1);
+    }
+
+    @Benchmark
+    public double nextWs1Historical() {
+        return historical.nextService(ws1);
+    }
+
+    @Benchmark
+    public double nextServinsp1Historical() {
+        return historical.nextService(servinsp1);
+    }
+
+    @Benchmark
+    public double nextWs1InverseCdf() {
+        return inverseCdf.nextService(ws1);
+    }
+
+    @Benchmark
+    public double nextWs1Alias() {
+        return alias.nextService(ws1);
+    }
+
+    @Benchmark
+    public double nextWs1Kernel() {
+        return kernel.nextService(ws1);
+    }
+}
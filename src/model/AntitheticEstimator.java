@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * Mean of a metric over antithetic pairs of runs, see SamplingMethod.Antithetic
+ * Each pair average is one observation. The variance reduction compares its variance with that of
+ * the average of two independent runs, estimated from the runs of the pairs taken one at a time.
+ */
+public class AntitheticEstimator {
+    private final SimulationMetric metric;
+    private final WelfordAccumulator pairs = new WelfordAccumulator();
+    private final WelfordAccumulator runs = new WelfordAccumulator();
+
+    public AntitheticEstimator(SimulationMetric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @param run The InverseTransform run of a pair
+     * @param mirror The Antithetic run with the same seed and replication
+     */
+    public void add(SimulationOutput run, SimulationOutput mirror) {
+        double first = metric.valueOf(run);
+        double second = metric.valueOf(mirror);
+        pairs.add((first + second) / 2);
+        runs.add(first);
+        runs.add(second);
+    }
+
+    public SimulationMetric getMetric() {
+        return metric;
+    }
+
+    public long getPairs() {
+        return pairs.getCount();
+    }
+
+    public double getMean() {
+        return pairs.getMean();
+    }
+
+    public double getHalfWidth(double confidence) {
+        return pairs.getHalfWidth(confidence);
+    }
+
+    /**
+     * @return Correlation of the two runs of a pair, negative when the pairing helps
+     */
+    public double getCorrelation() {
+        return 2 * pairs.getVariance() / runs.getVariance() - 1;
+    }
+
+    /**
+     * @return Fraction of the variance of independent pairs removed, negative if the pairing made it worse
+     */
+    public double getVarianceReduction() {
+        return 1 - pairs.getVariance() / (runs.getVariance() / 2);
+    }
+}
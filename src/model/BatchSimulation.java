@@ -0,0 +1,447 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs many replications of one design in lock step, one event of every replication per pass
+ * State is kept in structure-of-arrays form: one flat array per state variable, indexed by
+ * element * replications + replication, so every pass walks the same few arrays for the whole batch
+ * instead of one object graph per run. Each station has at most one pending event, so the future
+ * event list of a replication is just its column of station event times, with no heap to maintain.
+ * Batches of a few dozen replications keep the state and the sampler buffers in cache.
+ *
+ * Outputs equal those of Simulation for the same scenarios, without the station metrics.
+ * Tracing, state printing, checkpoints and warm-up detection are not supported.
+ */
+public class BatchSimulation {
+    private static final double IDLE = Double.POSITIVE_INFINITY; //event time of a station with no pending event
+
+    private final int replications;
+    private final List<SimulationScenario> scenarios;
+    private final SimulationRandom[] simRandom;
+    private final Insp1Routing[] routings;
+    private final int totalProducts;
+    private final boolean useInitialization;
+    private final int initializationLength = 100;
+
+    //Line topology, copied out of the model
+    private final int inspectorCount;
+    private final int workstationCount;
+    private final int stationCount; //inspectors, then workstations
+    private final int bufferCount;
+    private final int serviceSourceCount;
+    private final int[][] componentBuffers;
+    private final int[][] inspectorComponents;
+    private final int[][] inspectorSources;
+    private final int[] workstationBufferStart;
+    private final int[] workstationBufferEnd;
+    private final int[] workstationSource;
+    private final int[] bufferWorkstation;
+    private final int[] bufferCapacities;
+    private final int[] routingLevels; //scratch for the routing, holds the candidate levels of one replication
+    private final String[] productNames;
+    private final String[] inspectorNames;
+
+    //Per replication
+    private final double[] clock;
+    private final double[] lastEventTime;
+    private final long[] numberEvents;
+    private final int[] numberProducts;
+    private final int[] holdCount;
+    private final long[] sequence; //events scheduled so far, orders events at the same time as the event lists do
+
+    //Per station and replication
+    private final double[] eventTime;
+    private final long[] eventOrder; //sequence number of the pending event
+
+    //Per inspector and replication, components are -1 if none
+    //Only inspectors blocked by a full buffer are inactive, active time is summed event by event as in Simulation
+    private final int[] inspectorComponent;
+    private final int[] inspectorHold;
+    private final double[] activeTime;
+
+    //Per buffer and replication
+    private final int[] bufferLevels;
+
+    //Per workstation and replication
+    private final int[] numberProduced;
+
+    //Initialization snapshot per replication, and per workstation or inspector and replication
+    private final boolean[] initializationTaken;
+    private final int[] initializationProducts;
+    private final double[] initializationClock;
+    private final int[] initializationProduced;
+    private final double[] initializationActive;
+
+    /**
+     * @param scenarios The replications to run, which must share the line, routing, product count and initialization setting
+     */
+    public BatchSimulation(List<SimulationScenario> scenarios) {
+        if (scenarios.isEmpty())
+            throw new IllegalArgumentException("No scenarios");
+        SimulationScenario first = scenarios.get(0);
+        for (SimulationScenario scenario : scenarios) {
+            if (!isCompatible(first, scenario))
+                throw new IllegalArgumentException("Batched scenarios must share the line, routing, product count and initialization");
+            if (scenario.isPrintState() || scenario.getTraceFile() != null || scenario.getCheckpointFile() != null || scenario.isDetectWarmup()
+                    || scenario.isEstimateGradients() || scenario.isTrackLeadTimes())
+                throw new IllegalArgumentException("Tracing, checkpoints, warm-up detection, gradients and lead times need the Simulation engine");
+        }
+        this.scenarios = new ArrayList<>(scenarios);
+        replications = scenarios.size();
+        totalProducts = first.getTotalProducts();
+        useInitialization = first.isUseInitialization();
+
+        LineModel model = first.getModel();
+        inspectorCount = model.getInspectorCount();
+        workstationCount = model.getWorkstationCount();
+        stationCount = inspectorCount + workstationCount;
+        bufferCount = model.getBufferCount();
+        serviceSourceCount = model.getServiceSourceCount();
+        componentBuffers = new int[model.getComponentCount()][];
+        for (int c = 0; c < componentBuffers.length; c++) {
+            componentBuffers[c] = model.getComponentBuffers(c);
+        }
+        inspectorComponents = new int[inspectorCount][];
+        inspectorSources = new int[inspectorCount][];
+        inspectorNames = new String[inspectorCount];
+        for (int i = 0; i < inspectorCount; i++) {
+            inspectorComponents[i] = model.getInspectorComponents(i);
+            inspectorSources[i] = model.getInspectorSources(i);
+            inspectorNames[i] = model.getInspectorName(i);
+        }
+        workstationBufferStart = new int[workstationCount];
+        workstationBufferEnd = new int[workstationCount];
+        workstationSource = new int[workstationCount];
+        productNames = new String[workstationCount];
+        for (int w = 0; w < workstationCount; w++) {
+            workstationBufferStart[w] = model.getWorkstationBufferStart(w);
+            workstationBufferEnd[w] = model.getWorkstationBufferEnd(w);
+            workstationSource[w] = model.getWorkstationSource(w);
+            productNames[w] = model.getProductName(w);
+        }
+        bufferWorkstation = new int[bufferCount];
+        for (int b = 0; b < bufferCount; b++) {
+            bufferWorkstation[b] = model.getBufferWorkstation(b);
+        }
+        bufferCapacities = model.getBufferCapacities();
+        routingLevels = new int[bufferCount];
+
+        simRandom = new SimulationRandom[replications];
+        routings = new Insp1Routing[replications];
+        for (int r = 0; r < replications; r++) {
+            SimulationScenario scenario = scenarios.get(r);
+            if (scenario.isUseHistorical())
+                simRandom[r] = new SimulationHistoricalData(model, scenario.getSeed(), scenario.getReplication());
+            else
+                simRandom[r] = new SimulationRandom(model, scenario.getSeed(), scenario.getReplication(), scenario.getSamplingMethod(),
+                        scenario.getInputModel());
+            routings[r] = scenario.createRouting();
+        }
+
+        clock = new double[replications];
+        lastEventTime = new double[replications];
+        numberEvents = new long[replications];
+        numberProducts = new int[replications];
+        holdCount = new int[replications];
+        sequence = new long[replications];
+        eventTime = new double[stationCount * replications];
+        eventOrder = new long[stationCount * replications];
+        inspectorComponent = new int[inspectorCount * replications];
+        inspectorHold = new int[inspectorCount * replications];
+        activeTime = new double[inspectorCount * replications];
+        bufferLevels = new int[bufferCount * replications];
+        numberProduced = new int[workstationCount * replications];
+        initializationTaken = new boolean[replications];
+        initializationProducts = new int[replications];
+        initializationClock = new double[replications];
+        initializationProduced = new int[workstationCount * replications];
+        initializationActive = new double[inspectorCount * replications];
+    }
+
+    /**
+     * @return Whether two scenarios can run in the same batch
+     */
+    static boolean isCompatible(SimulationScenario a, SimulationScenario b) {
+        return a.getModel() == b.getModel() && a.getTotalProducts() == b.getTotalProducts()
+                && a.isUseInitialization() == b.isUseInitialization()
+                && a.createRouting().getClass() == b.createRouting().getClass();
+    }
+
+    /**
+     * Run every replication to completion
+     * A batch can only be run once
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> runSimulation() {
+        SimulationTelemetry.Progress progress = SimulationTelemetry.getDefault().startRun(scenarios.get(0).getModel(), replications,
+                0, 0, new int[workstationCount]);
+        int running = initialization();
+        try {
+            long passes = 0;
+            while (running > 0) {
+                for (int r = 0; r < replications; r++) {
+                    int station = findNextEvent(r);
+                    if (eventTime[station * replications + r] == IDLE)
+                        continue;
+                    if (processNextEvent(station, r))
+                        running--;
+                }
+                if ((++passes & (SimulationTelemetry.PUBLISH_INTERVAL - 1)) == 0)
+                    publishProgress(progress, false);
+            }
+        } finally {
+            publishProgress(progress, true);
+        }
+
+        List<SimulationOutput> outputs = new ArrayList<>(replications);
+        for (int r = 0; r < replications; r++) {
+            outputs.add(createOutput(r));
+        }
+        return outputs;
+    }
+
+    /**
+     * Publish the totals of the batch to the telemetry
+     */
+    private void publishProgress(SimulationTelemetry.Progress progress, boolean finished) {
+        double totalClock = 0;
+        int pending = 0;
+        for (int r = 0; r < replications; r++) {
+            totalClock += clock[r];
+            for (int s = 0; s < stationCount; s++) {
+                if (eventTime[s * replications + r] != IDLE)
+                    pending++;
+            }
+        }
+        int[] produced = new int[workstationCount];
+        for (int w = 0; w < workstationCount; w++) {
+            for (int r = 0; r < replications; r++) {
+                produced[w] += numberProduced[w * replications + r];
+            }
+        }
+        if (finished)
+            progress.finish(getNumberEvents(), totalClock, produced);
+        else
+            progress.publish(getNumberEvents(), totalClock, produced, pending);
+    }
+
+    /**
+     * @return Events processed by all replications
+     */
+    public long getNumberEvents() {
+        long total = 0;
+        for (long events : numberEvents) {
+            total += events;
+        }
+        return total;
+    }
+
+    /**
+     * Queue the starting events of every replication
+     * @return How many replications have events to process
+     */
+    private int initialization() {
+        Arrays.fill(eventTime, IDLE);
+        Arrays.fill(inspectorComponent, -1);
+        Arrays.fill(inspectorHold, -1);
+        if (totalProducts == 0)
+            return 0;
+        for (int r = 0; r < replications; r++) {
+            for (int i = 0; i < inspectorCount; i++) {
+                scheduleArrivalEvent(i, r);
+            }
+        }
+        return replications;
+    }
+
+    /**
+     * Find the earliest pending event of a replication, ties going to the one scheduled first
+     * @return The station of the event, whose time is IDLE once the replication finished
+     */
+    private int findNextEvent(int r) {
+        int next = 0;
+        double nextTime = eventTime[r];
+        long nextOrder = eventOrder[r];
+        for (int s = 1; s < stationCount; s++) {
+            int index = s * replications + r;
+            double time = eventTime[index];
+            if (time < nextTime || (time == nextTime && eventOrder[index] < nextOrder)) {
+                nextTime = time;
+                nextOrder = eventOrder[index];
+                next = s;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Process the next event of a replication, see Simulation.advance
+     * @param station The station of the event
+     * @return Whether the replication finished with this event
+     */
+    private boolean processNextEvent(int station, int r) {
+        int index = station * replications + r;
+        clock[r] = eventTime[index];
+        numberEvents[r]++;
+        eventTime[index] = IDLE;
+        boolean departure = station >= inspectorCount;
+        if (departure) {
+            int workstation = station - inspectorCount;
+            numberProduced[workstation * replications + r]++;
+            numberProducts[r]++;
+            scheduleDepartureEvent(workstation, r);
+        } else {
+            processArrivalEvent(station, r);
+        }
+        for (int i = 0; i < inspectorCount; i++) {
+            int inspector = i * replications + r;
+            if (inspectorHold[inspector] == -1)
+                activeTime[inspector] += clock[r] - lastEventTime[r];
+        }
+
+        if (useInitialization && departure && numberProducts[r] == initializationLength)
+            markInitialization(r);
+        lastEventTime[r] = clock[r];
+
+        if (numberProducts[r] < totalProducts)
+            return false;
+        //Done, leave no pending events so the replication is skipped from now on
+        for (int s = 0; s < stationCount; s++) {
+            eventTime[s * replications + r] = IDLE;
+        }
+        return true;
+    }
+
+    private void processArrivalEvent(int inspector, int r) {
+        int index = inspector * replications + r;
+        int component = inspectorComponent[index];
+        int buffer = determineDestination(component, r);
+        if (buffer == -1) {
+            inspectorHold[index] = component;
+            holdCount[r]++;
+            return;
+        }
+        bufferLevels[buffer * replications + r]++;
+        scheduleArrivalEvent(inspector, r);
+        scheduleDepartureEvent(bufferWorkstation[buffer], r);
+    }
+
+    private void scheduleArrivalEvent(int inspector, int r) {
+        int choice = simRandom[r].nextChoice(inspector);
+        int index = inspector * replications + r;
+        inspectorComponent[index] = inspectorComponents[inspector][choice];
+        eventTime[index] = clock[r] + simRandom[r].nextService(inspectorSources[inspector][choice]);
+        eventOrder[index] = sequence[r]++;
+    }
+
+    private void scheduleDepartureEvent(int workstation, int r) {
+        int index = (inspectorCount + workstation) * replications + r;
+        if (eventTime[index] != IDLE)
+            return;
+        int start = workstationBufferStart[workstation];
+        int end = workstationBufferEnd[workstation];
+        for (int buffer = start; buffer < end; buffer++) {
+            if (bufferLevels[buffer * replications + r] == 0)
+                return;
+        }
+        double nextTime = simRandom[r].nextService(workstationSource[workstation]);
+        for (int buffer = start; buffer < end; buffer++) {
+            bufferLevels[buffer * replications + r]--;
+        }
+        eventTime[index] = clock[r] + nextTime;
+        eventOrder[index] = sequence[r]++;
+        processHoldEvent(r);
+    }
+
+    private void processHoldEvent(int r) {
+        if (holdCount[r] == 0)
+            return;
+        for (int inspector = 0; inspector < inspectorCount; inspector++) {
+            int index = inspector * replications + r;
+            int component = inspectorHold[index];
+            if (component == -1)
+                continue;
+            int buffer = determineDestination(component, r);
+            if (buffer == -1)
+                continue;
+            bufferLevels[buffer * replications + r]++;
+            inspectorHold[index] = -1;
+            holdCount[r]--;
+            scheduleArrivalEvent(inspector, r);
+            scheduleDepartureEvent(bufferWorkstation[buffer], r);
+        }
+    }
+
+    private void markInitialization(int r) {
+        initializationTaken[r] = true;
+        initializationProducts[r] = numberProducts[r];
+        initializationClock[r] = clock[r];
+        for (int w = 0; w < workstationCount; w++) {
+            initializationProduced[w * replications + r] = numberProduced[w * replications + r];
+        }
+        for (int i = 0; i < inspectorCount; i++) {
+            initializationActive[i * replications + r] = getActiveTime(i, r);
+        }
+    }
+
+    /**
+     * @return Time an inspector has been active up to the current event of a replication
+     */
+    private double getActiveTime(int inspector, int r) {
+        return activeTime[inspector * replications + r];
+    }
+
+    /**
+     * @return The buffer for a component of a replication, -1 if all its buffers are full
+     */
+    private int determineDestination(int component, int r) {
+        int[] candidates = componentBuffers[component];
+        if (candidates.length == 1) {
+            int buffer = candidates[0];
+            return bufferLevels[buffer * replications + r] < bufferCapacities[buffer] ? buffer : -1;
+        }
+        for (int buffer : candidates) {
+            routingLevels[buffer] = bufferLevels[buffer * replications + r];
+        }
+        int choice = routings[r].determineDestination(routingLevels, bufferCapacities, candidates);
+        return choice == -1 ? -1 : candidates[choice];
+    }
+
+    private SimulationOutput createOutput(int r) {
+        SimulationScenario scenario = scenarios.get(r);
+        int[] produced = new int[workstationCount];
+        for (int w = 0; w < workstationCount; w++) {
+            produced[w] = numberProduced[w * replications + r];
+        }
+        double[] active = new double[inspectorCount];
+        for (int i = 0; i < inspectorCount; i++) {
+            active[i] = getActiveTime(i, r);
+        }
+        double measuredClock = clock[r];
+        if (initializationTaken[r] && numberProducts[r] > initializationProducts[r]) {
+            for (int w = 0; w < workstationCount; w++) {
+                produced[w] -= initializationProduced[w * replications + r];
+            }
+            for (int i = 0; i < inspectorCount; i++) {
+                active[i] -= initializationActive[i * replications + r];
+            }
+            measuredClock -= initializationClock[r];
+        }
+        SimulationOutput output = new SimulationOutput(scenario.isUseHistorical(), scenario.getSeed(), routings[r], measuredClock,
+                productNames, produced, inspectorNames, active);
+
+        if (!scenario.isUseHistorical()) {
+            double[] serviceMeans = new double[serviceSourceCount];
+            double[] expectedServiceMeans = new double[serviceMeans.length];
+            for (int source = 0; source < serviceMeans.length; source++) {
+                serviceMeans[source] = simRandom[r].getServiceMean(source);
+                expectedServiceMeans[source] = simRandom[r].getExpectedServiceMean(source);
+            }
+            output.setServiceMeans(serviceMeans, expectedServiceMeans);
+        }
+        return output;
+    }
+}
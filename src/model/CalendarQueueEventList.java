@@ -0,0 +1,285 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Calendar queue (Brown, 1988) of events kept in parallel primitive arrays
+ * Each bucket is a linked list sorted by time, then insertion sequence.
+ * Buckets are resized as the queue grows or shrinks, which is the only time it allocates.
+ * Events may be added before the last polled time, such as when a queue is drained and refilled;
+ * the calendar then moves back to the earlier event.
+ */
+public class CalendarQueueEventList implements FutureEventList {
+    private static final int MIN_BUCKETS = 2;
+    private static final int WIDTH_SAMPLE = 25;
+
+    //Event nodes, linked through next
+    private double[] times;
+    private long[] sequences;
+    private int[] kinds;
+    private int[] entities;
+    private int[] next;
+    private int freeNode;
+
+    //Calendar
+    private int[] buckets;
+    private double width;
+    private int lastBucket; //bucket the last event was taken from
+    private long lastYearBucket; //absolute bucket number of lastBucket
+    private double[] scratch;
+
+    private int size;
+    private long nextSequence;
+
+    private double polledTime;
+    private int polledKind;
+    private int polledEntity;
+
+    public CalendarQueueEventList(){
+        times = new double[16];
+        sequences = new long[16];
+        kinds = new int[16];
+        entities = new int[16];
+        next = new int[16];
+        scratch = new double[16];
+        linkFreeNodes(0);
+        initBuckets(MIN_BUCKETS, 1.0, 0.0);
+    }
+
+    @Override
+    public void add(double time, int kind, int entity) {
+        if (freeNode == -1)
+            grow();
+        int node = freeNode;
+        freeNode = next[node];
+        times[node] = time;
+        sequences[node] = nextSequence++;
+        kinds[node] = kind;
+        entities[node] = entity;
+        insert(node);
+        size++;
+
+        //Poll scans forward from the current bucket, so it must not be past any queued event
+        long yearBucket = yearBucket(node);
+        if (yearBucket < lastYearBucket) {
+            lastYearBucket = yearBucket;
+            lastBucket = (int) (yearBucket % buckets.length);
+        }
+
+        if (size > 2 * buckets.length)
+            resize(buckets.length * 2);
+    }
+
+    @Override
+    public boolean poll() {
+        if (size == 0)
+            return false;
+
+        //Scan one year of buckets for an event due in the current bucket
+        int bucket = lastBucket;
+        long yearBucket = lastYearBucket;
+        int found = -1;
+        for (int n = 0; n < buckets.length; n++) {
+            int head = buckets[bucket];
+            if (head != -1 && yearBucket(head) <= yearBucket) {
+                found = bucket;
+                break;
+            }
+            bucket++;
+            yearBucket++;
+            if (bucket == buckets.length)
+                bucket = 0;
+        }
+
+        //Nothing due this year, search all bucket heads directly
+        if (found == -1) {
+            for (int i = 0; i < buckets.length; i++) {
+                int head = buckets[i];
+                if (head != -1 && (found == -1 || isBefore(head, buckets[found])))
+                    found = i;
+            }
+            yearBucket = yearBucket(buckets[found]);
+        }
+
+        int node = buckets[found];
+        buckets[found] = next[node];
+        lastBucket = found;
+        lastYearBucket = yearBucket;
+        polledTime = times[node];
+        polledKind = kinds[node];
+        polledEntity = entities[node];
+        next[node] = freeNode;
+        freeNode = node;
+        size--;
+
+        if (buckets.length > MIN_BUCKETS && size < buckets.length / 2)
+            resize(buckets.length / 2);
+        return true;
+    }
+
+    @Override
+    public double getPolledTime() {
+        return polledTime;
+    }
+
+    @Override
+    public int getPolledKind() {
+        return polledKind;
+    }
+
+    @Override
+    public int getPolledEntity() {
+        return polledEntity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void copyPending(double[] times, int[] kinds, int[] entities) {
+        //Insertion sort of the nodes of every bucket, pending lists are short
+        int[] order = new int[size];
+        int count = 0;
+        for (int head : buckets) {
+            for (int node = head; node != -1; node = next[node]) {
+                int j = count++;
+                while (j > 0 && isBefore(node, order[j - 1])) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = node;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            times[i] = this.times[order[i]];
+            kinds[i] = this.kinds[order[i]];
+            entities[i] = this.entities[order[i]];
+        }
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        nextSequence = 0;
+        polledTime = 0;
+        polledKind = 0;
+        polledEntity = 0;
+        linkFreeNodes(0);
+        initBuckets(MIN_BUCKETS, 1.0, 0.0);
+    }
+
+    /**
+     * Insert a node into its bucket, keeping the bucket sorted
+     */
+    private void insert(int node) {
+        int bucket = (int) (yearBucket(node) % buckets.length);
+        int previous = -1;
+        int current = buckets[bucket];
+        while (current != -1 && !isBefore(node, current)) {
+            previous = current;
+            current = next[current];
+        }
+        next[node] = current;
+        if (previous == -1)
+            buckets[bucket] = node;
+        else
+            next[previous] = node;
+    }
+
+    /**
+     * Absolute bucket number of a node, counting from time zero
+     */
+    private long yearBucket(int node) {
+        return (long) Math.floor(times[node] / width);
+    }
+
+    private boolean isBefore(int node, int other) {
+        return times[node] < times[other] || (times[node] == times[other] && sequences[node] < sequences[other]);
+    }
+
+    /**
+     * Rebuild the calendar with a new bucket count and a width estimated from the queued events,
+     * starting from the earliest queued event
+     */
+    private void resize(int bucketCount) {
+        int[] oldBuckets = buckets;
+        double start = Double.POSITIVE_INFINITY;
+        for (int head : oldBuckets) {
+            if (head != -1)
+                start = Math.min(start, times[head]);
+        }
+        if (start == Double.POSITIVE_INFINITY)
+            start = polledTime;
+        double newWidth = estimateWidth(oldBuckets);
+        initBuckets(bucketCount, newWidth, start);
+        for (int head : oldBuckets) {
+            int node = head;
+            while (node != -1) {
+                int following = next[node];
+                insert(node);
+                node = following;
+            }
+        }
+    }
+
+    /**
+     * Estimate a bucket width of about three times the average separation of the earliest events,
+     * ignoring separations more than twice the average
+     */
+    private double estimateWidth(int[] currentBuckets) {
+        int count = 0;
+        for (int head : currentBuckets) {
+            for (int node = head; node != -1; node = next[node]) {
+                scratch[count++] = times[node];
+            }
+        }
+        if (count < 2)
+            return width;
+        Arrays.sort(scratch, 0, count);
+        int samples = Math.min(count, WIDTH_SAMPLE);
+
+        double average = (scratch[samples - 1] - scratch[0]) / (samples - 1);
+        double total = 0;
+        int separations = 0;
+        for (int i = 1; i < samples; i++) {
+            double separation = scratch[i] - scratch[i - 1];
+            if (separation <= 2 * average) {
+                total += separation;
+                separations++;
+            }
+        }
+        if (separations == 0 || total <= 0)
+            return width;
+        return 3 * total / separations;
+    }
+
+    private void initBuckets(int bucketCount, double bucketWidth, double startTime) {
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, -1);
+        width = bucketWidth;
+        lastYearBucket = (long) Math.floor(startTime / width);
+        lastBucket = (int) (lastYearBucket % bucketCount);
+    }
+
+    private void linkFreeNodes(int from) {
+        for (int i = from; i < next.length - 1; i++) {
+            next[i] = i + 1;
+        }
+        next[next.length - 1] = -1;
+        freeNode = from;
+    }
+
+    private void grow() {
+        int oldCapacity = times.length;
+        int capacity = oldCapacity * 2;
+        times = Arrays.copyOf(times, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+        next = Arrays.copyOf(next, capacity);
+        scratch = new double[capacity];
+        linkFreeNodes(oldCapacity);
+    }
+}
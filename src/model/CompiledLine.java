@@ -0,0 +1,43 @@
+package model;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * An event loop generated for a line and routing table by ModelCompiler, creates its runs
+ */
+public class CompiledLine {
+    private final RoutingTable table;
+    private final Constructor<? extends CompiledSimulation> constructor;
+
+    CompiledLine(RoutingTable table, Constructor<? extends CompiledSimulation> constructor) {
+        this.table = table;
+        this.constructor = constructor;
+    }
+
+    /**
+     * @param scenario A run of the compiled line; its routing only names the output, the table routes
+     * @return The run, call runSimulation
+     */
+    public CompiledSimulation create(SimulationScenario scenario) {
+        if (scenario.getModel() != table.getModel())
+            throw new IllegalArgumentException("Scenario is for a different line");
+        try {
+            return constructor.newInstance(scenario, table.getEntries());
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create compiled line", e);
+        }
+    }
+
+    public RoutingTable getTable() {
+        return table;
+    }
+
+    public LineModel getModel() {
+        return table.getModel();
+    }
+}
@@ -0,0 +1,128 @@
+package model;
+
+/**
+ * A run of an event loop generated for one line and routing table by ModelCompiler
+ * The generated subclass keeps every state variable in its own field and every station, buffer and
+ * capacity as a constant, and copies its final state here for the output. Generated classes live in
+ * their own class loader, so everything they use is public or protected.
+ *
+ * Outputs equal those of Simulation for the same scenarios, without the station metrics.
+ * Tracing, state printing, checkpoints, warm-up detection, gradients and lead times are not supported.
+ */
+public abstract class CompiledSimulation {
+    private final SimulationScenario scenario;
+    private final LineModel model;
+    private final Insp1Routing routing; //for the output, the generated loop routes with the table
+    private SimulationTelemetry.Progress progress;
+
+    protected final SimulationRandom random;
+    protected final int[] routingEntries; //see RoutingTable
+    protected final int totalProducts;
+    protected final boolean useInitialization;
+
+    //Final state, copied by run
+    protected double clock;
+    protected long numberEvents;
+    protected int numberProducts;
+    protected final int[] numberProduced;
+    protected final double[] activeTime; //per inspector, up to the last event
+
+    //Initialization snapshot, copied by run
+    protected boolean initializationTaken;
+    protected int initializationProducts;
+    protected double initializationClock;
+    protected final int[] initializationProduced;
+    protected final double[] initializationActive;
+
+    protected CompiledSimulation(SimulationScenario scenario, int[] routingEntries) {
+        if (scenario.isPrintState() || scenario.getTraceFile() != null || scenario.getCheckpointFile() != null || scenario.isDetectWarmup()
+                || scenario.isEstimateGradients() || scenario.isTrackLeadTimes())
+            throw new IllegalArgumentException("Tracing, checkpoints, warm-up detection, gradients and lead times need the Simulation engine");
+        this.scenario = scenario;
+        this.routingEntries = routingEntries;
+        model = scenario.getModel();
+        if (scenario.isUseHistorical())
+            random = new SimulationHistoricalData(model, scenario.getSeed(), scenario.getReplication());
+        else
+            random = new SimulationRandom(model, scenario.getSeed(), scenario.getReplication(), scenario.getSamplingMethod(),
+                    scenario.getInputModel());
+        routing = scenario.createRouting();
+        totalProducts = scenario.getTotalProducts();
+        useInitialization = scenario.isUseInitialization();
+        numberProduced = new int[model.getWorkstationCount()];
+        activeTime = new double[model.getInspectorCount()];
+        initializationProduced = new int[numberProduced.length];
+        initializationActive = new double[activeTime.length];
+    }
+
+    /**
+     * Run the simulation to completion
+     * A simulation object can only be run once
+     * @return The output statistics of the run
+     */
+    public SimulationOutput runSimulation() {
+        progress = SimulationTelemetry.getDefault().startRun(model, 1, 0, 0, numberProduced);
+        try {
+            run();
+        } finally {
+            progress.finish(numberEvents, clock, numberProduced);
+        }
+        return createOutput();
+    }
+
+    public long getNumberEvents() {
+        return numberEvents;
+    }
+
+    /**
+     * Process every event, then copy the final state and snapshot to the fields above
+     */
+    protected abstract void run();
+
+    /**
+     * Report progress during the run, see SimulationTelemetry
+     * @param events Events processed so far
+     * @param clock Current time
+     * @param pending Events queued
+     * The products of each workstation so far must be in numberProduced.
+     */
+    protected final void publishProgress(long events, double clock, int pending) {
+        progress.publish(events, clock, numberProduced, pending);
+    }
+
+    private SimulationOutput createOutput() {
+        int[] produced = numberProduced.clone();
+        double[] active = activeTime.clone();
+        double measuredClock = clock;
+        if (initializationTaken && numberProducts > initializationProducts) {
+            for (int w = 0; w < produced.length; w++) {
+                produced[w] -= initializationProduced[w];
+            }
+            for (int i = 0; i < active.length; i++) {
+                active[i] -= initializationActive[i];
+            }
+            measuredClock -= initializationClock;
+        }
+        String[] productNames = new String[produced.length];
+        for (int w = 0; w < produced.length; w++) {
+            productNames[w] = model.getProductName(w);
+        }
+        String[] inspectorNames = new String[active.length];
+        for (int i = 0; i < active.length; i++) {
+            inspectorNames[i] = model.getInspectorName(i);
+        }
+        SimulationOutput output = new SimulationOutput(scenario.isUseHistorical(), scenario.getSeed(), routing, measuredClock,
+                productNames, produced, inspectorNames, active);
+
+        if (!scenario.isUseHistorical()) {
+            double[] serviceMeans = new double[model.getServiceSourceCount()];
+            double[] expectedServiceMeans = new double[serviceMeans.length];
+            for (int source = 0; source < serviceMeans.length; source++) {
+                serviceMeans[source] = random.getServiceMean(source);
+                expectedServiceMeans[source] = random.getExpectedServiceMean(source);
+            }
+            output.setServiceMeans(serviceMeans, expectedServiceMeans);
+        }
+        return output;
+    }
+}
@@ -1,5 +0,0 @@
-package model;
-
-public enum ComponentType {
-    C1, C2, C3
-}
@@ -0,0 +1,178 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mean of a metric corrected by control variates, the mean service time of every source
+ * The expected service times are known from the rates, so a run that drew slow services by chance
+ * has its metric adjusted by the least squares fit of the metric on the service time errors,
+ * over all runs (Lavenberg and Welch, 1981).
+ */
+public class ControlVariateEstimator {
+    private final SimulationMetric metric;
+    private final List<Double> values = new ArrayList<>();
+    private final List<double[]> controls = new ArrayList<>();
+
+    //Fitted on demand
+    private boolean fitted;
+    private double mean;
+    private double variance; //of the corrected mean
+    private double crudeVariance; //of the plain mean
+
+    public ControlVariateEstimator(SimulationMetric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @param output A run with service means, so not from historical data
+     */
+    public void add(SimulationOutput output) {
+        int sources = output.getServiceSourceCount();
+        if (sources == 0)
+            throw new IllegalArgumentException("Control variates need the service means of the run");
+        if (!controls.isEmpty() && controls.get(0).length != sources)
+            throw new IllegalArgumentException("Runs of different lines");
+        double[] errors = new double[sources];
+        for (int source = 0; source < sources; source++) {
+            errors[source] = output.getServiceMean(source) - output.getExpectedServiceMean(source);
+        }
+        values.add(metric.valueOf(output));
+        controls.add(errors);
+        fitted = false;
+    }
+
+    public SimulationMetric getMetric() {
+        return metric;
+    }
+
+    public int getReplications() {
+        return values.size();
+    }
+
+    /**
+     * @return The corrected mean
+     */
+    public double getMean() {
+        fit();
+        return mean;
+    }
+
+    /**
+     * @return Half-width of the confidence interval of the corrected mean, with n - q - 1 degrees of freedom for q controls
+     */
+    public double getHalfWidth(double confidence) {
+        fit();
+        int degrees = values.size() - controls.get(0).length - 1;
+        return StudentT.quantile(1 - (1 - confidence) / 2, degrees) * Math.sqrt(variance);
+    }
+
+    /**
+     * @return Fraction of the variance of the plain mean removed by the controls
+     */
+    public double getVarianceReduction() {
+        fit();
+        return 1 - variance / crudeVariance;
+    }
+
+    /**
+     * Regress the metric on the control errors
+     */
+    private void fit() {
+        if (fitted)
+            return;
+        int n = values.size();
+        int q = controls.isEmpty() ? 0 : controls.get(0).length;
+        if (n < q + 3)
+            throw new IllegalStateException("At least " + (q + 3) + " replications needed");
+
+        double valueMean = 0;
+        double[] controlMean = new double[q];
+        for (int j = 0; j < n; j++) {
+            valueMean += values.get(j) / n;
+            for (int k = 0; k < q; k++) {
+                controlMean[k] += controls.get(j)[k] / n;
+            }
+        }
+
+        //Centered sums of squares and cross products
+        double[][] scc = new double[q][q];
+        double[] scy = new double[q];
+        double syy = 0;
+        for (int j = 0; j < n; j++) {
+            double y = values.get(j) - valueMean;
+            double[] c = controls.get(j);
+            syy += y * y;
+            for (int k = 0; k < q; k++) {
+                double ck = c[k] - controlMean[k];
+                scy[k] += ck * y;
+                for (int l = 0; l < q; l++) {
+                    scc[k][l] += ck * (c[l] - controlMean[l]);
+                }
+            }
+        }
+
+        double[] beta = solve(copy(scc), scy.clone());
+        double[] scale = solve(copy(scc), controlMean.clone()); //S^-1 times the mean control error
+        double residual = syy;
+        double leverage = 0;
+        for (int k = 0; k < q; k++) {
+            residual -= beta[k] * scy[k];
+            leverage += controlMean[k] * scale[k];
+        }
+
+        mean = valueMean;
+        for (int k = 0; k < q; k++) {
+            mean -= beta[k] * controlMean[k];
+        }
+        variance = residual / (n - q - 1) * (1.0 / n + leverage);
+        crudeVariance = syy / (n - 1) / n;
+        fitted = true;
+    }
+
+    private static double[][] copy(double[][] matrix) {
+        double[][] copy = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Solve a x = b by Gaussian elimination with partial pivoting, overwriting both
+     */
+    private static double[] solve(double[][] a, double[] b) {
+        int q = b.length;
+        for (int col = 0; col < q; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < q; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col]))
+                    pivot = row;
+            }
+            if (a[pivot][col] == 0)
+                throw new IllegalStateException("Control variates are linearly dependent");
+            double[] row = a[col];
+            a[col] = a[pivot];
+            a[pivot] = row;
+            double value = b[col];
+            b[col] = b[pivot];
+            b[pivot] = value;
+            for (int r = col + 1; r < q; r++) {
+                double factor = a[r][col] / a[col][col];
+                for (int c = col; c < q; c++) {
+                    a[r][c] -= factor * a[col][c];
+                }
+                b[r] -= factor * b[col];
+            }
+        }
+        double[] x = new double[q];
+        for (int r = q - 1; r >= 0; r--) {
+            double sum = b[r];
+            for (int c = r + 1; c < q; c++) {
+                sum -= a[r][c] * x[c];
+            }
+            x[r] = sum / a[r][r];
+        }
+        return x;
+    }
+}
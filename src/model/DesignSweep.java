@@ -0,0 +1,116 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Grid of designs over routing policies, workstation buffer capacities and service rate multipliers
+ * Every combination of the values set for each factor is a design. Factors left unset keep the
+ * value of the base line.
+ */
+public class DesignSweep {
+    private final LineConfiguration base;
+    private final Map<String, Supplier<Insp1Routing>> routings = new LinkedHashMap<>();
+    private final int[][] capacities; //per workstation, null to keep the base capacities
+    private double[] inspectorMultipliers = {1};
+    private double[] workstationMultipliers = {1};
+
+    public DesignSweep(LineConfiguration base) {
+        this.base = base;
+        capacities = new int[base.getWorkstations().size()][];
+    }
+
+    /**
+     * @param name Name of the policy in the design names
+     * @param routing Creates the routing of each run
+     */
+    public void addRouting(String name, Supplier<Insp1Routing> routing) {
+        routings.put(name, routing);
+    }
+
+    /**
+     * @param workstation Index of the workstation
+     * @param values Capacities to try for all the buffers of the workstation
+     */
+    public void setCapacities(int workstation, int... values) {
+        for (int value : values) {
+            if (value < 1)
+                throw new IllegalArgumentException("Invalid buffer capacity: " + value);
+        }
+        capacities[workstation] = values.clone();
+    }
+
+    /**
+     * @param values Multipliers to try for all the inspection rates
+     */
+    public void setInspectorRateMultipliers(double... values) {
+        inspectorMultipliers = checkMultipliers(values);
+    }
+
+    /**
+     * @param values Multipliers to try for all the assembly rates
+     */
+    public void setWorkstationRateMultipliers(double... values) {
+        workstationMultipliers = checkMultipliers(values);
+    }
+
+    /**
+     * Compile every combination of the factors
+     * @return The designs, routings varying slowest
+     */
+    public List<SimulationDesign> createDesigns() {
+        if (routings.isEmpty())
+            throw new IllegalStateException("No routing policies to sweep");
+
+        List<LineConfiguration> lines = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        lines.add(base);
+        names.add("");
+        for (int w = 0; w < capacities.length; w++) {
+            if (capacities[w] == null)
+                continue;
+            List<LineConfiguration> expanded = new ArrayList<>();
+            List<String> expandedNames = new ArrayList<>();
+            for (int i = 0; i < lines.size(); i++) {
+                for (int capacity : capacities[w]) {
+                    expanded.add(lines.get(i).withCapacity(w, capacity));
+                    expandedNames.add(names.get(i) + " " + base.getWorkstations().get(w).getName() + "=" + capacity);
+                }
+            }
+            lines = expanded;
+            names = expandedNames;
+        }
+
+        List<SimulationDesign> designs = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Insp1Routing>> routing : routings.entrySet()) {
+            for (int i = 0; i < lines.size(); i++) {
+                for (double inspectorMultiplier : inspectorMultipliers) {
+                    for (double workstationMultiplier : workstationMultipliers) {
+                        String name = routing.getKey() + names.get(i);
+                        if (inspectorMultipliers.length > 1)
+                            name += " insp*" + inspectorMultiplier;
+                        if (workstationMultipliers.length > 1)
+                            name += " ws*" + workstationMultiplier;
+                        LineModel model = lines.get(i).withRateMultipliers(inspectorMultiplier, workstationMultiplier).compile();
+                        designs.add(new SimulationDesign(name, routing.getValue(), model));
+                    }
+                }
+            }
+        }
+        return designs;
+    }
+
+    private static double[] checkMultipliers(double[] values) {
+        if (values.length == 0)
+            throw new IllegalArgumentException("No multipliers");
+        for (double value : values) {
+            if (!(value > 0))
+                throw new IllegalArgumentException("Invalid rate multiplier: " + value);
+        }
+        return Arrays.copyOf(values, values.length);
+    }
+}
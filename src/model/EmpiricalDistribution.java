@@ -0,0 +1,215 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Distribution fitted to the samples of a historical data file, see InputModel
+ * Tables are built once and are immutable, so replications share them. Each draw takes constant time.
+ */
+public abstract class EmpiricalDistribution {
+    /**
+     * Fit a distribution to a data set
+     * @param inputModel The empirical model, not Exponential
+     * @param samples The data, at least two positive values
+     * @return The distribution
+     */
+    public static EmpiricalDistribution of(InputModel inputModel, double[] samples) {
+        switch (inputModel) {
+            case InverseCdf:
+                return inverseCdf(samples);
+            case Alias:
+                return alias(samples, (int) Math.ceil(Math.sqrt(samples.length)));
+            case Kernel:
+                return kernel(samples);
+            default:
+                throw new IllegalArgumentException("Not an empirical input model: " + inputModel);
+        }
+    }
+
+    /**
+     * Continuous distribution whose CDF joins the sorted samples, each pair of neighbours holding equal probability
+     * (Law and Kelton). Bounded by the smallest and largest sample.
+     */
+    public static EmpiricalDistribution inverseCdf(double[] samples) {
+        return new InverseCdf(sorted(samples));
+    }
+
+    /**
+     * Histogram of equal width bins over the range of the samples, uniform within each bin.
+     * The bin is drawn with Walker's alias method (Vose's construction).
+     * @param bins Number of bins
+     */
+    public static EmpiricalDistribution alias(double[] samples, int bins) {
+        if (bins < 1)
+            throw new IllegalArgumentException("Invalid bin count");
+        return new Alias(sorted(samples), bins);
+    }
+
+    /**
+     * A random sample scaled by a log-normal kernel, a Gaussian kernel density estimate of the log of the data
+     * with Silverman's bandwidth. Stays positive and has a smooth tail past the largest sample.
+     */
+    public static EmpiricalDistribution kernel(double[] samples) {
+        return new Kernel(sorted(samples));
+    }
+
+    /**
+     * Fill an array with variates
+     * @param values The array to fill
+     * @param stream The stream to draw from
+     */
+    public abstract void fill(double[] values, RandomStream stream);
+
+    public abstract double getMean();
+
+    private static double[] sorted(double[] samples) {
+        if (samples.length < 2)
+            throw new IllegalArgumentException("At least two samples needed");
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        if (!(sorted[0] > 0) || Double.isInfinite(sorted[sorted.length - 1]))
+            throw new IllegalArgumentException("Service times must be positive and finite");
+        return sorted;
+    }
+
+    private static class InverseCdf extends EmpiricalDistribution {
+        private final double[] points;
+        private final double mean;
+
+        InverseCdf(double[] sorted) {
+            points = sorted;
+            double sum = 0;
+            for (int i = 0; i + 1 < points.length; i++) {
+                sum += (points[i] + points[i + 1]) / 2;
+            }
+            mean = sum / (points.length - 1);
+        }
+
+        @Override
+        public void fill(double[] values, RandomStream stream) {
+            int intervals = points.length - 1;
+            for (int v = 0; v < values.length; v++) {
+                double position = stream.nextDouble() * intervals;
+                int i = Math.min((int) position, intervals - 1);
+                values[v] = points[i] + (position - i) * (points[i + 1] - points[i]);
+            }
+        }
+
+        @Override
+        public double getMean() {
+            return mean;
+        }
+    }
+
+    private static class Alias extends EmpiricalDistribution {
+        private final double minimum;
+        private final double width;
+        private final double[] probability; //of keeping the drawn bin instead of its alias
+        private final int[] alias;
+        private final double mean;
+
+        Alias(double[] sorted, int bins) {
+            minimum = sorted[0];
+            width = (sorted[sorted.length - 1] - minimum) / bins;
+            double[] scaled = new double[bins]; //bin probability times the bin count, 1 on average
+            double sum = 0;
+            for (double sample : sorted) {
+                int bin = width > 0 ? Math.min((int) ((sample - minimum) / width), bins - 1) : 0;
+                scaled[bin] += (double) bins / sorted.length;
+            }
+            for (int bin = 0; bin < bins; bin++) {
+                sum += scaled[bin] / bins * (minimum + (bin + 0.5) * width);
+            }
+            mean = sum;
+
+            probability = new double[bins];
+            alias = new int[bins];
+            int[] small = new int[bins];
+            int[] large = new int[bins];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int bin = 0; bin < bins; bin++) {
+                if (scaled[bin] < 1)
+                    small[smallCount++] = bin;
+                else
+                    large[largeCount++] = bin;
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                probability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] -= 1 - scaled[less];
+                if (scaled[more] < 1)
+                    small[smallCount++] = more;
+                else
+                    large[largeCount++] = more;
+            }
+            //Left over by rounding, keep them
+            while (largeCount > 0) {
+                probability[large[--largeCount]] = 1;
+            }
+            while (smallCount > 0) {
+                probability[small[--smallCount]] = 1;
+            }
+        }
+
+        @Override
+        public void fill(double[] values, RandomStream stream) {
+            int bins = probability.length;
+            for (int v = 0; v < values.length; v++) {
+                double position = stream.nextDouble() * bins;
+                int bin = Math.min((int) position, bins - 1);
+                if (position - bin >= probability[bin])
+                    bin = alias[bin];
+                values[v] = minimum + (bin + stream.nextDouble()) * width;
+            }
+        }
+
+        @Override
+        public double getMean() {
+            return mean;
+        }
+    }
+
+    private static class Kernel extends EmpiricalDistribution {
+        private final double[] samples;
+        private final double bandwidth; //of the log of the data
+        private final double mean;
+
+        Kernel(double[] sorted) {
+            samples = sorted;
+            int n = sorted.length;
+            WelfordAccumulator logs = new WelfordAccumulator();
+            double sum = 0;
+            for (double sample : sorted) {
+                logs.add(Math.log(sample));
+                sum += sample;
+            }
+            double interquartile = Math.log(sorted[(3 * n) / 4]) - Math.log(sorted[n / 4]);
+            double spread = Math.min(logs.getStandardDeviation(), interquartile / 1.34);
+            if (!(spread > 0))
+                spread = logs.getStandardDeviation();
+            bandwidth = 0.9 * spread * Math.pow(n, -0.2);
+            mean = sum / n * Math.exp(bandwidth * bandwidth / 2);
+        }
+
+        @Override
+        public void fill(double[] values, RandomStream stream) {
+            int n = samples.length;
+            for (int v = 0; v < values.length; v += 2) {
+                //Box-Muller, two normal variates per pair of uniforms
+                double radius = bandwidth * Math.sqrt(-2 * Math.log(stream.nextOpenDouble()));
+                double angle = 2 * Math.PI * stream.nextDouble();
+                values[v] = samples[Math.min((int) (stream.nextDouble() * n), n - 1)] * Math.exp(radius * Math.cos(angle));
+                if (v + 1 < values.length)
+                    values[v + 1] = samples[Math.min((int) (stream.nextDouble() * n), n - 1)] * Math.exp(radius * Math.sin(angle));
+            }
+        }
+
+        @Override
+        public double getMean() {
+            return mean;
+        }
+    }
+}
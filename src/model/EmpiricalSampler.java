@@ -0,0 +1,27 @@
+package model;
+
+/**
+ * Service time sampler for one input process drawing from a distribution fitted to historical data
+ */
+public class EmpiricalSampler extends ServiceSampler {
+    private final EmpiricalDistribution distribution;
+
+    /**
+     * @param stream The stream to draw from, not shared with other samplers
+     * @param distribution The fitted distribution, may be shared
+     */
+    public EmpiricalSampler(RandomStream stream, EmpiricalDistribution distribution) {
+        super(stream);
+        this.distribution = distribution;
+    }
+
+    @Override
+    public double getMean() {
+        return distribution.getMean();
+    }
+
+    @Override
+    protected void generate(double[] block) {
+        distribution.fill(block, stream);
+    }
+}
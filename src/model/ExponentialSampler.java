@@ -0,0 +1,121 @@
+package model;
+
+/**
+ * Exponential variate sampler for one input process
+ * The rate is validated once, and variates are generated with the ziggurat method
+ * (Marsaglia and Tsang, 2000), which usually takes a single random number and no logarithm.
+ * Inverse transform sampling is slower, but uses one uniform per variate so runs can be antithetic pairs.
+ */
+public class ExponentialSampler extends ServiceSampler {
+    //Ziggurat with 256 layers, right edge of the base layer at R
+    private static final int LAYERS = 256;
+    private static final double R = 7.697117470131487;
+    private static final double LAYER_AREA = 3.949659822581572e-3;
+    private static final double SCALE = 0x1.0p53; //53 random bits per draw
+    private static final long[] KE = new long[LAYERS];
+    private static final double[] WE = new double[LAYERS];
+    private static final double[] FE = new double[LAYERS];
+
+    static {
+        double de = R;
+        double te = R;
+        double q = LAYER_AREA / Math.exp(-de);
+        KE[0] = (long) ((de / q) * SCALE);
+        KE[1] = 0;
+        WE[0] = q / SCALE;
+        WE[LAYERS - 1] = de / SCALE;
+        FE[0] = 1.0;
+        FE[LAYERS - 1] = Math.exp(-de);
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            de = -Math.log(LAYER_AREA / de + Math.exp(-de));
+            KE[i + 1] = (long) ((de / te) * SCALE);
+            te = de;
+            FE[i] = Math.exp(-de);
+            WE[i] = de / SCALE;
+        }
+    }
+
+    private final double mean;
+    private final SamplingMethod method;
+
+    /**
+     * @param stream The stream to draw from, not shared with other samplers
+     * @param rateParameter The rate of the distribution
+     */
+    public ExponentialSampler(RandomStream stream, double rateParameter) {
+        this(stream, rateParameter, SamplingMethod.Ziggurat);
+    }
+
+    /**
+     * @param stream The stream to draw from, not shared with other samplers
+     * @param rateParameter The rate of the distribution
+     * @param method How variates are generated from the stream
+     */
+    public ExponentialSampler(RandomStream stream, double rateParameter, SamplingMethod method) {
+        super(stream);
+        if (rateParameter <= 0)
+            throw new IllegalArgumentException("Invalid rate parameter");
+        this.mean = 1 / rateParameter;
+        this.method = method;
+    }
+
+    public double getRate() {
+        return 1 / mean;
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    protected void generate(double[] block) {
+        switch (method) {
+            case InverseTransform:
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    block[i] = -Math.log(1 - stream.nextOpenDouble()) * mean;
+                }
+                break;
+            case Antithetic:
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    block[i] = -Math.log(stream.nextOpenDouble()) * mean;
+                }
+                break;
+            default:
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    block[i] = nextStandard(stream) * mean;
+                }
+        }
+    }
+
+    /**
+     * Draw a standard (rate 1) exponential variate with the ziggurat method
+     * @param stream The stream to draw from
+     * @return The variate
+     */
+    public static double nextStandard(RandomStream stream) {
+        long r = stream.nextLong();
+        int layer = (int) r & (LAYERS - 1);
+        long u = r >>> 11; //top 53 bits, independent of the layer bits
+        if (u < KE[layer])
+            return u * WE[layer]; //inside the layer's rectangle, by far the common case
+        return nextStandardSlow(stream, layer, u);
+    }
+
+    private static double nextStandardSlow(RandomStream stream, int layer, long u) {
+        while (true) {
+            if (layer == 0)
+                return R - Math.log(1 - stream.nextDouble()); //tail beyond R, memoryless
+
+            double x = u * WE[layer];
+            if (FE[layer] + stream.nextDouble() * (FE[layer - 1] - FE[layer]) < Math.exp(-x))
+                return x;
+
+            long r = stream.nextLong();
+            layer = (int) r & (LAYERS - 1);
+            u = r >>> 11;
+            if (u < KE[layer])
+                return u * WE[layer];
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * Pending event set of the simulation
+ * Events are stored as primitives, a kind (EventType ordinal) and an entity index
+ * (inspector for arrivals, workstation for departures).
+ * Events with equal times are returned in the order they were added.
+ */
+public interface FutureEventList {
+    /**
+     * Queue an event
+     * @param time The time the event occurs
+     * @param kind The kind of event
+     * @param entity The entity the event belongs to
+     */
+    public abstract void add(double time, int kind, int entity);
+
+    /**
+     * Remove the earliest event, which can then be read with the polled getters
+     * @return False if there are no events left
+     */
+    public abstract boolean poll();
+
+    public abstract double getPolledTime();
+
+    public abstract int getPolledKind();
+
+    public abstract int getPolledEntity();
+
+    public abstract int size();
+
+    /**
+     * Copy the queued events in the order they would be polled, leaving the list unchanged
+     * Adding them to an empty list in this order gives a list that polls the same.
+     * @param times Receives the times, at least size() long
+     * @param kinds Receives the kinds
+     * @param entities Receives the entities
+     */
+    public abstract void copyPending(double[] times, int[] kinds, int[] entities);
+
+    /**
+     * Remove all events
+     */
+    public abstract void clear();
+}
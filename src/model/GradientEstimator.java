@@ -0,0 +1,146 @@
+package model;
+
+/**
+ * Infinitesimal perturbation analysis of a run with respect to every service rate
+ * An exponential service time X = E / rate has dX/drate = -X / rate. Every event is scheduled by the
+ * event being processed, so the derivative of its time is the derivative of the current time plus
+ * that of its own service time. Carrying one gradient vector per pending event along the sample
+ * path gives the derivatives of the end time and the active times, and so of the throughputs and
+ * idle fractions, from a single run.
+ *
+ * The estimates ignore changes in the order of events, including routing decisions that flip when
+ * buffer levels tie, so they can be slightly biased; compare with common random number differences
+ * when in doubt.
+ */
+class GradientEstimator {
+    private final int parameters; //one per service source
+    private final double[] rates;
+    private final double[] eventGradients; //per station, of its pending event time
+    private final double[] clockGradient;
+    private final double[] lastEventGradient;
+    private final double[] activeSinceGradients; //per station
+    private final double[] activeTimeGradients;
+    private final double[] initializationClockGradient;
+    private final double[] initializationActiveGradients; //per inspector
+
+    GradientEstimator(LineModel model) {
+        parameters = model.getServiceSourceCount();
+        rates = new double[parameters];
+        for (int source = 0; source < parameters; source++) {
+            rates[source] = model.getSourceRate(source);
+        }
+        int stations = model.getInspectorCount() + model.getWorkstationCount();
+        eventGradients = new double[stations * parameters];
+        clockGradient = new double[parameters];
+        lastEventGradient = new double[parameters];
+        activeSinceGradients = new double[stations * parameters];
+        activeTimeGradients = new double[stations * parameters];
+        initializationClockGradient = new double[parameters];
+        initializationActiveGradients = new double[model.getInspectorCount() * parameters];
+    }
+
+    /**
+     * The event of a station is processed, the clock moves to its time
+     */
+    void startEvent(int station) {
+        System.arraycopy(eventGradients, station * parameters, clockGradient, 0, parameters);
+    }
+
+    /**
+     * An event of a station is scheduled a service time after the current time
+     */
+    void schedule(int station, int source, double serviceTime) {
+        int start = station * parameters;
+        System.arraycopy(clockGradient, 0, eventGradients, start, parameters);
+        eventGradients[start + source] -= serviceTime / rates[source];
+    }
+
+    /**
+     * An active period of a station starts at the last event time, see Simulation.updateActiveTimes
+     */
+    void startActive(int station) {
+        System.arraycopy(lastEventGradient, 0, activeSinceGradients, station * parameters, parameters);
+    }
+
+    /**
+     * An active period of a station ends at the last event time
+     */
+    void endActive(int station) {
+        int start = station * parameters;
+        for (int p = 0; p < parameters; p++) {
+            activeTimeGradients[start + p] += lastEventGradient[p] - activeSinceGradients[start + p];
+        }
+    }
+
+    void endEvent() {
+        System.arraycopy(clockGradient, 0, lastEventGradient, 0, parameters);
+    }
+
+    /**
+     * Measure from the current event on, see Simulation.markInitialization
+     * @param active Whether each inspector is active after the event
+     */
+    void markInitialization(boolean[] active) {
+        System.arraycopy(clockGradient, 0, initializationClockGradient, 0, parameters);
+        for (int i = 0; i < initializationActiveGradients.length / parameters; i++) {
+            activeGradient(i, active[i], initializationActiveGradients, i * parameters);
+        }
+    }
+
+    /**
+     * Write the gradient of the time a station has been active up to the current event
+     */
+    private void activeGradient(int station, boolean active, double[] target, int offset) {
+        int start = station * parameters;
+        for (int p = 0; p < parameters; p++) {
+            double gradient = activeTimeGradients[start + p];
+            if (active)
+                gradient += clockGradient[p] - activeSinceGradients[start + p];
+            target[offset + p] = gradient;
+        }
+    }
+
+    /**
+     * Derivatives of the outputs of the run
+     * @param model The line, for the parameter names
+     * @param output The output of the run, measured from the initialization snapshot if taken
+     * @param produced Products of each workstation counted in the output
+     * @param activeTimes Active time of each inspector counted in the output
+     * @param active Whether each inspector is active after the last event
+     * @param initialized Whether the output is measured from the initialization snapshot
+     */
+    SensitivityEstimates createEstimates(LineModel model, SimulationOutput output, int[] produced, double[] activeTimes,
+                                         boolean[] active, boolean initialized) {
+        double measured = output.getClock();
+        double[] measuredGradient = clockGradient.clone();
+        if (initialized) {
+            for (int p = 0; p < parameters; p++) {
+                measuredGradient[p] -= initializationClockGradient[p];
+            }
+        }
+
+        double[][] throughput = new double[produced.length][parameters];
+        for (int w = 0; w < produced.length; w++) {
+            for (int p = 0; p < parameters; p++) {
+                throughput[w][p] = -produced[w] / (measured * measured) * measuredGradient[p];
+            }
+        }
+
+        double[][] idle = new double[activeTimes.length][parameters];
+        double[] activeGradient = new double[parameters];
+        for (int i = 0; i < activeTimes.length; i++) {
+            activeGradient(i, active[i], activeGradient, 0);
+            for (int p = 0; p < parameters; p++) {
+                double gradient = activeGradient[p] - (initialized ? initializationActiveGradients[i * parameters + p] : 0);
+                //idle = 1 - active / clock
+                idle[i][p] = -(gradient * measured - activeTimes[i] * measuredGradient[p]) / (measured * measured);
+            }
+        }
+
+        String[] names = new String[parameters];
+        for (int source = 0; source < parameters; source++) {
+            names[source] = "rate " + model.getSourceName(source);
+        }
+        return new SensitivityEstimates(output, names, throughput, idle);
+    }
+}
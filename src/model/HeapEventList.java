@@ -0,0 +1,163 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * d-ary heap of events kept in parallel primitive arrays
+ * Ties in time are broken by insertion sequence.
+ */
+public class HeapEventList implements FutureEventList {
+    private final int arity;
+    private double[] times;
+    private long[] sequences;
+    private int[] kinds;
+    private int[] entities;
+    private int size;
+    private long nextSequence;
+
+    private double polledTime;
+    private int polledKind;
+    private int polledEntity;
+
+    public HeapEventList(){
+        this(2);
+    }
+
+    /**
+     * @param arity Number of children per heap node
+     */
+    public HeapEventList(int arity){
+        if (arity < 2)
+            throw new IllegalArgumentException("Invalid heap arity");
+        this.arity = arity;
+        times = new double[16];
+        sequences = new long[16];
+        kinds = new int[16];
+        entities = new int[16];
+    }
+
+    @Override
+    public void add(double time, int kind, int entity) {
+        if (size == times.length)
+            grow();
+        long sequence = nextSequence++;
+
+        //Sift the hole up until the parent is earlier
+        int hole = size++;
+        while (hole > 0) {
+            int parent = (hole - 1) / arity;
+            if (!isBefore(time, sequence, parent))
+                break;
+            move(parent, hole);
+            hole = parent;
+        }
+        set(hole, time, sequence, kind, entity);
+    }
+
+    @Override
+    public boolean poll() {
+        if (size == 0)
+            return false;
+        polledTime = times[0];
+        polledKind = kinds[0];
+        polledEntity = entities[0];
+
+        size--;
+        if (size > 0) {
+            double time = times[size];
+            long sequence = sequences[size];
+
+            //Sift the hole down until the last element fits
+            int hole = 0;
+            while (true) {
+                int child = hole * arity + 1;
+                if (child >= size)
+                    break;
+                int end = Math.min(child + arity, size);
+                int earliest = child;
+                for (int i = child + 1; i < end; i++) {
+                    if (isBefore(times[i], sequences[i], earliest))
+                        earliest = i;
+                }
+                if (!isBefore(times[earliest], sequences[earliest], time, sequence))
+                    break;
+                move(earliest, hole);
+                hole = earliest;
+            }
+            set(hole, time, sequence, kinds[size], entities[size]);
+        }
+        return true;
+    }
+
+    @Override
+    public double getPolledTime() {
+        return polledTime;
+    }
+
+    @Override
+    public int getPolledKind() {
+        return polledKind;
+    }
+
+    @Override
+    public int getPolledEntity() {
+        return polledEntity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void copyPending(double[] times, int[] kinds, int[] entities) {
+        //Insertion sort of the heap slots, pending lists are short
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && isBefore(this.times[i], sequences[i], order[j - 1])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            times[i] = this.times[order[i]];
+            kinds[i] = this.kinds[order[i]];
+            entities[i] = this.entities[order[i]];
+        }
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        nextSequence = 0;
+    }
+
+    private boolean isBefore(double time, long sequence, int index) {
+        return isBefore(time, sequence, times[index], sequences[index]);
+    }
+
+    private static boolean isBefore(double time, long sequence, double otherTime, long otherSequence) {
+        return time < otherTime || (time == otherTime && sequence < otherSequence);
+    }
+
+    private void move(int from, int to) {
+        set(to, times[from], sequences[from], kinds[from], entities[from]);
+    }
+
+    private void set(int index, double time, long sequence, int kind, int entity) {
+        times[index] = time;
+        sequences[index] = sequence;
+        kinds[index] = kind;
+        entities[index] = entity;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+    }
+}
@@ -0,0 +1,299 @@
+package model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Service time samples of a historical .dat file
+ * The text file is parsed once into a binary sidecar (file.bin) of little-endian doubles,
+ * which is memory-mapped on later runs. The sidecar is rebuilt when the text file changes.
+ * Without a usable sidecar the samples are kept in memory, as they were before the sidecar existed.
+ */
+public class HistoricalTrace {
+    private static final String SIDECAR_SUFFIX = ".bin";
+    private static final int MAGIC = 0x53494d54; //"SIMT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int SEGMENT_BITS = 27; //2^27 doubles, 1 GiB per mapping
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    private final DoubleBuffer[] segments;
+    private final int size;
+
+    private HistoricalTrace(DoubleBuffer[] segments, int size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Load a trace, through its binary sidecar when it is up to date
+     * When the sidecar can't be written or mapped, such as in a read-only directory or on a full disk,
+     * the text file is parsed into memory instead.
+     * Errors reading the text file are reported on the console, with any samples read before the error kept
+     * @param file The text file, whitespace separated numbers
+     * @return The samples of the file
+     */
+    public static HistoricalTrace load(String file) {
+        File text = new File(file);
+        try {
+            HistoricalTrace trace = loadSidecar(text, new File(file + SIDECAR_SUFFIX));
+            if (trace != null)
+                return trace;
+        } catch (IOException e) {
+            //No usable sidecar, parse below
+        }
+        return parse(text);
+    }
+
+    /**
+     * Map the sidecar, converting the text file first if the sidecar is missing or out of date
+     * @return Null if the text had an invalid number, a partial sidecar is not kept
+     */
+    private static HistoricalTrace loadSidecar(File text, File sidecar) throws IOException {
+        if (isSidecarCurrent(text, sidecar))
+            return map(sidecar);
+
+        File temporary = new File(sidecar.getPath() + ".tmp");
+        try {
+            if (!convert(text, temporary))
+                return null;
+            Files.move(temporary.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (temporary.isFile() && !temporary.delete())
+                temporary.deleteOnExit();
+        }
+        return map(sidecar);
+    }
+
+    /**
+     * Parse the text file into memory, without a sidecar
+     * Errors are reported on the console, with any samples read before the error kept
+     */
+    private static HistoricalTrace parse(File text) {
+        double[] samples = new double[1 << 10];
+        int count = 0;
+        try (InputStream in = new FileInputStream(text)) {
+            TextParser parser = new TextParser(in);
+            while (parser.next()) {
+                if (count == samples.length)
+                    samples = Arrays.copyOf(samples, (int) Math.min(count * 2L, Integer.MAX_VALUE - 8));
+                samples[count++] = parser.getValue();
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Simulation file error: " + text.getPath());
+        }
+
+        int segmentCount = Math.max(1, (int) (((long) count + SEGMENT_MASK) >>> SEGMENT_BITS));
+        DoubleBuffer[] segments = new DoubleBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int first = i << SEGMENT_BITS;
+            segments[i] = DoubleBuffer.wrap(samples, first, Math.min(count - first, 1 << SEGMENT_BITS)).slice();
+        }
+        return new HistoricalTrace(segments, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int index) {
+        return segments[index >>> SEGMENT_BITS].get(index & SEGMENT_MASK);
+    }
+
+    /**
+     * @return A read-only view of all samples
+     * @throws UnsupportedOperationException If the trace spans more than one mapping, use get instead
+     */
+    public DoubleBuffer asDoubleBuffer() {
+        if (segments.length > 1)
+            throw new UnsupportedOperationException("Trace too large for a single buffer");
+        return segments[0].asReadOnlyBuffer();
+    }
+
+    private static boolean isSidecarCurrent(File text, File sidecar) throws IOException {
+        if (!sidecar.isFile() || sidecar.length() < HEADER_BYTES)
+            return false;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = new RandomAccessFile(sidecar, "r").getChannel()) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0)
+                    break;
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION)
+            return false;
+        long count = header.getLong();
+        long sourceLength = header.getLong();
+        long sourceModified = header.getLong();
+        return sourceLength == text.length() && sourceModified == text.lastModified()
+                && sidecar.length() == HEADER_BYTES + count * Double.BYTES;
+    }
+
+    /**
+     * Parse a text file into a binary file
+     * @return False if the text had an invalid number, the binary file then holds the samples before it
+     */
+    private static boolean convert(File text, File binary) throws IOException {
+        boolean complete = true;
+        long count = 0;
+        try (InputStream in = new FileInputStream(text);
+             FileChannel channel = new RandomAccessFile(binary, "rw").getChannel()) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(HEADER_BYTES);
+
+            TextParser parser = new TextParser(in);
+            try {
+                while (parser.next()) {
+                    if (buffer.remaining() < Double.BYTES)
+                        drain(channel, buffer);
+                    buffer.putDouble(parser.getValue());
+                    count++;
+                }
+            } catch (NumberFormatException e) {
+                complete = false;
+            }
+            drain(channel, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(text.length()).putLong(text.lastModified());
+            buffer.flip();
+            channel.write(buffer, 0);
+        }
+        return complete;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static HistoricalTrace map(File binary) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(binary, "r").getChannel()) {
+            long count = (channel.size() - HEADER_BYTES) / Double.BYTES;
+            if (count > Integer.MAX_VALUE)
+                throw new IOException("Trace too large: " + binary);
+            int segmentCount = Math.max(1, (int) ((count + SEGMENT_MASK) >>> SEGMENT_BITS));
+            DoubleBuffer[] segments = new DoubleBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i << SEGMENT_BITS;
+                long length = Math.min(count - first, 1L << SEGMENT_BITS);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * Double.BYTES, length * Double.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            return new HistoricalTrace(segments, (int) count);
+        }
+    }
+
+    /**
+     * Reads whitespace separated decimal numbers from a byte stream without allocating per number
+     * Plain decimals of up to 15 significant digits are converted exactly as (digits / 10^k);
+     * anything else falls back to Double.parseDouble, so results always match it.
+     */
+    private static class TextParser {
+        private static final double[] POWERS_OF_TEN = new double[23]; //exact as doubles
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        private final char[] token = new char[64];
+        private double value;
+
+        TextParser(InputStream in) {
+            this.in = in;
+        }
+
+        double getValue() {
+            return value;
+        }
+
+        /**
+         * Parse the next number
+         * @return False at the end of the input
+         * @throws NumberFormatException If the next token is not a number
+         */
+        boolean next() throws IOException {
+            int c = read();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f')
+                c = read();
+            if (c < 0)
+                return false;
+
+            int length = 0;
+            while (c >= 0 && c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\f') {
+                if (length == token.length)
+                    throw new NumberFormatException("Token too long");
+                token[length++] = (char) c;
+                c = read();
+            }
+            value = parse(length);
+            return true;
+        }
+
+        private double parse(int length) {
+            int i = 0;
+            boolean negative = false;
+            if (token[0] == '-' || token[0] == '+') {
+                negative = token[0] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = -1; //-1 until the decimal point
+            for (; i < length; i++) {
+                char ch = token[i];
+                if (ch >= '0' && ch <= '9') {
+                    if (mantissa != 0 || ch != '0')
+                        digits++;
+                    mantissa = mantissa * 10 + (ch - '0');
+                    if (fractionDigits >= 0)
+                        fractionDigits++;
+                } else if (ch == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    break;
+                }
+            }
+            int start = (token[0] == '-' || token[0] == '+') ? 1 : 0;
+            boolean plain = i == length && i > start && !(i == start + 1 && fractionDigits == 0);
+            if (plain && digits <= 15 && Math.max(fractionDigits, 0) < POWERS_OF_TEN.length) {
+                double result = mantissa / POWERS_OF_TEN[Math.max(fractionDigits, 0)];
+                return negative ? -result : result;
+            }
+            return Double.parseDouble(new String(token, 0, length));
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package model;
+
+/**
+ * The distribution service times are drawn from in random runs
+ * The empirical models are built from each source's historical data, so a run can use any seed
+ * instead of replaying the same samples in the same order.
+ */
+public enum InputModel {
+    /** Exponential with the rate of the line configuration, the default */
+    Exponential,
+    /** Piecewise-linear interpolation of the empirical distribution function */
+    InverseCdf,
+    /** Histogram of the data, drawn through an alias table */
+    Alias,
+    /** Log-normal kernel density estimate, smooth and unbounded above */
+    Kernel
+}
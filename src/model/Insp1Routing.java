@@ -1,5 +1,25 @@
 package model;
 
 public interface Insp1Routing {
-    public abstract ProductType determineC1Destination(int ws1BufferC1, int ws2BufferC1, int ws3BufferC1);
+    /**
+     * Determine the destination of a component that can go to several buffers
+     * @param levels Current level of every buffer of the line
+     * @param capacities Capacity of every buffer of the line
+     * @param candidates The buffers accepting the component, in priority order
+     * @return Index into candidates of the destination, -1 if all candidate buffers are full
+     */
+    public abstract int determineDestination(int[] levels, int[] capacities, int[] candidates);
+
+    /**
+     * @return The state the routing keeps between components, for checkpoints
+     */
+    public default long getState() {
+        return 0;
+    }
+
+    /**
+     * Continue from a state returned by getState
+     */
+    public default void setState(long state) {
+    }
 }
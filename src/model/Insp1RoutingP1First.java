@@ -5,15 +5,17 @@ public class Insp1RoutingP1First implements Insp1Routing {
 
     }
 
+    /**
+     * Send the component to the emptiest buffer that isn't full, ties going to the earliest candidate
+     */
     @Override
-    public ProductType determineC1Destination(int ws1BufferC1, int ws2BufferC1, int ws3BufferC1) {
-        if(ws1BufferC1 >= 2 && ws2BufferC1 >= 2 && ws3BufferC1 >= 2) //All buffers full
-            return null;
-        else if (ws1BufferC1 <= ws2BufferC1 && ws1BufferC1 <= ws3BufferC1)
-            return ProductType.P1;
-        else if (ws2BufferC1 <= ws3BufferC1)
-            return ProductType.P2;
-        else
-            return ProductType.P3;
+    public int determineDestination(int[] levels, int[] capacities, int[] candidates) {
+        int destination = -1;
+        for (int i = 0; i < candidates.length; i++) {
+            int buffer = candidates[i];
+            if (levels[buffer] < capacities[buffer] && (destination == -1 || levels[buffer] < levels[candidates[destination]]))
+                destination = i;
+        }
+        return destination; //-1 if all buffers full
     }
 }
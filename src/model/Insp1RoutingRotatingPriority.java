@@ -1,53 +1,43 @@
 package model;
 
 public class Insp1RoutingRotatingPriority implements Insp1Routing {
-    //C1 priority value
+    //Candidate with priority on ties, moves on after every routed component
     private int priority;
 
     public Insp1RoutingRotatingPriority(){
-        priority = 1;
+        priority = 0;
     }
 
+    /**
+     * Send the component to the emptiest buffer that isn't full, ties going to the candidate
+     * with priority, then the ones after it in order
+     */
     @Override
-    public ProductType determineC1Destination(int ws1BufferC1, int ws2BufferC1, int ws3BufferC1) {
-        if (ws1BufferC1 >= 2 && ws2BufferC1 >= 2 && ws3BufferC1 >= 2) //All buffers full
-            return null;
-        switch (priority) {
-            case 1:
-                //change priority for next case
-                priority = 2;
-            {
-                if (ws1BufferC1 <= ws2BufferC1 && ws1BufferC1 <= ws3BufferC1)
-                    return ProductType.P1;
-                else if (ws2BufferC1 <= ws3BufferC1)
-                    return ProductType.P2;
-                else
-                    return ProductType.P3;
-            }
-            case 2:
-                //change priority for next case
-                priority = 3;
-            {
-                if (ws2BufferC1 <= ws1BufferC1 && ws2BufferC1 <= ws3BufferC1)
-                    return ProductType.P2;
-                else if (ws3BufferC1 <= ws1BufferC1)
-                    return ProductType.P3;
-                else
-                    return ProductType.P1;
-            }
-            case 3:
-                //change priority for next case
-                priority = 1;
-            {
-                if (ws3BufferC1 <= ws1BufferC1 && ws3BufferC1 <= ws2BufferC1)
-                    return ProductType.P3;
-                else if (ws1BufferC1 <= ws2BufferC1)
-                    return ProductType.P1;
-                else
-                    return ProductType.P2;
-            }
-            default:
-                return null;
+    public int determineDestination(int[] levels, int[] capacities, int[] candidates) {
+        int count = candidates.length;
+        int first = priority % count;
+        int destination = -1;
+        for (int n = 0; n < count; n++) {
+            int i = (first + n) % count;
+            int buffer = candidates[i];
+            if (levels[buffer] < capacities[buffer] && (destination == -1 || levels[buffer] < levels[candidates[destination]]))
+                destination = i;
         }
+        if (destination == -1)
+            return -1; //All buffers full, priority unchanged
+
+        //change priority for next case
+        priority = (first + 1) % count;
+        return destination;
+    }
+
+    @Override
+    public long getState() {
+        return priority;
+    }
+
+    @Override
+    public void setState(long state) {
+        priority = (int) state;
     }
 }
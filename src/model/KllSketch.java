@@ -0,0 +1,223 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantiles of a series of observations in bounded memory (Karnin, Lang and Liberty, 2016)
+ * Observations are kept in levels of compactors; an item at level h stands for 2^h observations.
+ * When the sketch is full the lowest full level is sorted and every other item, from a random
+ * start, moves up a level. Level capacities shrink by 2/3 going down from the top, so the sketch
+ * holds O(k log(n / k)) items and ranks are off by about 1.7 / k of the count. Sketches merge by
+ * concatenating levels, so replications can be summarized together.
+ *
+ * The compaction coin flips come from the sketch's own generator, runs stay reproducible and
+ * don't draw from the simulation's streams.
+ */
+public class KllSketch {
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private double[][] levels = {new double[MIN_CAPACITY]};
+    private int[] sizes = {0};
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long coins = 0x9E3779B97F4A7C15L; //xorshift state
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k Capacity of the top level, accuracy grows and memory grows linearly with it
+     */
+    public KllSketch(int k) {
+        if (k < MIN_CAPACITY)
+            throw new IllegalArgumentException("Invalid sketch size");
+        this.k = k;
+    }
+
+    public void add(double value) {
+        count++;
+        sum += value;
+        if (count == 1 || value < min)
+            min = value;
+        if (count == 1 || value > max)
+            max = value;
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Combine the observations of another sketch into this one
+     * @param other The sketch to merge, unchanged
+     */
+    public void merge(KllSketch other) {
+        if (other.count == 0)
+            return;
+        for (int h = 0; h < other.sizes.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        sum += other.sum;
+        compress();
+    }
+
+    /**
+     * Drop every observation
+     */
+    public void clear() {
+        levels = new double[][]{new double[MIN_CAPACITY]};
+        sizes = new int[]{0};
+        count = 0;
+        sum = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The exact mean, NaN without observations
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param fraction Rank as a fraction of the count, e.g. 0.99
+     * @return The approximate quantile, NaN without observations
+     */
+    public double getQuantile(double fraction) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("Invalid quantile");
+        if (count == 0)
+            return Double.NaN;
+        if (fraction == 0)
+            return min;
+        if (fraction == 1)
+            return max;
+
+        int items = 0;
+        for (int size : sizes) {
+            items += size;
+        }
+        double[] values = new double[items];
+        long[] weights = new long[items];
+        int n = 0;
+        for (int h = 0; h < sizes.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+        //Sort the items with their weights, by value
+        Integer[] order = new Integer[items];
+        for (int i = 0; i < items; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        double target = fraction * total;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target)
+                return values[i];
+        }
+        return max;
+    }
+
+    /**
+     * @return Items held, the memory used in doubles
+     */
+    public int getRetained() {
+        int items = 0;
+        for (int size : sizes) {
+            items += size;
+        }
+        return items;
+    }
+
+    private void append(int h, double value) {
+        while (h >= sizes.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = new double[MIN_CAPACITY];
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        }
+        if (sizes[h] == levels[h].length)
+            levels[h] = Arrays.copyOf(levels[h], levels[h].length * 2);
+        levels[h][sizes[h]++] = value;
+    }
+
+    /**
+     * @return Items level h may hold before it's compacted
+     */
+    private int capacity(int h) {
+        int depth = sizes.length - 1 - h;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3, depth)));
+    }
+
+    /**
+     * Compact the lowest full level until the sketch is within its capacity
+     */
+    private void compress() {
+        while (true) {
+            int retained = 0;
+            int capacity = 0;
+            for (int h = 0; h < sizes.length; h++) {
+                retained += sizes[h];
+                capacity += capacity(h);
+            }
+            if (retained <= capacity)
+                return;
+            for (int h = 0; h < sizes.length; h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move every other item of a level, from a random start, to the level above
+     * An odd item out stays behind, so the total weight is unchanged.
+     */
+    private void compact(int h) {
+        int size = sizes[h];
+        double[] level = levels[h];
+        Arrays.sort(level, 0, size);
+        int kept = size % 2;
+        double odd = level[size - 1];
+        coins ^= coins << 13;
+        coins ^= coins >>> 7;
+        coins ^= coins << 17;
+        int start = (int) (coins & 1);
+        for (int i = start; i < size - kept; i += 2) {
+            append(h + 1, level[i]);
+        }
+        sizes[h] = kept;
+        if (kept == 1)
+            level[0] = odd;
+    }
+}
@@ -0,0 +1,246 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects the design with the largest mean of a metric with the fully sequential KN procedure
+ * (Kim and Nelson, 2001). After a first stage of n0 replications of every design, designs are
+ * screened after each further replication and dropped once their mean falls clearly below
+ * another's, so later replications only go to the close contenders. With probability at least
+ * the confidence, the selected design is within the indifference zone of the best.
+ *
+ * Replication r of every design uses the same random number substreams, which makes the
+ * variance of the pairwise differences, and so the replications needed, much smaller.
+ */
+public class KnSelectionProcedure {
+    private final SimulationReplicationRunner runner;
+    private final SimulationMetric metric;
+    private final double indifferenceZone;
+    private final double confidence;
+    private final int firstStage;
+    private final int maxReplications;
+
+    /**
+     * @param runner Runs the replications of each stage
+     * @param metric The metric to maximize
+     * @param indifferenceZone Smallest difference in the metric worth detecting
+     * @param confidence Probability of correct selection, e.g. 0.95
+     * @param firstStage Replications of every design before screening, at least 2
+     * @param maxReplications Replications of a design at which the best mean is taken anyway
+     */
+    public KnSelectionProcedure(SimulationReplicationRunner runner, SimulationMetric metric, double indifferenceZone,
+                                double confidence, int firstStage, int maxReplications) {
+        if (!(indifferenceZone > 0) || confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("Invalid selection target");
+        if (firstStage < 2 || maxReplications < firstStage)
+            throw new IllegalArgumentException("Invalid replication limits");
+        this.runner = runner;
+        this.metric = metric;
+        this.indifferenceZone = indifferenceZone;
+        this.confidence = confidence;
+        this.firstStage = firstStage;
+        this.maxReplications = maxReplications;
+    }
+
+    /**
+     * Run the procedure
+     * @param designs The alternatives, at least 2
+     * @param seed The seed whose replication substreams are used
+     * @param totalProducts How many products each replication simulates
+     * @param useInitialization Discard the initialization period from the output
+     * @return The selected design and the statistics of every design
+     */
+    public Result run(List<SimulationDesign> designs, long seed, int totalProducts, boolean useInitialization) {
+        int k = designs.size();
+        if (k < 2)
+            throw new IllegalArgumentException("At least 2 designs needed");
+
+        double[][] values = new double[k][maxReplications];
+        double[] sums = new double[k]; //over the replications screened so far
+        int[] eliminatedAt = new int[k]; //replication count when dropped, 0 while in contention
+        List<Integer> contenders = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            contenders.add(i);
+        }
+
+        //First stage, the variances of the differences are fixed from here on
+        String metricName = runStage(designs, contenders, 0, firstStage, seed, totalProducts, useInitialization, values);
+        double[][] variances = new double[k][k];
+        double maxVariance = 0;
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < firstStage; j++) {
+                sums[i] += values[i][j];
+            }
+            for (int l = i + 1; l < k; l++) {
+                WelfordAccumulator difference = new WelfordAccumulator();
+                for (int j = 0; j < firstStage; j++) {
+                    difference.add(values[i][j] - values[l][j]);
+                }
+                variances[i][l] = variances[l][i] = difference.getVariance();
+                maxVariance = Math.max(maxVariance, difference.getVariance());
+            }
+        }
+        double alpha = 1 - confidence;
+        double eta = 0.5 * (Math.pow(2 * alpha / (k - 1), -2.0 / (firstStage - 1)) - 1);
+        double hSquared = 2 * eta * (firstStage - 1);
+        //Past this many replications the continuation region is empty for every pair
+        double lastStage = Math.floor(hSquared * maxVariance / (indifferenceZone * indifferenceZone)) + 1;
+
+        int replications = firstStage;
+        screen(contenders, replications, sums, variances, hSquared, eliminatedAt);
+        while (contenders.size() > 1 && replications < lastStage && replications < maxReplications) {
+            //Keep every worker busy, contenders always have the same replication count
+            int batch = Math.max(1, runner.getParallelism() / contenders.size());
+            batch = (int) Math.min(batch, Math.min(lastStage, maxReplications) - replications);
+            runStage(designs, contenders, replications, batch, seed, totalProducts, useInitialization, values);
+            for (int j = 0; j < batch && contenders.size() > 1; j++) {
+                for (int i : contenders) {
+                    sums[i] += values[i][replications];
+                }
+                replications++;
+                screen(contenders, replications, sums, variances, hSquared, eliminatedAt);
+            }
+        }
+        boolean conclusive = contenders.size() == 1 || replications >= lastStage;
+
+        int best = contenders.get(0);
+        for (int i : contenders) {
+            if (sums[i] > sums[best])
+                best = i;
+        }
+        int[] counts = new int[k];
+        for (int i = 0; i < k; i++) {
+            counts[i] = eliminatedAt[i] > 0 ? eliminatedAt[i] : replications;
+        }
+        return new Result(designs, metricName, values, counts, eliminatedAt, best, conclusive);
+    }
+
+    /**
+     * Run replications [start, start + count) of every design in contention
+     * @return The name of the metric on the line
+     */
+    private String runStage(List<SimulationDesign> designs, List<Integer> contenders, int start, int count, long seed,
+                            int totalProducts, boolean useInitialization, double[][] values) {
+        List<SimulationScenario> scenarios = new ArrayList<>(contenders.size() * count);
+        for (int i : contenders) {
+            for (int j = start; j < start + count; j++) {
+                scenarios.add(designs.get(i).createScenario(seed, j, totalProducts, useInitialization));
+            }
+        }
+        List<SimulationOutput> outputs = runner.runAll(scenarios);
+        int next = 0;
+        for (int i : contenders) {
+            for (int j = start; j < start + count; j++) {
+                values[i][j] = metric.valueOf(outputs.get(next++));
+            }
+        }
+        return metric.getName(outputs.get(0));
+    }
+
+    /**
+     * Drop every design whose mean is below another's by more than the continuation region half-width
+     */
+    private void screen(List<Integer> contenders, int r, double[] sums, double[][] variances, double hSquared, int[] eliminatedAt) {
+        List<Integer> survivors = new ArrayList<>(contenders.size());
+        for (int i : contenders) {
+            boolean keep = true;
+            for (int l : contenders) {
+                if (l == i)
+                    continue;
+                double w = Math.max(0, indifferenceZone / (2.0 * r)
+                        * (hSquared * variances[i][l] / (indifferenceZone * indifferenceZone) - r));
+                if (sums[i] / r < sums[l] / r - w) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep)
+                survivors.add(i);
+            else
+                eliminatedAt[i] = r;
+        }
+        contenders.retainAll(survivors);
+    }
+
+    /**
+     * Outcome of a selection, with the replications and mean of every design
+     */
+    public static class Result {
+        private final List<SimulationDesign> designs;
+        private final String metricName;
+        private final double[] means;
+        private final int[] replications;
+        private final int[] eliminatedAt;
+        private final int best;
+        private final boolean conclusive;
+
+        private Result(List<SimulationDesign> designs, String metricName, double[][] values, int[] replications,
+                       int[] eliminatedAt, int best, boolean conclusive) {
+            this.designs = designs;
+            this.metricName = metricName;
+            this.replications = replications;
+            this.eliminatedAt = eliminatedAt;
+            this.best = best;
+            this.conclusive = conclusive;
+            means = new double[designs.size()];
+            for (int i = 0; i < means.length; i++) {
+                for (int j = 0; j < replications[i]; j++) {
+                    means[i] += values[i][j];
+                }
+                means[i] /= replications[i];
+            }
+        }
+
+        public SimulationDesign getBest() {
+            return designs.get(best);
+        }
+
+        public double getMean(int design) {
+            return means[design];
+        }
+
+        public int getReplications(int design) {
+            return replications[design];
+        }
+
+        /**
+         * @return Total replications over all designs
+         */
+        public int getTotalReplications() {
+            int total = 0;
+            for (int count : replications) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return False if the replication limit stopped the procedure before the designs left were separated
+         */
+        public boolean isConclusive() {
+            return conclusive;
+        }
+
+        public void printOutput() {
+            Integer[] order = new Integer[designs.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble((Integer i) -> means[i]).reversed());
+
+            System.out.println("------------------------------");
+            System.out.println("Selected Design:     " + designs.get(best).getName() + (conclusive ? "" : " (replication limit reached)"));
+            System.out.println("Total Replications:  " + getTotalReplications());
+            System.out.println();
+            System.out.printf("%-40s %6s %14s\n", "Design", "Reps", metricName);
+            for (int i : order) {
+                System.out.printf("%-40s %6d %14.8f %s\n", designs.get(i).getName(), replications[i], means[i],
+                        i == best ? "selected" : eliminatedAt[i] > 0 ? "eliminated" : "in contention");
+            }
+            System.out.println("------------------------------");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package model;
+
+/**
+ * Follows every component from the start of its inspection to the end of the assembly that uses it
+ * Buffers are FIFO, so each keeps the times of the components it holds in a ring of primitive slots
+ * sized to its capacity, and nothing is allocated per component. Times are summarized in KllSketch
+ * as they complete, so memory stays bounded however long the run.
+ */
+class LeadTimeTracker {
+    private final LineModel model;
+
+    //Per inspector, the component being inspected or held
+    private final double[] inspectionStart;
+    private final double[] inspectionEnd;
+
+    //Per buffer, a ring of slots in the shared arrays
+    private final int[] ringStart;
+    private final int[] ringCapacity;
+    private final int[] head;
+    private final int[] size;
+    private final double[] entered; //time the component entered the buffer
+    private final double[] origin; //time its inspection started
+
+    //Per workstation, the first inspection start of the components in assembly
+    private final double[] assemblyOrigin;
+
+    private final KllSketch[] hold; //per component, inspection end to buffer entry
+    private final KllSketch[] wait; //per buffer, entry to the start of assembly
+    private final KllSketch[] lead; //per product, first inspection start to assembly end
+
+    LeadTimeTracker(LineModel model) {
+        this.model = model;
+        int inspectorCount = model.getInspectorCount();
+        inspectionStart = new double[inspectorCount];
+        inspectionEnd = new double[inspectorCount];
+
+        int bufferCount = model.getBufferCount();
+        ringStart = new int[bufferCount];
+        ringCapacity = new int[bufferCount];
+        head = new int[bufferCount];
+        size = new int[bufferCount];
+        int slots = 0;
+        for (int b = 0; b < bufferCount; b++) {
+            ringStart[b] = slots;
+            ringCapacity[b] = model.getBufferCapacity(b);
+            slots += ringCapacity[b];
+        }
+        entered = new double[slots];
+        origin = new double[slots];
+
+        assemblyOrigin = new double[model.getWorkstationCount()];
+        hold = sketches(model.getComponentCount());
+        wait = sketches(bufferCount);
+        lead = sketches(model.getWorkstationCount());
+    }
+
+    private static KllSketch[] sketches(int count) {
+        KllSketch[] sketches = new KllSketch[count];
+        for (int s = 0; s < count; s++) {
+            sketches[s] = new KllSketch();
+        }
+        return sketches;
+    }
+
+    void startInspection(int inspector, double clock) {
+        inspectionStart[inspector] = clock;
+    }
+
+    void endInspection(int inspector, double clock) {
+        inspectionEnd[inspector] = clock;
+    }
+
+    /**
+     * The inspector's component goes into a buffer, now or at the end of a hold
+     * Must be called before the inspector starts its next inspection.
+     */
+    void enterBuffer(int inspector, int buffer, double clock) {
+        hold[model.getBufferComponent(buffer)].add(clock - inspectionEnd[inspector]);
+        int slot = ringStart[buffer] + (head[buffer] + size[buffer]) % ringCapacity[buffer];
+        entered[slot] = clock;
+        origin[slot] = inspectionStart[inspector];
+        size[buffer]++;
+    }
+
+    /**
+     * The workstation takes the oldest component of each of its buffers
+     */
+    void startAssembly(int workstation, double clock) {
+        double first = clock;
+        for (int buffer = model.getWorkstationBufferStart(workstation); buffer < model.getWorkstationBufferEnd(workstation); buffer++) {
+            int slot = ringStart[buffer] + head[buffer];
+            wait[buffer].add(clock - entered[slot]);
+            first = Math.min(first, origin[slot]);
+            head[buffer] = (head[buffer] + 1) % ringCapacity[buffer];
+            size[buffer]--;
+        }
+        assemblyOrigin[workstation] = first;
+    }
+
+    void completeAssembly(int workstation, double clock) {
+        lead[workstation].add(clock - assemblyOrigin[workstation]);
+    }
+
+    /**
+     * Drop the times recorded so far, components in progress are still followed
+     */
+    void reset() {
+        for (KllSketch[] sketches : new KllSketch[][]{hold, wait, lead}) {
+            for (KllSketch sketch : sketches) {
+                sketch.clear();
+            }
+        }
+    }
+
+    LeadTimes createLeadTimes() {
+        return new LeadTimes(model, hold, wait, lead);
+    }
+}
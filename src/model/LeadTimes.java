@@ -0,0 +1,106 @@
+package model;
+
+/**
+ * Distributions of the times components and products spend in the line, see LeadTimeTracker
+ * Hold is from the end of a component's inspection to its entry into a buffer, wait from the entry
+ * to the start of its assembly, and lead from the first inspection start of a product's components
+ * to the end of its assembly. Quantiles are approximate, see KllSketch.
+ */
+public class LeadTimes {
+    private final String[] componentNames;
+    private final String[] bufferNames;
+    private final String[] productNames;
+    private final KllSketch[] hold;
+    private final KllSketch[] wait;
+    private final KllSketch[] lead;
+
+    LeadTimes(LineModel model, KllSketch[] hold, KllSketch[] wait, KllSketch[] lead) {
+        componentNames = new String[hold.length];
+        for (int c = 0; c < hold.length; c++) {
+            componentNames[c] = model.getComponentName(c);
+        }
+        bufferNames = new String[wait.length];
+        for (int b = 0; b < wait.length; b++) {
+            bufferNames[b] = model.getBufferName(b);
+        }
+        productNames = new String[lead.length];
+        for (int w = 0; w < lead.length; w++) {
+            productNames[w] = model.getProductName(w);
+        }
+        this.hold = hold;
+        this.wait = wait;
+        this.lead = lead;
+    }
+
+    private LeadTimes(LeadTimes names, KllSketch[] hold, KllSketch[] wait, KllSketch[] lead) {
+        componentNames = names.componentNames;
+        bufferNames = names.bufferNames;
+        productNames = names.productNames;
+        this.hold = hold;
+        this.wait = wait;
+        this.lead = lead;
+    }
+
+    /**
+     * Pool the times of runs of the same line, such as the replications of a design
+     * @param other Lead times of another run, unchanged
+     * @return The pooled lead times, this is unchanged
+     */
+    public LeadTimes merge(LeadTimes other) {
+        if (other.lead.length != lead.length || other.wait.length != wait.length)
+            throw new IllegalArgumentException("Lead times of different lines");
+        return new LeadTimes(this, merge(hold, other.hold), merge(wait, other.wait), merge(lead, other.lead));
+    }
+
+    private static KllSketch[] merge(KllSketch[] first, KllSketch[] second) {
+        KllSketch[] merged = new KllSketch[first.length];
+        for (int s = 0; s < first.length; s++) {
+            merged[s] = new KllSketch();
+            merged[s].merge(first[s]);
+            merged[s].merge(second[s]);
+        }
+        return merged;
+    }
+
+    /**
+     * @param component The component
+     * @return Minutes from the end of inspection to entering a buffer
+     */
+    public KllSketch getHold(int component) {
+        return hold[component];
+    }
+
+    /**
+     * @param buffer The buffer
+     * @return Minutes from entering the buffer to the start of assembly
+     */
+    public KllSketch getWait(int buffer) {
+        return wait[buffer];
+    }
+
+    /**
+     * @param workstation The workstation of the product
+     * @return Minutes from the first inspection start to the end of assembly
+     */
+    public KllSketch getLead(int workstation) {
+        return lead[workstation];
+    }
+
+    public void printOutput() {
+        System.out.println("Lead Times (minutes):    count      mean       p50       p90       p99       max");
+        for (int c = 0; c < hold.length; c++) {
+            printRow("Hold " + componentNames[c], hold[c]);
+        }
+        for (int b = 0; b < wait.length; b++) {
+            printRow("Wait " + bufferNames[b], wait[b]);
+        }
+        for (int w = 0; w < lead.length; w++) {
+            printRow("Lead " + productNames[w], lead[w]);
+        }
+    }
+
+    private static void printRow(String name, KllSketch sketch) {
+        System.out.printf("%-14s %15d %9.4f %9.4f %9.4f %9.4f %9.4f\n", name, sketch.getCount(), sketch.getMean(),
+                sketch.getQuantile(0.5), sketch.getQuantile(0.9), sketch.getQuantile(0.99), sketch.getMax());
+    }
+}
@@ -0,0 +1,427 @@
+package model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Description of a production line: its components, the inspectors that produce them and the
+ * workstations that assemble them into products. Compiled into a LineModel to be simulated.
+ *
+ * Lines are described in a properties file:
+ * <pre>
+ * components = C1, C2
+ * inspectors = insp1
+ * inspector.insp1.components = C1, C2
+ * inspector.insp1.weights = 1, 1              #chance of inspecting each component next, default equal
+ * inspector.insp1.service.C1 = 0.0965         #exponential rate of inspection
+ * inspector.insp1.trace.C1 = servinsp1.dat    #historical inspection times, optional
+ * workstations = ws1
+ * workstation.ws1.product = P1
+ * workstation.ws1.components = C1, C2         #bill of materials, one of each per product
+ * workstation.ws1.capacity = 2                #buffer capacity, default 2
+ * workstation.ws1.capacity.C2 = 3             #capacity of a single buffer
+ * workstation.ws1.service = 0.2171            #exponential rate of assembly
+ * workstation.ws1.trace = ws1.dat             #historical assembly times, optional
+ * </pre>
+ * A component used by several workstations is routed by the run's Insp1Routing, which gets the
+ * candidate buffers in the order the workstations are listed.
+ */
+public class LineConfiguration {
+    public static final int DEFAULT_CAPACITY = 2;
+
+    private final String name;
+    private final List<String> components;
+    private final List<Inspector> inspectors;
+    private final List<Workstation> workstations;
+
+    public LineConfiguration(String name, List<String> components, List<Inspector> inspectors, List<Workstation> workstations) {
+        this.name = name;
+        this.components = Collections.unmodifiableList(new ArrayList<>(components));
+        this.inspectors = Collections.unmodifiableList(new ArrayList<>(inspectors));
+        this.workstations = Collections.unmodifiableList(new ArrayList<>(workstations));
+    }
+
+    /**
+     * The line of the project specification, three workstations fed by two inspectors
+     * @return The built-in configuration
+     */
+    public static LineConfiguration builtIn() {
+        List<String> components = Arrays.asList("C1", "C2", "C3");
+
+        List<Inspector> inspectors = new ArrayList<>();
+        inspectors.add(new Inspector("insp1", Collections.singletonList("C1"), new double[]{1},
+                new double[]{0.096544573}, new String[]{"servinsp1.dat"}));
+        inspectors.add(new Inspector("insp2", Arrays.asList("C2", "C3"), new double[]{1, 1},
+                new double[]{0.06436289, 0.048466621}, new String[]{"servinsp22.dat", "servinsp23.dat"}));
+
+        List<Workstation> workstations = new ArrayList<>();
+        workstations.add(new Workstation("ws1", "P1", Collections.singletonList("C1"), new int[]{DEFAULT_CAPACITY},
+                0.217182777, "ws1.dat"));
+        workstations.add(new Workstation("ws2", "P2", Arrays.asList("C1", "C2"), new int[]{DEFAULT_CAPACITY, DEFAULT_CAPACITY},
+                0.090150136, "ws2.dat"));
+        workstations.add(new Workstation("ws3", "P3", Arrays.asList("C1", "C3"), new int[]{DEFAULT_CAPACITY, DEFAULT_CAPACITY},
+                0.113693469, "ws3.dat"));
+
+        return new LineConfiguration("built-in", components, inspectors, workstations);
+    }
+
+    /**
+     * Read a line description from a properties file
+     * @param file The file to read
+     * @return The configuration
+     * @throws IOException If the file can't be read
+     * @throws IllegalArgumentException If the description is incomplete or invalid
+     */
+    public static LineConfiguration load(String file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return parse(file, properties);
+    }
+
+    /**
+     * Build a configuration from line description properties
+     * @param name The name of the configuration
+     * @param properties The description, in the format of the class comment
+     * @return The configuration
+     */
+    public static LineConfiguration parse(String name, Properties properties) {
+        List<String> components = list(properties, "components");
+
+        List<Inspector> inspectors = new ArrayList<>();
+        for (String inspector : list(properties, "inspectors")) {
+            String prefix = "inspector." + inspector + ".";
+            List<String> inspected = list(properties, prefix + "components");
+            double[] weights = new double[inspected.size()];
+            if (properties.getProperty(prefix + "weights") != null) {
+                List<String> values = list(properties, prefix + "weights");
+                if (values.size() != inspected.size())
+                    throw new IllegalArgumentException("One weight per component needed: " + prefix + "weights");
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = number(prefix + "weights", values.get(i));
+                }
+            } else {
+                Arrays.fill(weights, 1);
+            }
+            double[] rates = new double[inspected.size()];
+            String[] traces = new String[inspected.size()];
+            for (int i = 0; i < inspected.size(); i++) {
+                rates[i] = number(properties, prefix + "service." + inspected.get(i));
+                traces[i] = trimmed(properties, prefix + "trace." + inspected.get(i));
+            }
+            inspectors.add(new Inspector(inspector, inspected, weights, rates, traces));
+        }
+
+        List<Workstation> workstations = new ArrayList<>();
+        for (String workstation : list(properties, "workstations")) {
+            String prefix = "workstation." + workstation + ".";
+            String product = trimmed(properties, prefix + "product");
+            if (product == null)
+                throw new IllegalArgumentException("Missing property: " + prefix + "product");
+            List<String> materials = list(properties, prefix + "components");
+            int defaultCapacity = properties.getProperty(prefix + "capacity") != null
+                    ? (int) number(properties, prefix + "capacity") : DEFAULT_CAPACITY;
+            int[] capacities = new int[materials.size()];
+            for (int i = 0; i < capacities.length; i++) {
+                String key = prefix + "capacity." + materials.get(i);
+                capacities[i] = properties.getProperty(key) != null ? (int) number(properties, key) : defaultCapacity;
+            }
+            workstations.add(new Workstation(workstation, product, materials, capacities,
+                    number(properties, prefix + "service"), trimmed(properties, prefix + "trace")));
+        }
+
+        return new LineConfiguration(name, components, inspectors, workstations);
+    }
+
+    /**
+     * Copy the line with every buffer of one workstation set to a new capacity
+     * @param workstation Index of the workstation
+     * @param capacity The new capacity
+     * @return The modified configuration
+     */
+    public LineConfiguration withCapacity(int workstation, int capacity) {
+        List<Workstation> modified = new ArrayList<>(workstations);
+        Workstation original = workstations.get(workstation);
+        int[] capacities = new int[original.getComponents().size()];
+        Arrays.fill(capacities, capacity);
+        modified.set(workstation, new Workstation(original.getName(), original.getProduct(), original.getComponents(), capacities,
+                original.getServiceRate(), original.getTrace()));
+        return new LineConfiguration(name, components, inspectors, modified);
+    }
+
+    /**
+     * Copy the line with one buffer set to a new capacity
+     * @param workstation Index of the workstation
+     * @param buffer Index of the buffer among the workstation's components
+     * @param capacity The new capacity
+     * @return The modified configuration
+     */
+    public LineConfiguration withBufferCapacity(int workstation, int buffer, int capacity) {
+        List<Workstation> modified = new ArrayList<>(workstations);
+        Workstation original = workstations.get(workstation);
+        int[] capacities = original.getCapacities();
+        capacities[buffer] = capacity;
+        modified.set(workstation, new Workstation(original.getName(), original.getProduct(), original.getComponents(), capacities,
+                original.getServiceRate(), original.getTrace()));
+        return new LineConfiguration(name, components, inspectors, modified);
+    }
+
+    /**
+     * Copy the line with every service rate scaled
+     * @param inspectorMultiplier Multiplier of all inspection rates
+     * @param workstationMultiplier Multiplier of all assembly rates
+     * @return The modified configuration
+     */
+    public LineConfiguration withRateMultipliers(double inspectorMultiplier, double workstationMultiplier) {
+        List<Inspector> modifiedInspectors = new ArrayList<>();
+        for (Inspector inspector : inspectors) {
+            double[] rates = inspector.getServiceRates();
+            for (int i = 0; i < rates.length; i++) {
+                rates[i] *= inspectorMultiplier;
+            }
+            modifiedInspectors.add(new Inspector(inspector.getName(), inspector.getComponents(), inspector.getWeights(), rates,
+                    inspector.getTraces()));
+        }
+        List<Workstation> modifiedWorkstations = new ArrayList<>();
+        for (Workstation workstation : workstations) {
+            modifiedWorkstations.add(new Workstation(workstation.getName(), workstation.getProduct(), workstation.getComponents(),
+                    workstation.getCapacities(), workstation.getServiceRate() * workstationMultiplier, workstation.getTrace()));
+        }
+        return new LineConfiguration(name, components, modifiedInspectors, modifiedWorkstations);
+    }
+
+    /**
+     * Compile the description into the flat arrays the engine runs on
+     * @return The compiled line
+     * @throws IllegalArgumentException If the description is inconsistent
+     */
+    public LineModel compile() {
+        return new LineModel(this);
+    }
+
+    /**
+     * Write the description in the properties format of the class comment, one sorted line per property
+     * Parsing the text again gives an equal line, so it identifies the configuration of a run.
+     * @return The description
+     */
+    public String format() {
+        Map<String, String> properties = new TreeMap<>();
+        properties.put("components", String.join(", ", components));
+        List<String> names = new ArrayList<>();
+        for (Inspector inspector : inspectors) {
+            String prefix = "inspector." + inspector.getName() + ".";
+            names.add(inspector.getName());
+            properties.put(prefix + "components", String.join(", ", inspector.getComponents()));
+            properties.put(prefix + "weights", join(inspector.getWeights()));
+            for (int i = 0; i < inspector.getComponents().size(); i++) {
+                properties.put(prefix + "service." + inspector.getComponents().get(i), String.valueOf(inspector.getServiceRates()[i]));
+                if (inspector.getTraces()[i] != null)
+                    properties.put(prefix + "trace." + inspector.getComponents().get(i), inspector.getTraces()[i]);
+            }
+        }
+        properties.put("inspectors", String.join(", ", names));
+        names.clear();
+        for (Workstation workstation : workstations) {
+            String prefix = "workstation." + workstation.getName() + ".";
+            names.add(workstation.getName());
+            properties.put(prefix + "product", workstation.getProduct());
+            properties.put(prefix + "components", String.join(", ", workstation.getComponents()));
+            for (int i = 0; i < workstation.getComponents().size(); i++) {
+                properties.put(prefix + "capacity." + workstation.getComponents().get(i), String.valueOf(workstation.getCapacities()[i]));
+            }
+            properties.put(prefix + "service", String.valueOf(workstation.getServiceRate()));
+            if (workstation.getTrace() != null)
+                properties.put(prefix + "trace", workstation.getTrace());
+        }
+        properties.put("workstations", String.join(", ", names));
+
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            text.append(property.getKey()).append(" = ").append(property.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getComponents() {
+        return components;
+    }
+
+    public List<Inspector> getInspectors() {
+        return inspectors;
+    }
+
+    public List<Workstation> getWorkstations() {
+        return workstations;
+    }
+
+    private static String join(double[] values) {
+        StringBuilder text = new StringBuilder();
+        for (double value : values) {
+            if (text.length() > 0)
+                text.append(", ");
+            text.append(value);
+        }
+        return text.toString();
+    }
+
+    private static List<String> list(Properties properties, String key) {
+        String value = trimmed(properties, key);
+        if (value == null)
+            throw new IllegalArgumentException("Missing property: " + key);
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty())
+                items.add(item.trim());
+        }
+        return items;
+    }
+
+    private static double number(Properties properties, String key) {
+        String value = trimmed(properties, key);
+        if (value == null)
+            throw new IllegalArgumentException("Missing property: " + key);
+        return number(key, value);
+    }
+
+    private static double number(String key, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+
+    private static String trimmed(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Index names in list order, rejecting duplicates
+     */
+    static Map<String, Integer> index(List<String> names, String kind) {
+        Map<String, Integer> indices = new LinkedHashMap<>();
+        for (String name : names) {
+            if (indices.put(name, indices.size()) != null)
+                throw new IllegalArgumentException("Duplicate " + kind + ": " + name);
+        }
+        return indices;
+    }
+    /**
+     * An inspector, which inspects one of its components at a time
+     */
+    public static class Inspector {
+        private final String name;
+        private final List<String> components;
+        private final double[] weights;
+        private final double[] serviceRates;
+        private final String[] traces;
+
+        /**
+         * @param name Name of the inspector
+         * @param components The components it inspects
+         * @param weights Relative chance of each component being inspected next
+         * @param serviceRates Exponential inspection rate of each component
+         * @param traces Historical inspection time file of each component, entries may be null
+         */
+        public Inspector(String name, List<String> components, double[] weights, double[] serviceRates, String[] traces) {
+            if (components.isEmpty() || weights.length != components.size() || serviceRates.length != components.size()
+                    || traces.length != components.size())
+                throw new IllegalArgumentException("Inspector " + name + " needs one weight, rate and trace per component");
+            this.name = name;
+            this.components = Collections.unmodifiableList(new ArrayList<>(components));
+            this.weights = weights.clone();
+            this.serviceRates = serviceRates.clone();
+            this.traces = traces.clone();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getComponents() {
+            return components;
+        }
+
+        public double[] getWeights() {
+            return weights.clone();
+        }
+
+        public double[] getServiceRates() {
+            return serviceRates.clone();
+        }
+
+        public String[] getTraces() {
+            return traces.clone();
+        }
+    }
+
+    /**
+     * A workstation, which assembles one product from one of each of its components
+     */
+    public static class Workstation {
+        private final String name;
+        private final String product;
+        private final List<String> components;
+        private final int[] capacities;
+        private final double serviceRate;
+        private final String trace;
+
+        /**
+         * @param name Name of the workstation
+         * @param product Name of the product it assembles
+         * @param components Its bill of materials, each with its own buffer
+         * @param capacities Capacity of each component buffer
+         * @param serviceRate Exponential assembly rate
+         * @param trace Historical assembly time file, may be null
+         */
+        public Workstation(String name, String product, List<String> components, int[] capacities, double serviceRate, String trace) {
+            if (components.isEmpty() || capacities.length != components.size())
+                throw new IllegalArgumentException("Workstation " + name + " needs one capacity per component");
+            this.name = name;
+            this.product = product;
+            this.components = Collections.unmodifiableList(new ArrayList<>(components));
+            this.capacities = capacities.clone();
+            this.serviceRate = serviceRate;
+            this.trace = trace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getProduct() {
+            return product;
+        }
+
+        public List<String> getComponents() {
+            return components;
+        }
+
+        public int[] getCapacities() {
+            return capacities.clone();
+        }
+
+        public double getServiceRate() {
+            return serviceRate;
+        }
+
+        public String getTrace() {
+            return trace;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A production line compiled into flat arrays and index tables
+ * Inspectors, components, workstations and buffers are numbered from 0 in configuration order.
+ * Every workstation has one buffer per component of its bill of materials, numbered contiguously.
+ * Random input processes (sources) are numbered with all inspection processes first, in inspector
+ * then component order, then the assembly process of each workstation, then the component choice of
+ * each inspector with more than one component.
+ */
+public class LineModel {
+    private static final LineModel BUILT_IN = LineConfiguration.builtIn().compile();
+
+    private final LineConfiguration configuration;
+
+    //Components
+    private final String[] componentNames;
+    private final int[] componentInspector;
+    private final int[][] componentBuffers; //buffers accepting each component, in routing priority order
+
+    //Inspectors
+    private final String[] inspectorNames;
+    private final int[][] inspectorComponents;
+    private final int[][] inspectorSources; //inspection source of each of the inspector's components
+    private final double[][] inspectorCumulativeWeights;
+    private final int[] inspectorChoiceSource; //-1 if the inspector has a single component
+
+    //Workstations
+    private final String[] workstationNames;
+    private final String[] productNames;
+    private final int[] workstationBufferStart;
+    private final int[] workstationBufferEnd;
+    private final int[] workstationSource;
+
+    //Buffers
+    private final String[] bufferNames;
+    private final int[] bufferWorkstation;
+    private final int[] bufferComponent;
+    private final int[] bufferCapacity;
+
+    //Random input processes
+    private final int serviceSourceCount;
+    private final int sourceCount;
+    private final String[] sourceNames;
+    private final double[] sourceRates; //NaN for choice sources
+    private final String[] sourceTraces;
+
+    LineModel(LineConfiguration configuration) {
+        this.configuration = configuration;
+        Map<String, Integer> components = LineConfiguration.index(configuration.getComponents(), "component");
+        List<LineConfiguration.Inspector> inspectors = configuration.getInspectors();
+        List<LineConfiguration.Workstation> workstations = configuration.getWorkstations();
+        if (inspectors.isEmpty() || workstations.isEmpty())
+            throw new IllegalArgumentException("A line needs at least one inspector and one workstation");
+
+        componentNames = configuration.getComponents().toArray(new String[0]);
+        componentInspector = new int[componentNames.length];
+        Arrays.fill(componentInspector, -1);
+
+        List<String> names = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        List<String> traces = new ArrayList<>();
+
+        //Inspection sources
+        inspectorNames = new String[inspectors.size()];
+        inspectorComponents = new int[inspectors.size()][];
+        inspectorSources = new int[inspectors.size()][];
+        inspectorCumulativeWeights = new double[inspectors.size()][];
+        for (int i = 0; i < inspectors.size(); i++) {
+            LineConfiguration.Inspector inspector = inspectors.get(i);
+            inspectorNames[i] = inspector.getName();
+            List<String> inspected = inspector.getComponents();
+            double[] serviceRates = inspector.getServiceRates();
+            String[] serviceTraces = inspector.getTraces();
+            double[] weights = inspector.getWeights();
+            inspectorComponents[i] = new int[inspected.size()];
+            inspectorSources[i] = new int[inspected.size()];
+            inspectorCumulativeWeights[i] = new double[inspected.size()];
+            double totalWeight = 0;
+            for (double weight : weights) {
+                if (!(weight > 0))
+                    throw new IllegalArgumentException("Invalid weight for inspector " + inspector.getName());
+                totalWeight += weight;
+            }
+            double cumulative = 0;
+            for (int k = 0; k < inspected.size(); k++) {
+                int component = lookup(components, inspected.get(k), "component");
+                if (componentInspector[component] != -1)
+                    throw new IllegalArgumentException("Component " + inspected.get(k) + " has more than one inspector");
+                componentInspector[component] = i;
+                inspectorComponents[i][k] = component;
+                cumulative += weights[k];
+                inspectorCumulativeWeights[i][k] = k == inspected.size() - 1 ? 1.0 : cumulative / totalWeight;
+                inspectorSources[i][k] = addSource(names, rates, traces, inspector.getName() + "." + inspected.get(k),
+                        serviceRates[k], serviceTraces[k]);
+            }
+        }
+        for (int c = 0; c < componentNames.length; c++) {
+            if (componentInspector[c] == -1)
+                throw new IllegalArgumentException("Component " + componentNames[c] + " has no inspector");
+        }
+
+        //Workstations, their buffers and assembly sources
+        workstationNames = new String[workstations.size()];
+        productNames = new String[workstations.size()];
+        workstationBufferStart = new int[workstations.size()];
+        workstationBufferEnd = new int[workstations.size()];
+        workstationSource = new int[workstations.size()];
+        List<Integer> bufferWorkstations = new ArrayList<>();
+        List<Integer> bufferComponents = new ArrayList<>();
+        List<Integer> bufferCapacities = new ArrayList<>();
+        for (int w = 0; w < workstations.size(); w++) {
+            LineConfiguration.Workstation workstation = workstations.get(w);
+            workstationNames[w] = workstation.getName();
+            productNames[w] = workstation.getProduct();
+            workstationBufferStart[w] = bufferWorkstations.size();
+            int[] capacities = workstation.getCapacities();
+            LineConfiguration.index(workstation.getComponents(), "component of workstation " + workstation.getName());
+            for (int k = 0; k < capacities.length; k++) {
+                if (capacities[k] < 1)
+                    throw new IllegalArgumentException("Invalid buffer capacity for workstation " + workstation.getName());
+                bufferWorkstations.add(w);
+                bufferComponents.add(lookup(components, workstation.getComponents().get(k), "component"));
+                bufferCapacities.add(capacities[k]);
+            }
+            workstationBufferEnd[w] = bufferWorkstations.size();
+            workstationSource[w] = addSource(names, rates, traces, workstation.getName(), workstation.getServiceRate(), workstation.getTrace());
+        }
+        serviceSourceCount = names.size();
+
+        //Component choice sources
+        inspectorChoiceSource = new int[inspectors.size()];
+        for (int i = 0; i < inspectors.size(); i++) {
+            if (inspectorComponents[i].length > 1) {
+                inspectorChoiceSource[i] = names.size();
+                names.add(inspectorNames[i] + ".choice");
+                rates.add(Double.NaN);
+                traces.add(null);
+            } else {
+                inspectorChoiceSource[i] = -1;
+            }
+        }
+        sourceCount = names.size();
+        sourceNames = names.toArray(new String[0]);
+        sourceRates = new double[sourceCount];
+        for (int s = 0; s < sourceCount; s++) {
+            sourceRates[s] = rates.get(s);
+        }
+        sourceTraces = traces.toArray(new String[0]);
+
+        int buffers = bufferWorkstations.size();
+        bufferNames = new String[buffers];
+        bufferWorkstation = new int[buffers];
+        bufferComponent = new int[buffers];
+        bufferCapacity = new int[buffers];
+        for (int b = 0; b < buffers; b++) {
+            bufferWorkstation[b] = bufferWorkstations.get(b);
+            bufferComponent[b] = bufferComponents.get(b);
+            bufferCapacity[b] = bufferCapacities.get(b);
+            bufferNames[b] = "B" + (bufferWorkstation[b] + 1) + (bufferComponent[b] + 1);
+        }
+
+        componentBuffers = new int[componentNames.length][];
+        for (int c = 0; c < componentNames.length; c++) {
+            int count = 0;
+            for (int b = 0; b < buffers; b++) {
+                if (bufferComponent[b] == c)
+                    count++;
+            }
+            if (count == 0)
+                throw new IllegalArgumentException("Component " + componentNames[c] + " is not used by any workstation");
+            componentBuffers[c] = new int[count];
+            count = 0;
+            for (int b = 0; b < buffers; b++) {
+                if (bufferComponent[b] == c)
+                    componentBuffers[c][count++] = b;
+            }
+        }
+    }
+
+    /**
+     * @return The compiled line of the project specification
+     */
+    public static LineModel builtIn() {
+        return BUILT_IN;
+    }
+
+    public LineConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public int getComponentCount() {
+        return componentNames.length;
+    }
+
+    public String getComponentName(int component) {
+        return componentNames[component];
+    }
+
+    public int getComponentInspector(int component) {
+        return componentInspector[component];
+    }
+
+    /**
+     * @return The buffers accepting a component, in routing priority order, not to be modified
+     */
+    public int[] getComponentBuffers(int component) {
+        return componentBuffers[component];
+    }
+
+    public int getInspectorCount() {
+        return inspectorNames.length;
+    }
+
+    public String getInspectorName(int inspector) {
+        return inspectorNames[inspector];
+    }
+
+    /**
+     * @return The components of an inspector, not to be modified
+     */
+    public int[] getInspectorComponents(int inspector) {
+        return inspectorComponents[inspector];
+    }
+
+    /**
+     * @return The inspection source of each of an inspector's components, not to be modified
+     */
+    public int[] getInspectorSources(int inspector) {
+        return inspectorSources[inspector];
+    }
+
+    /**
+     * @return Cumulative probability of each of an inspector's components being chosen, not to be modified
+     */
+    public double[] getInspectorCumulativeWeights(int inspector) {
+        return inspectorCumulativeWeights[inspector];
+    }
+
+    /**
+     * @return The component choice source of an inspector, -1 if it has a single component
+     */
+    public int getInspectorChoiceSource(int inspector) {
+        return inspectorChoiceSource[inspector];
+    }
+
+    public int getWorkstationCount() {
+        return workstationNames.length;
+    }
+
+    public String getWorkstationName(int workstation) {
+        return workstationNames[workstation];
+    }
+
+    public String getProductName(int workstation) {
+        return productNames[workstation];
+    }
+
+    /**
+     * @return The first buffer of a workstation
+     */
+    public int getWorkstationBufferStart(int workstation) {
+        return workstationBufferStart[workstation];
+    }
+
+    /**
+     * @return One past the last buffer of a workstation
+     */
+    public int getWorkstationBufferEnd(int workstation) {
+        return workstationBufferEnd[workstation];
+    }
+
+    public int getWorkstationSource(int workstation) {
+        return workstationSource[workstation];
+    }
+
+    public int getBufferCount() {
+        return bufferNames.length;
+    }
+
+    public String getBufferName(int buffer) {
+        return bufferNames[buffer];
+    }
+
+    public int getBufferWorkstation(int buffer) {
+        return bufferWorkstation[buffer];
+    }
+
+    public int getBufferComponent(int buffer) {
+        return bufferComponent[buffer];
+    }
+
+    public int getBufferCapacity(int buffer) {
+        return bufferCapacity[buffer];
+    }
+
+    /**
+     * @return Capacity of every buffer, indexed by buffer, not to be modified
+     */
+    public int[] getBufferCapacities() {
+        return bufferCapacity;
+    }
+
+    /**
+     * @return Number of service time sources, which come before the choice sources
+     */
+    public int getServiceSourceCount() {
+        return serviceSourceCount;
+    }
+
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    public String getSourceName(int source) {
+        return sourceNames[source];
+    }
+
+    /**
+     * @return Exponential rate of a service source, NaN for a choice source
+     */
+    public double getSourceRate(int source) {
+        return sourceRates[source];
+    }
+
+    /**
+     * @return Historical data file of a service source, null if there is none
+     */
+    public String getSourceTrace(int source) {
+        return sourceTraces[source];
+    }
+
+    /**
+     * @return True if every service source has historical data, so the line can be replayed
+     */
+    public boolean hasTraces() {
+        for (int source = 0; source < serviceSourceCount; source++) {
+            if (sourceTraces[source] == null)
+                return false;
+        }
+        return true;
+    }
+
+    private static int addSource(List<String> names, List<Double> rates, List<String> traces, String name, double rate, String trace) {
+        if (!(rate > 0))
+            throw new IllegalArgumentException("Invalid service rate for " + name);
+        names.add(name);
+        rates.add(rate);
+        traces.add(trace);
+        return names.size() - 1;
+    }
+
+    private static int lookup(Map<String, Integer> indices, String name, String kind) {
+        Integer index = indices.get(name);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown " + kind + ": " + name);
+        return index;
+    }
+}
@@ -0,0 +1,119 @@
+package model;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named summaries of the metrics of completed runs, e.g. built-in/P1First/station.ws1.busy
+ * Names start with the line and the design of the run, so runs of different lines, routings or
+ * capacities are summarized apart. Every run adds one observation to each metric it publishes.
+ * Replications publish from worker threads, so access is synchronized; this happens once per run, not per event.
+ */
+public class MetricsRegistry implements MetricsRegistryMXBean {
+    static final String OBJECT_NAME = "model:type=MetricsRegistry";
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, WelfordAccumulator> metrics = new TreeMap<>();
+
+    /**
+     * @return The registry runs publish to
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Publish the default registry to the platform MBean server, once per JVM
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(DEFAULT, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            //Registered before
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register metrics: " + e.getMessage(), e);
+        }
+    }
+
+    public synchronized void record(String name, double value) {
+        WelfordAccumulator statistics = metrics.get(name);
+        if (statistics == null) {
+            statistics = new WelfordAccumulator();
+            metrics.put(name, statistics);
+        }
+        statistics.add(value);
+    }
+
+    /**
+     * @return A copy of the observations of a metric, null if it was never recorded
+     */
+    public synchronized WelfordAccumulator getStatistics(String name) {
+        WelfordAccumulator statistics = metrics.get(name);
+        if (statistics == null)
+            return null;
+        WelfordAccumulator copy = new WelfordAccumulator();
+        copy.merge(statistics);
+        return copy;
+    }
+
+    /**
+     * @return The recorded metric names, sorted
+     */
+    @Override
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(metrics.keySet());
+    }
+
+    @Override
+    public synchronized Map<String, Long> getRunCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, WelfordAccumulator> entry : metrics.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getMeans() {
+        Map<String, Double> means = new TreeMap<>();
+        for (Map.Entry<String, WelfordAccumulator> entry : metrics.entrySet()) {
+            means.put(entry.getKey(), entry.getValue().getMean());
+        }
+        return means;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getStandardDeviations() {
+        Map<String, Double> deviations = new TreeMap<>();
+        for (Map.Entry<String, WelfordAccumulator> entry : metrics.entrySet()) {
+            deviations.put(entry.getKey(), entry.getValue().getStandardDeviation());
+        }
+        return deviations;
+    }
+
+    @Override
+    public synchronized void clear() {
+        metrics.clear();
+    }
+
+    public synchronized void printOutput() {
+        int width = "Metric".length();
+        for (String name : metrics.keySet()) {
+            width = Math.max(width, name.length());
+        }
+        System.out.println("------------------------------");
+        System.out.printf("%-" + width + "s %6s %12s %12s\n", "Metric", "Runs", "Mean", "Std Dev");
+        for (Map.Entry<String, WelfordAccumulator> entry : metrics.entrySet()) {
+            WelfordAccumulator statistics = entry.getValue();
+            System.out.printf("%-" + width + "s %6d %12.6f %12.6f\n", entry.getKey(), statistics.getCount(), statistics.getMean(),
+                    statistics.getStandardDeviation());
+        }
+        System.out.println("------------------------------");
+    }
+}
@@ -0,0 +1,19 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of MetricsRegistry, published as model:type=MetricsRegistry
+ */
+public interface MetricsRegistryMXBean {
+    List<String> getNames();
+
+    Map<String, Long> getRunCounts();
+
+    Map<String, Double> getMeans();
+
+    Map<String, Double> getStandardDeviations();
+
+    void clear();
+}
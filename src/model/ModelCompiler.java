@@ -0,0 +1,479 @@
+package model;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Generates an event loop specialized to one line and routing policy, see CompiledSimulation
+ * The line's structure becomes code: one field per station event time, buffer level and counter,
+ * straight-line comparisons to find the next event, ties going to the one scheduled first as in the
+ * event lists, one method per station and component with its buffers, capacities and service sources
+ * as constants, and no enum or interface dispatch. Routing is inlined as a lookup in the policy's
+ * RoutingTable, so the policy must expose its state.
+ *
+ * The project targets Java 8, which has neither the ClassFile API nor hidden classes, so the loop is
+ * generated as Java source, compiled in memory with the JDK's compiler and defined in its own class
+ * loader. Running needs a JDK, not a JRE. Classes are shared by every line with the same description
+ * and routing state count, since the table entries are passed in when a run is created.
+ */
+public class ModelCompiler {
+    private static final String PACKAGE = "model.generated";
+    private static final int INITIALIZATION_LENGTH = 100; //products, as in Simulation
+    private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+    private static final Map<String, Constructor<? extends CompiledSimulation>> CLASSES = new HashMap<>();
+
+    private ModelCompiler() {
+    }
+
+    /**
+     * @param model The line
+     * @param routing The inspector routing policy, tabulated with RoutingTable.compile
+     * @return The specialized engine
+     * @throws IllegalStateException If the JVM has no Java compiler
+     */
+    public static CompiledLine compile(LineModel model, Supplier<Insp1Routing> routing) {
+        return compile(RoutingTable.compile(model, routing));
+    }
+
+    /**
+     * @param table The routing table, with the line it was compiled for
+     * @return The specialized engine
+     * @throws IllegalStateException If the JVM has no Java compiler
+     */
+    public static CompiledLine compile(RoutingTable table) {
+        String key = table.getModel().getConfiguration().format() + "states = " + table.getStateCount() + "\n";
+        Constructor<? extends CompiledSimulation> constructor;
+        synchronized (CLASSES) {
+            constructor = CLASSES.get(key);
+            if (constructor == null) {
+                String name = "Line" + CLASS_COUNT.incrementAndGet();
+                constructor = load(PACKAGE + "." + name, generate(name, table));
+                CLASSES.put(key, constructor);
+            }
+        }
+        return new CompiledLine(table, constructor);
+    }
+
+    /**
+     * @return The Java source of the event loop of a line and the layout of its routing table
+     */
+    static String generate(String className, RoutingTable table) {
+        LineModel model = table.getModel();
+        int inspectors = model.getInspectorCount();
+        int workstations = model.getWorkstationCount();
+        int stations = inspectors + workstations;
+        int buffers = model.getBufferCount();
+        boolean states = table.getStateCount() > 1;
+        int[] componentTables = new int[model.getComponentCount()];
+        for (int c = 0; c < componentTables.length; c++) {
+            componentTables[c] = -1;
+            for (int t = 0; t < table.getTableCount(); t++) {
+                if (Arrays.equals(table.getCandidates(t), model.getComponentBuffers(c)))
+                    componentTables[c] = t;
+            }
+        }
+
+        Source code = new Source();
+        code.line("package " + PACKAGE + ";");
+        code.line("");
+        code.line("/**");
+        code.line(" * Event loop of line " + model.getConfiguration().getName() + ", generated by model.ModelCompiler");
+        code.line(" */");
+        code.open("public final class " + className + " extends model.CompiledSimulation");
+        code.line("private static final double IDLE = Double.POSITIVE_INFINITY;");
+        code.line("private double now;");
+        code.line("private double lastEvent;");
+        if (states)
+            code.line("private int state;");
+        code.line("private int holds;");
+        code.line("private long sequence;");
+        for (int s = 0; s < stations; s++) {
+            code.line("private double time" + s + " = IDLE;");
+            code.line("private long order" + s + ";");
+        }
+        for (int i = 0; i < inspectors; i++) {
+            code.line("private int component" + i + " = -1;");
+            code.line("private int hold" + i + " = -1;");
+            code.line("private double activeTime" + i + ";");
+        }
+        for (int b = 0; b < buffers; b++) {
+            code.line("private int level" + b + ";");
+        }
+        for (int w = 0; w < workstations; w++) {
+            code.line("private int produced" + w + ";");
+        }
+        code.line("");
+
+        code.open("public " + className + "(model.SimulationScenario scenario, int[] routingEntries)");
+        code.line("super(scenario, routingEntries);");
+        code.close();
+        code.line("");
+
+        //The loop, see Simulation.advance
+        code.line("@Override");
+        code.open("protected void run()");
+        code.line("long events = 0;");
+        code.line("int products = 0;");
+        code.open("if (totalProducts > 0)");
+        for (int i = 0; i < inspectors; i++) {
+            code.line("scheduleArrival" + i + "();");
+        }
+        code.close();
+        code.open("while (products < totalProducts)");
+        code.line("int station = 0;");
+        code.line("double time = time0;");
+        code.line("long order = order0;");
+        for (int s = 1; s < stations; s++) {
+            code.open("if (time" + s + " < time || (time" + s + " == time && order" + s + " < order))");
+            code.line("station = " + s + ";");
+            code.line("time = time" + s + ";");
+            code.line("order = order" + s + ";");
+            code.close();
+        }
+        code.line("if (time == IDLE)");
+        code.line("    break;");
+        code.line("now = time;");
+        code.line("events++;");
+        code.open("switch (station)");
+        for (int i = 0; i < inspectors; i++) {
+            code.line("case " + i + ":");
+            code.line("    time" + i + " = IDLE;");
+            code.line("    arrival" + i + "();");
+            code.line("    break;");
+        }
+        for (int w = 0; w < workstations; w++) {
+            code.line((w == workstations - 1 ? "default" : "case " + (inspectors + w)) + ":");
+            code.line("    time" + (inspectors + w) + " = IDLE;");
+            code.line("    produced" + w + "++;");
+            code.line("    products++;");
+            code.line("    scheduleDeparture" + w + "();");
+            code.line("    break;");
+        }
+        code.close();
+        //Summed event by event, see Simulation.updateActiveTimes
+        for (int i = 0; i < inspectors; i++) {
+            code.line("if (hold" + i + " == -1)");
+            code.line("    activeTime" + i + " += now - lastEvent;");
+        }
+        code.line("if (useInitialization && products == " + INITIALIZATION_LENGTH + " && station >= " + inspectors + ")");
+        code.line("    markInitialization(products);");
+        code.line("lastEvent = now;");
+        code.open("if ((events & " + (SimulationTelemetry.PUBLISH_INTERVAL - 1) + ") == 0)");
+        code.line("copyProduced();");
+        StringBuilder pending = new StringBuilder();
+        for (int s = 0; s < stations; s++) {
+            pending.append(s == 0 ? "" : " + ").append("(time").append(s).append(" == IDLE ? 0 : 1)");
+        }
+        code.line("publishProgress(events, now, " + pending + ");");
+        code.close();
+        code.close();
+        code.line("numberEvents = events;");
+        code.line("numberProducts = products;");
+        code.line("clock = now;");
+        code.line("copyProduced();");
+        for (int i = 0; i < inspectors; i++) {
+            code.line("activeTime[" + i + "] = activeTime" + i + ";");
+        }
+        code.close();
+        code.line("");
+
+        code.open("private void copyProduced()");
+        for (int w = 0; w < workstations; w++) {
+            code.line("numberProduced[" + w + "] = produced" + w + ";");
+        }
+        code.close();
+        code.line("");
+
+        code.open("private void markInitialization(int products)");
+        code.line("initializationTaken = true;");
+        code.line("initializationProducts = products;");
+        code.line("initializationClock = now;");
+        for (int w = 0; w < workstations; w++) {
+            code.line("initializationProduced[" + w + "] = produced" + w + ";");
+        }
+        for (int i = 0; i < inspectors; i++) {
+            code.line("initializationActive[" + i + "] = activeTime" + i + ";");
+        }
+        code.close();
+
+        //Inspectors, see Simulation.processArrivalEvent and scheduleArrivalEvent
+        for (int i = 0; i < inspectors; i++) {
+            int[] components = model.getInspectorComponents(i);
+            int[] sources = model.getInspectorSources(i);
+            code.line("");
+            code.open("private void arrival" + i + "()");
+            if (components.length == 1) {
+                hold(code, i, components[0]);
+            } else {
+                code.open("switch (component" + i + ")");
+                for (int k = 0; k < components.length; k++) {
+                    code.line((k == components.length - 1 ? "default" : "case " + components[k]) + ":");
+                    code.indent();
+                    hold(code, i, components[k]);
+                    code.line("break;");
+                    code.outdent();
+                }
+                code.close();
+            }
+            code.close();
+
+            code.line("");
+            code.open("private void scheduleArrival" + i + "()");
+            if (model.getInspectorChoiceSource(i) == -1) {
+                code.line("component" + i + " = " + components[0] + ";");
+                code.line("time" + i + " = now + random.nextService(" + sources[0] + ");");
+                code.line("order" + i + " = sequence++;");
+            } else {
+                code.open("switch (random.nextChoice(" + i + "))");
+                for (int k = 0; k < components.length; k++) {
+                    code.line((k == components.length - 1 ? "default" : "case " + k) + ":");
+                    code.line("    component" + i + " = " + components[k] + ";");
+                    code.line("    time" + i + " = now + random.nextService(" + sources[k] + ");");
+                    code.line("    order" + i + " = sequence++;");
+                    code.line("    break;");
+                }
+                code.close();
+            }
+            code.close();
+
+            //Place a component in a buffer, from an arrival or a hold
+            for (int component : components) {
+                int[] candidates = model.getComponentBuffers(component);
+                code.line("");
+                code.open("private boolean place" + i + "_" + component + "(boolean release)");
+                int t = componentTables[component];
+                if (t == -1) {
+                    code.line("if (level" + candidates[0] + " >= " + model.getBufferCapacity(candidates[0]) + ")");
+                    code.line("    return false;");
+                    place(code, model, i, candidates[0]);
+                } else {
+                    StringBuilder index = new StringBuilder(String.valueOf(table.getOffset(t)));
+                    if (states)
+                        index.append(" + state * ").append(table.getCombinations(t));
+                    for (int k = 0; k < candidates.length; k++) {
+                        index.append(" + level").append(candidates[k]).append(" * ").append(table.getRadix(t, k));
+                    }
+                    code.line("int entry = routingEntries[" + index + "];");
+                    if (states)
+                        code.line("state = entry >>> 8;");
+                    code.open("switch ((entry & 0xFF) - 1)");
+                    for (int k = 0; k < candidates.length; k++) {
+                        code.line("case " + k + ":");
+                        code.indent();
+                        place(code, model, i, candidates[k]);
+                        code.outdent();
+                    }
+                    code.line("default:");
+                    code.line("    return false;");
+                    code.close();
+                }
+                code.close();
+            }
+        }
+
+        //Workstations, see Simulation.scheduleDepartureEvent
+        for (int w = 0; w < workstations; w++) {
+            int station = inspectors + w;
+            code.line("");
+            code.open("private void scheduleDeparture" + w + "()");
+            code.line("if (time" + station + " != IDLE)");
+            code.line("    return;");
+            StringBuilder empty = new StringBuilder();
+            for (int b = model.getWorkstationBufferStart(w); b < model.getWorkstationBufferEnd(w); b++) {
+                empty.append(empty.length() == 0 ? "" : " || ").append("level").append(b).append(" == 0");
+            }
+            code.line("if (" + empty + ")");
+            code.line("    return;");
+            code.line("double nextTime = random.nextService(" + model.getWorkstationSource(w) + ");");
+            for (int b = model.getWorkstationBufferStart(w); b < model.getWorkstationBufferEnd(w); b++) {
+                code.line("level" + b + "--;");
+            }
+            code.line("time" + station + " = now + nextTime;");
+            code.line("order" + station + " = sequence++;");
+            code.line("processHolds();");
+            code.close();
+        }
+
+        //See Simulation.processHoldEvent
+        code.line("");
+        code.open("private void processHolds()");
+        code.line("if (holds == 0)");
+        code.line("    return;");
+        for (int i = 0; i < inspectors; i++) {
+            int[] components = model.getInspectorComponents(i);
+            if (components.length == 1) {
+                code.line("if (hold" + i + " != -1)");
+                code.line("    place" + i + "_" + components[0] + "(true);");
+            } else {
+                code.open("switch (hold" + i + ")");
+                for (int component : components) {
+                    code.line("case " + component + ":");
+                    code.line("    place" + i + "_" + component + "(true);");
+                    code.line("    break;");
+                }
+                code.close();
+            }
+        }
+        code.close();
+        code.close();
+        return code.toString();
+    }
+
+    private static void hold(Source code, int inspector, int component) {
+        code.open("if (!place" + inspector + "_" + component + "(false))");
+        code.line("hold" + inspector + " = " + component + ";");
+        code.line("holds++;");
+        code.close();
+    }
+
+    private static void place(Source code, LineModel model, int inspector, int buffer) {
+        code.line("level" + buffer + "++;");
+        code.open("if (release)");
+        code.line("hold" + inspector + " = -1;");
+        code.line("holds--;");
+        code.close();
+        code.line("scheduleArrival" + inspector + "();");
+        code.line("scheduleDeparture" + model.getBufferWorkstation(buffer) + "();");
+        code.line("return true;");
+    }
+
+    /**
+     * Compile a generated class in memory and define it in a class loader of its own
+     */
+    private static Constructor<? extends CompiledSimulation> load(String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("No Java compiler, compiled lines need a JDK");
+        Map<String, ByteArrayOutputStream> output = new HashMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> files = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        output.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        boolean compiled = compiler.getTask(null, files, diagnostics, Arrays.asList("-classpath", classPath(), "-proc:none"), null,
+                Arrays.asList(file)).call();
+        try {
+            files.close();
+        } catch (IOException e) {
+            //In memory, nothing to release
+        }
+        if (!compiled) {
+            StringBuilder message = new StringBuilder("Generated line failed to compile:");
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                message.append('\n').append(diagnostic.getLineNumber()).append(": ").append(diagnostic.getMessage(null));
+            }
+            throw new IllegalStateException(message.toString());
+        }
+
+        GeneratedClassLoader loader = new GeneratedClassLoader(CompiledSimulation.class.getClassLoader());
+        try {
+            Class<?> generated = loader.define(className, output.get(className).toByteArray());
+            return generated.asSubclass(CompiledSimulation.class).getConstructor(SimulationScenario.class, int[].class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Generated line has no constructor", e);
+        }
+    }
+
+    /**
+     * @return The class path of the running program, with the location of this package first
+     */
+    private static String classPath() {
+        String path = System.getProperty("java.class.path");
+        CodeSource code = CompiledSimulation.class.getProtectionDomain().getCodeSource();
+        if (code == null)
+            return path;
+        try {
+            return Paths.get(code.getLocation().toURI()) + File.pathSeparator + path;
+        } catch (URISyntaxException e) {
+            return path;
+        }
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Java source with indentation by block
+     */
+    private static final class Source {
+        private final StringBuilder text = new StringBuilder();
+        private int depth;
+
+        void line(String line) {
+            if (!line.isEmpty()) {
+                for (int i = 0; i < depth; i++) {
+                    text.append("    ");
+                }
+            }
+            text.append(line).append('\n');
+        }
+
+        void open(String header) {
+            line(header + " {");
+            depth++;
+        }
+
+        void close() {
+            depth--;
+            line("}");
+        }
+
+        void indent() {
+            depth++;
+        }
+
+        void outdent() {
+            depth--;
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -1,5 +0,0 @@
-package model;
-
-public enum ProductType{
-    P1, P2, P3
-}
@@ -0,0 +1,117 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * xoroshiro128++ pseudo-random number generator (Blackman and Vigna)
+ * Unsynchronized, each stream must only be used by one simulation.
+ * jump() and longJump() advance the stream by 2^64 and 2^96 draws,
+ * which splits the period into non-overlapping substreams.
+ */
+public class RandomStream {
+    private static final long[] JUMP = {0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L};
+    private static final long[] LONG_JUMP = {0x360fd5f2cf8d5d99L, 0x9c6e6877736c46e3L};
+
+    private long state0;
+    private long state1;
+
+    /**
+     * @param seed Expanded into the full state with SplitMix64
+     */
+    public RandomStream(long seed) {
+        long x = seed;
+        x += 0x9e3779b97f4a7c15L;
+        state0 = mix(x);
+        x += 0x9e3779b97f4a7c15L;
+        state1 = mix(x);
+        if (state0 == 0 && state1 == 0) //all zero state never leaves zero
+            state1 = 1;
+    }
+
+    /**
+     * Copy another stream at its current position
+     * @param other The stream to copy
+     */
+    public RandomStream(RandomStream other) {
+        state0 = other.state0;
+        state1 = other.state1;
+    }
+
+    public long nextLong() {
+        long s0 = state0;
+        long s1 = state1;
+        long result = Long.rotateLeft(s0 + s1, 17) + s0;
+        s1 ^= s0;
+        state0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+        state1 = Long.rotateLeft(s1, 28);
+        return result;
+    }
+
+    /**
+     * @return Uniform value in [0, 1) with 53 random bits
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return Uniform value in (0, 1), on a grid symmetric about 1/2 so 1 - u is never 0 either
+     */
+    public double nextOpenDouble() {
+        return ((nextLong() >>> 11) + 0.5) * 0x1.0p-53;
+    }
+
+    /**
+     * Advance the stream by 2^64 draws
+     */
+    public void jump() {
+        jump(JUMP);
+    }
+
+    /**
+     * Advance the stream by 2^96 draws
+     */
+    public void longJump() {
+        jump(LONG_JUMP);
+    }
+
+    private void jump(long[] polynomial) {
+        long s0 = 0;
+        long s1 = 0;
+        for (long word : polynomial) {
+            for (int b = 0; b < 64; b++) {
+                if ((word & (1L << b)) != 0) {
+                    s0 ^= state0;
+                    s1 ^= state1;
+                }
+                nextLong();
+            }
+        }
+        state0 = s0;
+        state1 = s1;
+    }
+
+    /**
+     * Save the position of the stream, see readState
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(state0);
+        out.writeLong(state1);
+    }
+
+    /**
+     * Continue from a position saved by writeState
+     */
+    public void readState(DataInput in) throws IOException {
+        state0 = in.readLong();
+        state1 = in.readLong();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,293 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-mapped view of a results file written by ResultStoreWriter
+ * Queries read only the columns they need, straight from the mapping.
+ */
+public class ResultStoreReader {
+    private final String[] productNames;
+    private final String[] inspectorNames;
+    private final List<String> dictionary = new ArrayList<>();
+    private final List<Block> blocks = new ArrayList<>();
+    private final long records;
+
+    /**
+     * Map a results file, up to its last complete block
+     * @param file The file to read
+     * @throws IOException If the file can't be read or is not a results file
+     */
+    public ResultStoreReader(String file) throws IOException {
+        MappedByteBuffer mapping;
+        Header header;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            header = readHeader(channel);
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Results file over 2 GiB, split the campaign: " + file);
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        productNames = header.productNames;
+        inspectorNames = header.inspectorNames;
+
+        long count = 0;
+        int position = (int) header.size;
+        while (mapping.limit() - position >= 8) {
+            int type = mapping.getInt(position);
+            int length = mapping.getInt(position + 4);
+            if (length < 0 || length > mapping.limit() - position - 8)
+                break; //Block still being written, or cut short
+            int payload = position + 8;
+            if (type == ResultStoreWriter.DICTIONARY) {
+                byte[] bytes = new byte[length - 4];
+                ByteBuffer entry = mapping.duplicate();
+                entry.position(payload + 4);
+                entry.get(bytes);
+                if (mapping.getInt(payload) != dictionary.size())
+                    throw new IOException("Corrupt results dictionary: " + file);
+                dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+            } else if (type == ResultStoreWriter.RECORDS) {
+                Block block = new Block(mapping, payload, header.version, productNames.length, inspectorNames.length);
+                blocks.add(block);
+                count += block.rows;
+            } else {
+                throw new IOException("Corrupt results block: " + file);
+            }
+            position = payload + length;
+        }
+        records = count;
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    public int getProductCount() {
+        return productNames.length;
+    }
+
+    public String getProductName(int product) {
+        return productNames[product];
+    }
+
+    public int getInspectorCount() {
+        return inspectorNames.length;
+    }
+
+    public String getInspectorName(int inspector) {
+        return inspectorNames[inspector];
+    }
+
+    /**
+     * @return Every design name, in the order of their first run
+     */
+    public List<String> getDesigns() {
+        List<String> designs = new ArrayList<>();
+        boolean[] seen = new boolean[dictionary.size()];
+        for (Block block : blocks) {
+            for (int row = 0; row < block.rows; row++) {
+                int design = block.getDesign(row);
+                if (!seen[design]) {
+                    seen[design] = true;
+                    designs.add(dictionary.get(design));
+                }
+            }
+        }
+        return designs;
+    }
+
+    /**
+     * Mean and variance of a metric over the runs of each design
+     * @param metric The metric to summarize
+     * @return The statistics of each design, in the order of their first run
+     */
+    public Map<String, WelfordAccumulator> summarize(SimulationMetric metric) {
+        WelfordAccumulator[] statistics = new WelfordAccumulator[dictionary.size()];
+        for (Block block : blocks) {
+            for (int row = 0; row < block.rows; row++) {
+                int design = block.getDesign(row);
+                if (statistics[design] == null)
+                    statistics[design] = new WelfordAccumulator();
+                statistics[design].add(metric.valueOf(block, row));
+            }
+        }
+        Map<String, WelfordAccumulator> designs = new LinkedHashMap<>();
+        for (String design : getDesigns()) {
+            designs.put(design, statistics[dictionary.indexOf(design)]);
+        }
+        return designs;
+    }
+
+    /**
+     * Print the confidence interval of every metric for every design
+     * @param confidence Confidence level of the intervals
+     */
+    public void printSummary(double confidence) {
+        List<SimulationMetric> metrics = new ArrayList<>(SimulationMetric.all(productNames.length, inspectorNames.length));
+        metrics.add(0, SimulationMetric.totalThroughput());
+        List<Map<String, WelfordAccumulator>> summaries = new ArrayList<>();
+        for (SimulationMetric metric : metrics) {
+            summaries.add(summarize(metric));
+        }
+        System.out.println("------------------------------");
+        System.out.println("Runs:                " + records);
+        System.out.printf("%.0f%% Confidence Intervals:\n", confidence * 100);
+        for (String design : getDesigns()) {
+            System.out.println();
+            System.out.println(design + " (" + summaries.get(0).get(design).getCount() + " runs):");
+            for (int m = 0; m < metrics.size(); m++) {
+                WelfordAccumulator statistic = summaries.get(m).get(design);
+                System.out.printf("%-15s %12.8f +/- %.8f\n", metrics.get(m).getName(productNames, inspectorNames), statistic.getMean(),
+                        statistic.getHalfWidth(confidence));
+            }
+        }
+        System.out.println("------------------------------");
+    }
+
+    /**
+     * @param args The results file, then optionally the confidence level
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ResultStoreReader <results file> [confidence]");
+            return;
+        }
+        new ResultStoreReader(args[0]).printSummary(args.length > 1 ? Double.parseDouble(args[1]) : 0.95);
+    }
+
+    /**
+     * Read the header of a results file, of this or an earlier format version
+     */
+    static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer fixed = read(channel, 0, 16);
+        if (fixed.getInt() != ResultStoreWriter.MAGIC)
+            throw new IOException("Not a results file");
+        int version = fixed.getInt();
+        if (version < 1 || version > ResultStoreWriter.VERSION)
+            throw new IOException("Unsupported results file version " + version + ", expected 1 to " + ResultStoreWriter.VERSION);
+        int products = fixed.getInt();
+        int inspectors = fixed.getInt();
+        if (products < 0 || inspectors < 0 || products + inspectors > 1 << 16)
+            throw new IOException("Corrupt results header");
+        String[][] names = {new String[products], new String[inspectors]};
+        long position = 16;
+        for (String[] group : names) {
+            for (int n = 0; n < group.length; n++) {
+                int length = read(channel, position, 4).getInt();
+                if (length < 0 || length > 1 << 16)
+                    throw new IOException("Corrupt results header");
+                group[n] = new String(read(channel, position + 4, length).array(), StandardCharsets.UTF_8);
+                position += 4 + length;
+            }
+        }
+        return new Header(version, names[0], names[1], position);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Results file truncated");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The product and inspector names at the start of a results file
+     */
+    static class Header {
+        private final int version;
+        private final String[] productNames;
+        private final String[] inspectorNames;
+        private final long size;
+
+        Header(int version, String[] productNames, String[] inspectorNames, long size) {
+            this.version = version;
+            this.productNames = productNames;
+            this.inspectorNames = inspectorNames;
+            this.size = size;
+        }
+
+        boolean matches(String[] products, String[] inspectors) {
+            return Arrays.equals(productNames, products) && Arrays.equals(inspectorNames, inspectors);
+        }
+
+        /**
+         * @return Bytes of the header, where the first block starts
+         */
+        long getSize() {
+            return size;
+        }
+
+        int getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Column offsets of one block of runs in the mapping, see ResultStoreWriter for the order
+     * Version 1 blocks have no input model column.
+     */
+    static class Block {
+        private final ByteBuffer mapping;
+        private final int rows;
+        private final int design;
+        private final int totalProducts;
+        private final int clock;
+        private final int throughput;
+        private final int inspectorIdle;
+
+        Block(ByteBuffer mapping, int start, int version, int products, int inspectors) {
+            this.mapping = mapping;
+            rows = mapping.getInt(start);
+            int seed = start + 4;
+            int replication = seed + 8 * rows;
+            design = replication + 4 * rows;
+            int routing = design + 4 * rows;
+            int line = routing + 4 * rows;
+            int flags = line + 4 * rows;
+            int sampling = flags + rows;
+            int inputModel = sampling + rows;
+            int targetProducts = inputModel + (version >= 2 ? rows : 0);
+            totalProducts = targetProducts + 4 * rows;
+            int warmupProducts = totalProducts + 4 * rows;
+            clock = warmupProducts + 4 * rows;
+            throughput = clock + 8 * rows;
+            inspectorIdle = throughput + 8 * rows * products;
+        }
+
+        int getDesign(int row) {
+            return mapping.getInt(design + 4 * row);
+        }
+
+        int getTotalProducts(int row) {
+            return mapping.getInt(totalProducts + 4 * row);
+        }
+
+        double getClock(int row) {
+            return mapping.getDouble(clock + 8 * row);
+        }
+
+        double getThroughput(int row, int product) {
+            return mapping.getDouble(throughput + 8 * (product * rows + row));
+        }
+
+        double getInspectorIdle(int row, int inspector) {
+            return mapping.getDouble(inspectorIdle + 8 * (inspector * rows + row));
+        }
+    }
+}
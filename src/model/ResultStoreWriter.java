@@ -0,0 +1,342 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Appends run outputs to a columnar results file, read back with ResultStoreReader
+ * The file starts with a header naming the products and inspectors of the line, followed by blocks:
+ * dictionary entries, which give an id to each design, routing and line description string, and
+ * record blocks, which hold each column of up to BLOCK_ROWS runs as one little-endian primitive array.
+ *
+ * Append is thread-safe, so replications can record their output as they finish. Blocks are written
+ * under a file lock after reading the dictionary entries other processes appended, so separate
+ * processes can add to the same file; within a process, share a single writer per file.
+ */
+public class ResultStoreWriter implements Closeable {
+    static final int MAGIC = 0x53494d52; //"SIMR"
+    static final int VERSION = 2;
+    static final int DICTIONARY = 1;
+    static final int RECORDS = 2;
+    static final int BLOCK_ROWS = 1024;
+
+    //Bits of the flags column
+    static final int HISTORICAL = 1;
+    static final int INITIALIZATION = 2;
+    static final int DETECT_WARMUP = 4;
+
+    private final String file;
+    private final FileChannel channel;
+    private final String[] productNames;
+    private final String[] inspectorNames;
+
+    //Dictionary of the file, up to the known size
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long knownSize;
+
+    //Rows waiting for the next block
+    private int rows;
+    private final long[] seed = new long[BLOCK_ROWS];
+    private final int[] replication = new int[BLOCK_ROWS];
+    private final String[] design = new String[BLOCK_ROWS];
+    private final String[] routing = new String[BLOCK_ROWS];
+    private final String[] line = new String[BLOCK_ROWS];
+    private final byte[] flags = new byte[BLOCK_ROWS];
+    private final byte[] sampling = new byte[BLOCK_ROWS];
+    private final byte[] inputModel = new byte[BLOCK_ROWS];
+    private final int[] targetProducts = new int[BLOCK_ROWS];
+    private final int[] totalProducts = new int[BLOCK_ROWS];
+    private final int[] warmupProducts = new int[BLOCK_ROWS];
+    private final double[] clock = new double[BLOCK_ROWS];
+    private final double[][] throughput;
+    private final double[][] inspectorIdle;
+    private boolean closed;
+
+    /**
+     * Open a results file, creating it if needed
+     * @param file The file to append to
+     * @param model The line of the runs, whose product and inspector names must match an existing file
+     * @throws IOException If the file can't be opened or belongs to a different line
+     */
+    public ResultStoreWriter(String file, LineModel model) throws IOException {
+        this.file = file;
+        productNames = new String[model.getWorkstationCount()];
+        for (int w = 0; w < productNames.length; w++) {
+            productNames[w] = model.getProductName(w);
+        }
+        inspectorNames = new String[model.getInspectorCount()];
+        for (int i = 0; i < inspectorNames.length; i++) {
+            inspectorNames[i] = model.getInspectorName(i);
+        }
+        throughput = new double[productNames.length][BLOCK_ROWS];
+        inspectorIdle = new double[inspectorNames.length][BLOCK_ROWS];
+
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock();
+            try {
+                open();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the header of a new file, or check the header of an existing one and read its dictionary
+     */
+    private void open() throws IOException {
+        if (channel.size() == 0) {
+            ByteBuffer header = encodeHeader();
+            writeFully(header, 0);
+            knownSize = header.limit();
+        } else {
+            ResultStoreReader.Header existing = ResultStoreReader.readHeader(channel);
+            if (!existing.matches(productNames, inspectorNames))
+                throw new IOException("Results file is for a different line: " + file);
+            if (existing.getVersion() != VERSION)
+                throw new IOException("Results file is format version " + existing.getVersion() + ", append to a new file: " + file);
+            knownSize = existing.getSize();
+        }
+        synchronize();
+    }
+
+    /**
+     * Buffer the output of a run, writing a block when BLOCK_ROWS runs are buffered
+     * @param scenario The scenario of the run, its design name defaults to the routing name
+     * @param output The output of the run
+     * @throws UncheckedIOException If a block can't be written
+     */
+    public synchronized void append(SimulationScenario scenario, SimulationOutput output) {
+        if (closed)
+            throw new IllegalStateException("Results file closed");
+        if (output.getProductCount() != productNames.length || output.getInspectorCount() != inspectorNames.length)
+            throw new IllegalArgumentException("Output is for a different line");
+        String routingName = output.getRouting().getClass().getSimpleName();
+        seed[rows] = scenario.getSeed();
+        replication[rows] = scenario.getReplication();
+        design[rows] = scenario.getDesign() != null ? scenario.getDesign() : routingName;
+        routing[rows] = routingName;
+        line[rows] = scenario.getModel().getConfiguration().format();
+        flags[rows] = (byte) ((scenario.isUseHistorical() ? HISTORICAL : 0) | (scenario.isUseInitialization() ? INITIALIZATION : 0)
+                | (scenario.isDetectWarmup() ? DETECT_WARMUP : 0));
+        sampling[rows] = (byte) scenario.getSamplingMethod().ordinal();
+        inputModel[rows] = (byte) scenario.getInputModel().ordinal();
+        targetProducts[rows] = scenario.getTotalProducts();
+        totalProducts[rows] = output.getTotalProducts();
+        warmupProducts[rows] = output.getWarmupProducts();
+        clock[rows] = output.getClock();
+        for (int w = 0; w < productNames.length; w++) {
+            throughput[w][rows] = output.getThroughput(w);
+        }
+        for (int i = 0; i < inspectorNames.length; i++) {
+            inspectorIdle[i][rows] = output.getInspectorIdle(i);
+        }
+        if (++rows == BLOCK_ROWS)
+            flushRows();
+    }
+
+    /**
+     * Write the buffered runs as a block
+     * @throws UncheckedIOException If the block can't be written
+     */
+    public synchronized void flush() {
+        if (rows > 0)
+            flushRows();
+    }
+
+    /**
+     * Write the buffered runs and close the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void flushRows() {
+        try {
+            FileLock lock = channel.lock();
+            try {
+                writeBlock();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write results to " + file, e);
+        }
+    }
+
+    /**
+     * Write the buffered rows after the blocks of other writers, with the file locked
+     */
+    private void writeBlock() throws IOException {
+        synchronize();
+
+        //Dictionary entries for the strings new to the file
+        Set<String> added = new LinkedHashSet<>();
+        for (int r = 0; r < rows; r++) {
+            for (String value : new String[]{design[r], routing[r], line[r]}) {
+                if (!dictionary.containsKey(value))
+                    added.add(value);
+            }
+        }
+        List<byte[]> entries = new ArrayList<>();
+        int size = 0;
+        for (String value : added) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            entries.add(bytes);
+            size += 12 + bytes.length;
+        }
+        int recordBytes = 4 + rows * (8 + 4 + 4 + 4 + 4 + 1 + 1 + 1 + 4 + 4 + 4 + 8 + 8 * (productNames.length + inspectorNames.length));
+        size += 8 + recordBytes;
+
+        ByteBuffer block = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        int id = dictionary.size();
+        Map<String, Integer> ids = new HashMap<>(dictionary);
+        int entry = 0;
+        for (String value : added) {
+            byte[] bytes = entries.get(entry++);
+            block.putInt(DICTIONARY).putInt(4 + bytes.length).putInt(id).put(bytes);
+            ids.put(value, id++);
+        }
+
+        //One column after the other
+        block.putInt(RECORDS).putInt(recordBytes).putInt(rows);
+        for (int r = 0; r < rows; r++) {
+            block.putLong(seed[r]);
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(replication[r]);
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(ids.get(design[r]));
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(ids.get(routing[r]));
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(ids.get(line[r]));
+        }
+        block.put(flags, 0, rows);
+        block.put(sampling, 0, rows);
+        block.put(inputModel, 0, rows);
+        for (int r = 0; r < rows; r++) {
+            block.putInt(targetProducts[r]);
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(totalProducts[r]);
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putInt(warmupProducts[r]);
+        }
+        for (int r = 0; r < rows; r++) {
+            block.putDouble(clock[r]);
+        }
+        for (double[] column : throughput) {
+            for (int r = 0; r < rows; r++) {
+                block.putDouble(column[r]);
+            }
+        }
+        for (double[] column : inspectorIdle) {
+            for (int r = 0; r < rows; r++) {
+                block.putDouble(column[r]);
+            }
+        }
+        block.flip();
+
+        writeFully(block, knownSize);
+        knownSize += size;
+        dictionary.putAll(ids);
+        rows = 0;
+    }
+
+    /**
+     * Read the dictionary entries appended since the last block, with the file locked
+     * A block cut short by a crashed writer is removed, so appends continue from the last complete block
+     */
+    private void synchronize() throws IOException {
+        long size = channel.size();
+        ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (knownSize < size) {
+            prefix.clear();
+            if (size - knownSize < 8) {
+                channel.truncate(knownSize);
+                return;
+            }
+            readFully(prefix, knownSize);
+            int type = prefix.getInt(0);
+            int length = prefix.getInt(4);
+            if (length < 0 || knownSize + 8 + length > size || (type != DICTIONARY && type != RECORDS)) {
+                channel.truncate(knownSize);
+                return;
+            }
+            if (type == DICTIONARY) {
+                ByteBuffer entry = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(entry, knownSize + 8);
+                int id = entry.getInt(0);
+                dictionary.put(new String(entry.array(), 4, length - 4, StandardCharsets.UTF_8), id);
+            }
+            knownSize += 8 + length;
+        }
+    }
+
+    private ByteBuffer encodeHeader() {
+        List<byte[]> names = new ArrayList<>();
+        int size = 16;
+        for (String[] group : new String[][]{productNames, inspectorNames}) {
+            for (String name : group) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                names.add(bytes);
+                size += 4 + bytes.length;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(productNames.length).putInt(inspectorNames.length);
+        for (byte[] name : names) {
+            header.putInt(name.length).put(name);
+        }
+        header.flip();
+        return header;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Results file truncated: " + file);
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches routing tables for the largest mean total throughput with a (1 + lambda) evolution strategy
+ * Each generation mutates the incumbent table into several offspring, changing the candidate chosen,
+ * and with several states sometimes the next state, of a few entries, then runs all offspring in parallel.
+ * Replication r of every table uses the same random number substreams, so tables are compared on the
+ * same sample paths and small differences aren't lost in the noise. Since the search favours tables
+ * that happen to suit its own replications, the result is checked against the starting policies on
+ * fresh replications.
+ */
+public class RoutingSearch {
+    private final SimulationReplicationRunner runner;
+    private final SimulationMetric metric = SimulationMetric.totalThroughput();
+    private final long seed;
+    private final int replications;
+    private final int totalProducts;
+    private final boolean useInitialization;
+    private final RandomStream random; //mutations
+    private int evaluations;
+
+    /**
+     * @param runner Runs the replications of each generation
+     * @param seed The seed whose replication substreams are shared by all tables
+     * @param replications Replications of each table during the search
+     * @param totalProducts How many products each replication simulates
+     * @param useInitialization Discard the initialization period from the output
+     */
+    public RoutingSearch(SimulationReplicationRunner runner, long seed, int replications, int totalProducts, boolean useInitialization) {
+        if (replications < 2 || totalProducts <= 0)
+            throw new IllegalArgumentException("Invalid replications or products");
+        this.runner = runner;
+        this.seed = seed;
+        this.replications = replications;
+        this.totalProducts = totalProducts;
+        this.useInitialization = useInitialization;
+        random = new RandomStream(~seed);
+    }
+
+    /**
+     * Run the search
+     * @param names Names of the starting policies
+     * @param starts The starting policies, compiled for one line; the best one seeds the search
+     * @param generations How many generations to run
+     * @param offspring Tables tried per generation
+     * @param confidence Confidence level of the validation intervals
+     * @return The best table found and its comparison with the starting policies
+     */
+    public Result search(List<String> names, List<RoutingTable> starts, int generations, int offspring, double confidence) {
+        if (starts.isEmpty() || names.size() != starts.size())
+            throw new IllegalArgumentException("No starting policies");
+        if (generations < 0 || offspring <= 0)
+            throw new IllegalArgumentException("Invalid search size");
+        evaluations = 0;
+
+        double[] startMeans = means(evaluate(starts, 0));
+        int bestStart = 0;
+        for (int i = 1; i < startMeans.length; i++) {
+            if (startMeans[i] > startMeans[bestStart])
+                bestStart = i;
+        }
+        RoutingTable incumbent = starts.get(bestStart);
+        double incumbentMean = startMeans[bestStart];
+        List<int[]> open = openEntries(incumbent);
+        if (open.isEmpty())
+            generations = 0; //Nothing to choose, every decision is forced
+
+        double[] history = new double[generations];
+        for (int g = 0; g < generations; g++) {
+            List<RoutingTable> children = new ArrayList<>(offspring);
+            for (int c = 0; c < offspring; c++) {
+                children.add(mutate(incumbent, open));
+            }
+            double[] childMeans = means(evaluate(children, 0));
+            for (int c = 0; c < offspring; c++) {
+                if (childMeans[c] > incumbentMean) {
+                    incumbent = children.get(c);
+                    incumbentMean = childMeans[c];
+                }
+            }
+            history[g] = incumbentMean;
+        }
+
+        //Fresh replications, past the ones used to search
+        List<RoutingTable> compared = new ArrayList<>(starts);
+        compared.add(incumbent);
+        double[][] validation = evaluate(compared, replications);
+        return new Result(names, startMeans, bestStart, incumbent, incumbentMean, history, evaluations, validation, confidence);
+    }
+
+    /**
+     * @return The metric of every replication of every table, the same replications for all tables
+     */
+    private double[][] evaluate(List<RoutingTable> tables, int firstReplication) {
+        List<SimulationScenario> scenarios = new ArrayList<>(tables.size() * replications);
+        for (RoutingTable table : tables) {
+            for (int r = 0; r < replications; r++) {
+                SimulationScenario scenario = new SimulationScenario(seed, totalProducts, table.supplier(), false, false, useInitialization);
+                scenario.setReplication(firstReplication + r);
+                scenario.setModel(table.getModel());
+                scenarios.add(scenario);
+            }
+        }
+        List<SimulationOutput> outputs = runner.runBatches(scenarios, replications);
+        evaluations += tables.size();
+
+        double[][] values = new double[tables.size()][replications];
+        for (int t = 0; t < tables.size(); t++) {
+            for (int r = 0; r < replications; r++) {
+                values[t][r] = metric.valueOf(outputs.get(t * replications + r));
+            }
+        }
+        return values;
+    }
+
+    private static double[] means(double[][] values) {
+        double[] means = new double[values.length];
+        for (int t = 0; t < values.length; t++) {
+            for (double value : values[t]) {
+                means[t] += value;
+            }
+            means[t] /= values[t].length;
+        }
+        return means;
+    }
+
+    /**
+     * @return Every table, state and level combination where at least two candidates have space
+     */
+    private static List<int[]> openEntries(RoutingTable table) {
+        List<int[]> open = new ArrayList<>();
+        for (int t = 0; t < table.getTableCount(); t++) {
+            for (int combination = 0; combination < table.getCombinations(t); combination++) {
+                if (spaces(table, t, combination).length < 2)
+                    continue;
+                for (int s = 0; s < table.getStateCount(); s++) {
+                    open.add(new int[]{t, s, combination});
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * @return The candidates of a level combination that aren't full
+     */
+    private static int[] spaces(RoutingTable table, int t, int combination) {
+        int[] levels = table.getLevels(t, combination);
+        int[] candidates = table.getCandidates(t);
+        LineModel model = table.getModel();
+        int count = 0;
+        int[] spaces = new int[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] < model.getBufferCapacity(candidates[i]))
+                spaces[count++] = i;
+        }
+        int[] result = new int[count];
+        System.arraycopy(spaces, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Change one to three open entries, each to another candidate with space
+     * With several states, a quarter of the changes also move the next state
+     */
+    private RoutingTable mutate(RoutingTable table, List<int[]> open) {
+        int changes = 1 + (int) (random.nextDouble() * 3);
+        for (int n = 0; n < changes; n++) {
+            int[] entry = open.get((int) (random.nextDouble() * open.size()));
+            int t = entry[0];
+            int state = entry[1];
+            int combination = entry[2];
+            int current = table.getEntry(t, state, combination);
+            int[] spaces = spaces(table, t, combination);
+            int choice = spaces[(int) (random.nextDouble() * spaces.length)];
+            if (choice == RoutingTable.choiceOf(current))
+                choice = spaces[(indexOf(spaces, choice) + 1) % spaces.length];
+            int nextState = RoutingTable.stateOf(current);
+            if (table.getStateCount() > 1 && random.nextDouble() < 0.25)
+                nextState = (int) (random.nextDouble() * table.getStateCount());
+            table = table.withEntry(t, state, combination, choice, nextState);
+        }
+        return table;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    public static class Result {
+        private final List<String> names;
+        private final double[] startMeans;
+        private final int bestStart;
+        private final RoutingTable best;
+        private final double bestMean;
+        private final double[] history;
+        private final int evaluations;
+        private final WelfordAccumulator[] validation; //starts, then the best table
+        private final WelfordAccumulator improvement; //best table minus the best start, paired
+        private final double confidence;
+
+        private Result(List<String> names, double[] startMeans, int bestStart, RoutingTable best, double bestMean,
+                       double[] history, int evaluations, double[][] validation, double confidence) {
+            this.names = names;
+            this.startMeans = startMeans;
+            this.bestStart = bestStart;
+            this.best = best;
+            this.bestMean = bestMean;
+            this.history = history;
+            this.evaluations = evaluations;
+            this.confidence = confidence;
+            this.validation = new WelfordAccumulator[validation.length];
+            for (int t = 0; t < validation.length; t++) {
+                this.validation[t] = new WelfordAccumulator();
+                for (double value : validation[t]) {
+                    this.validation[t].add(value);
+                }
+            }
+            improvement = new WelfordAccumulator();
+            double[] found = validation[validation.length - 1];
+            for (int r = 0; r < found.length; r++) {
+                improvement.add(found[r] - validation[bestStart][r]);
+            }
+        }
+
+        /**
+         * @return The best table found, run it with its supplier
+         */
+        public RoutingTable getBest() {
+            return best;
+        }
+
+        /**
+         * @return Mean total throughput of the best table on the search replications
+         */
+        public double getBestMean() {
+            return bestMean;
+        }
+
+        /**
+         * @return Mean total throughput of the incumbent after each generation
+         */
+        public double[] getHistory() {
+            return history.clone();
+        }
+
+        /**
+         * @return Paired difference of the best table and the best starting policy on fresh replications
+         */
+        public WelfordAccumulator getImprovement() {
+            return improvement;
+        }
+
+        public void printOutput() {
+            System.out.println("------------------------------");
+            System.out.println("Routing Search:      " + history.length + " generations, " + evaluations + " tables run");
+            System.out.println("Started From:        " + names.get(bestStart));
+            System.out.println();
+            System.out.printf("%-20s %16s %28s\n", "Policy", "Search mean", "Fresh mean");
+            for (int t = 0; t <= names.size(); t++) {
+                boolean found = t == names.size();
+                System.out.printf("%-20s %16.8f %16.8f +- %.8f\n", found ? "Search result" : names.get(t),
+                        found ? bestMean : startMeans[t], validation[t].getMean(), validation[t].getHalfWidth(confidence));
+            }
+            System.out.printf("Improvement on fresh replications: %.8f +- %.8f products/minute\n",
+                    improvement.getMean(), improvement.getHalfWidth(confidence));
+            System.out.println();
+            best.printOutput();
+            System.out.println("------------------------------");
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A routing policy compiled to a decision table, run by TableRouting
+ * Every component with several buffers gets a table indexed by the policy state and the levels of
+ * its candidate buffers, in mixed radix. Each entry holds the chosen candidate and the next state.
+ * Tables are immutable and shared by every run of the policy.
+ */
+public class RoutingTable {
+    static final int MAX_STATES = 1 << 16;
+
+    private final LineModel model;
+    private final int[][] candidates; //buffers of each tabulated component
+    private final int[][] radix; //level multiplier of each candidate
+    private final int[] combinations; //level combinations of each table
+    private final int[] offsets; //start of each table in entries
+    private final int stateCount;
+    private final int[] entries; //next state << 8 | choice + 1, by table, then state, then levels
+
+    private RoutingTable(LineModel model, int[][] candidates, int stateCount, int[] entries) {
+        this.model = model;
+        this.candidates = candidates;
+        this.stateCount = stateCount;
+        this.entries = entries;
+        int[] capacities = model.getBufferCapacities();
+        radix = new int[candidates.length][];
+        combinations = new int[candidates.length];
+        offsets = new int[candidates.length];
+        int offset = 0;
+        for (int t = 0; t < candidates.length; t++) {
+            radix[t] = new int[candidates[t].length];
+            int combination = 1;
+            for (int i = candidates[t].length - 1; i >= 0; i--) {
+                radix[t][i] = combination;
+                combination *= capacities[candidates[t][i]] + 1;
+            }
+            combinations[t] = combination;
+            offsets[t] = offset;
+            offset += combination * stateCount;
+        }
+    }
+
+    /**
+     * Tabulate a policy for a line by running it on every buffer level combination of every reachable state
+     * The policy must expose everything its decisions depend on through getState, as the built-in policies do.
+     * @param model The line, whose capacities bound the tables
+     * @param policy Creates the policy to compile
+     * @return The table
+     * @throws IllegalArgumentException If the policy reaches more than MAX_STATES states
+     */
+    public static RoutingTable compile(LineModel model, Supplier<Insp1Routing> policy) {
+        List<int[]> shared = new ArrayList<>();
+        for (int c = 0; c < model.getComponentCount(); c++) {
+            if (model.getComponentBuffers(c).length > 1)
+                shared.add(model.getComponentBuffers(c));
+        }
+        int[][] candidates = shared.toArray(new int[0][]);
+        int[] capacities = model.getBufferCapacities();
+        int[] levels = new int[model.getBufferCount()];
+
+        //Breadth-first over the states, numbered in the order found
+        Insp1Routing routing = policy.get();
+        Map<Long, Integer> ids = new HashMap<>();
+        List<Long> states = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>(); //entries of each state, tables concatenated
+        Deque<Integer> pending = new ArrayDeque<>();
+        ids.put(routing.getState(), 0);
+        states.add(routing.getState());
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int id = pending.poll();
+            List<Integer> row = new ArrayList<>();
+            for (int[] table : candidates) {
+                int combinations = 1;
+                for (int buffer : table) {
+                    combinations *= capacities[buffer] + 1;
+                }
+                for (int combination = 0; combination < combinations; combination++) {
+                    int rest = combination;
+                    for (int i = table.length - 1; i >= 0; i--) {
+                        int size = capacities[table[i]] + 1;
+                        levels[table[i]] = rest % size;
+                        rest /= size;
+                    }
+                    routing.setState(states.get(id));
+                    int choice = routing.determineDestination(levels, capacities, table);
+                    Integer next = ids.get(routing.getState());
+                    if (next == null) {
+                        if (states.size() == MAX_STATES)
+                            throw new IllegalArgumentException("Policy has too many states to tabulate");
+                        next = states.size();
+                        ids.put(routing.getState(), next);
+                        states.add(routing.getState());
+                        pending.add(next);
+                    }
+                    row.add(encode(choice, next));
+                }
+            }
+            int[] values = new int[row.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.get(i);
+            }
+            while (rows.size() <= id) {
+                rows.add(null);
+            }
+            rows.set(id, values);
+        }
+
+        //Reorder to table, then state, then levels
+        int stateCount = states.size();
+        int total = 0;
+        int[] sizes = new int[candidates.length];
+        for (int t = 0; t < candidates.length; t++) {
+            sizes[t] = 1;
+            for (int buffer : candidates[t]) {
+                sizes[t] *= capacities[buffer] + 1;
+            }
+            total += sizes[t] * stateCount;
+        }
+        int[] entries = new int[total];
+        int start = 0;
+        int rowStart = 0;
+        for (int t = 0; t < candidates.length; t++) {
+            for (int s = 0; s < stateCount; s++) {
+                System.arraycopy(rows.get(s), rowStart, entries, start + s * sizes[t], sizes[t]);
+            }
+            start += sizes[t] * stateCount;
+            rowStart += sizes[t];
+        }
+        return new RoutingTable(model, candidates, stateCount, entries);
+    }
+
+    /**
+     * @return Creates a routing running this table from state 0
+     */
+    public Supplier<Insp1Routing> supplier() {
+        return () -> new TableRouting(this);
+    }
+
+    public LineModel getModel() {
+        return model;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getTableCount() {
+        return candidates.length;
+    }
+
+    /**
+     * @param candidates Buffers accepting a component, from the line the table was compiled for
+     * @return The table of the component, -1 if none matches
+     */
+    int findTable(int[] candidates, int[] capacities) {
+        for (int t = 0; t < this.candidates.length; t++) {
+            if (this.candidates[t] == candidates)
+                return t;
+        }
+        //A compiled copy of the same line, such as a design of a sweep
+        for (int t = 0; t < this.candidates.length; t++) {
+            if (Arrays.equals(this.candidates[t], candidates) && fits(t, capacities))
+                return t;
+        }
+        return -1;
+    }
+
+    private boolean fits(int t, int[] capacities) {
+        int[] own = model.getBufferCapacities();
+        for (int buffer : candidates[t]) {
+            if (capacities[buffer] != own[buffer])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Index into entries of a state and the candidate levels
+     */
+    int index(int t, int state, int[] levels) {
+        int[] table = candidates[t];
+        int[] multipliers = radix[t];
+        int index = offsets[t] + state * combinations[t];
+        for (int i = 0; i < table.length; i++) {
+            index += levels[table[i]] * multipliers[i];
+        }
+        return index;
+    }
+
+    int getEntry(int index) {
+        return entries[index];
+    }
+
+    static int encode(int choice, int nextState) {
+        return nextState << 8 | (choice + 1);
+    }
+
+    static int choiceOf(int entry) {
+        return (entry & 0xFF) - 1;
+    }
+
+    static int stateOf(int entry) {
+        return entry >>> 8;
+    }
+
+    //Access for the search, which varies the entries of a table
+
+    int getCombinations(int t) {
+        return combinations[t];
+    }
+
+    int[] getCandidates(int t) {
+        return candidates[t];
+    }
+
+    //Layout for ModelCompiler, which generates the index arithmetic with these as constants
+
+    int getOffset(int t) {
+        return offsets[t];
+    }
+
+    int getRadix(int t, int candidate) {
+        return radix[t][candidate];
+    }
+
+    /**
+     * @return The entries, not to be modified
+     */
+    int[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The candidate levels of a level combination of a table
+     */
+    int[] getLevels(int t, int combination) {
+        int[] table = candidates[t];
+        int[] levels = new int[table.length];
+        for (int i = 0; i < table.length; i++) {
+            levels[i] = combination / radix[t][i] % (model.getBufferCapacity(table[i]) + 1);
+        }
+        return levels;
+    }
+
+    int getEntry(int t, int state, int combination) {
+        return entries[offsets[t] + state * combinations[t] + combination];
+    }
+
+    /**
+     * @return A copy of the table with one entry replaced
+     */
+    RoutingTable withEntry(int t, int state, int combination, int choice, int nextState) {
+        if (nextState < 0 || nextState >= stateCount)
+            throw new IllegalArgumentException("Invalid state");
+        int[] changed = entries.clone();
+        changed[offsets[t] + state * combinations[t] + combination] = encode(choice, nextState);
+        return new RoutingTable(model, candidates, stateCount, changed);
+    }
+
+    /**
+     * Print the decision of every state and level combination, with the buffer names of the line
+     */
+    public void printOutput() {
+        for (int t = 0; t < candidates.length; t++) {
+            StringBuilder header = new StringBuilder("Component " + model.getComponentName(model.getBufferComponent(candidates[t][0])) + ", levels of");
+            for (int buffer : candidates[t]) {
+                header.append(' ').append(model.getBufferName(buffer));
+            }
+            System.out.println(header);
+            for (int s = 0; s < stateCount; s++) {
+                for (int combination = 0; combination < combinations[t]; combination++) {
+                    int entry = getEntry(t, s, combination);
+                    int choice = choiceOf(entry);
+                    System.out.printf("  state %d %s -> %s%s\n", s, Arrays.toString(getLevels(t, combination)),
+                            choice == -1 ? "hold" : model.getBufferName(candidates[t][choice]),
+                            stateCount > 1 ? ", state " + stateOf(entry) : "");
+                }
+            }
+        }
+    }
+}
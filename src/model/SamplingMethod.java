@@ -0,0 +1,13 @@
+package model;
+
+/**
+ * How exponential service times are generated from the uniform random numbers
+ */
+public enum SamplingMethod {
+    /** Fastest, the default */
+    Ziggurat,
+    /** -log(1 - U), one uniform per variate, so runs can be paired with Antithetic */
+    InverseTransform,
+    /** -log(U), the mirror of InverseTransform on the same uniforms, negatively correlated with it */
+    Antithetic
+}
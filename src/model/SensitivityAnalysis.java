@@ -0,0 +1,59 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derivatives of a run's outputs with respect to every service rate and buffer capacity
+ * Rates are estimated along the run's own sample path, see GradientEstimator. Capacities are whole
+ * numbers with no derivative, so each buffer gets the difference to a run of the line with one more
+ * space in it, on the same random numbers so the difference isn't swamped by sampling noise.
+ */
+public class SensitivityAnalysis {
+    private SensitivityAnalysis() {
+    }
+
+    /**
+     * Run a scenario with its sensitivities
+     * @param runner Runs the scenario and the capacity variants in parallel
+     * @param scenario A run with exponential service times from the random number generator
+     * @return The scenario's output, with the sensitivities set
+     */
+    public static SimulationOutput run(SimulationReplicationRunner runner, SimulationScenario scenario) {
+        LineModel model = scenario.getModel();
+        LineConfiguration configuration = model.getConfiguration();
+        List<SimulationScenario> scenarios = new ArrayList<>();
+        SimulationScenario base = new SimulationScenario(scenario);
+        base.setEstimateGradients(true);
+        scenarios.add(base);
+        String design = scenario.getDesign() != null ? scenario.getDesign() : scenario.createRouting().getClass().getSimpleName();
+        for (int buffer = 0; buffer < model.getBufferCount(); buffer++) {
+            int workstation = model.getBufferWorkstation(buffer);
+            SimulationScenario variant = new SimulationScenario(scenario);
+            variant.setEstimateGradients(false);
+            variant.setModel(configuration.withBufferCapacity(workstation, buffer - model.getWorkstationBufferStart(workstation),
+                    model.getBufferCapacity(buffer) + 1).compile());
+            variant.setDesign(design + " " + model.getBufferName(buffer) + "+1");
+            scenarios.add(variant);
+        }
+        List<SimulationOutput> outputs = runner.runAll(scenarios);
+
+        SimulationOutput output = outputs.get(0);
+        int buffers = model.getBufferCount();
+        String[] names = new String[buffers];
+        double[][] throughput = new double[output.getProductCount()][buffers];
+        double[][] idle = new double[output.getInspectorCount()][buffers];
+        for (int buffer = 0; buffer < buffers; buffer++) {
+            names[buffer] = "capacity " + model.getBufferName(buffer);
+            SimulationOutput variant = outputs.get(buffer + 1);
+            for (int w = 0; w < throughput.length; w++) {
+                throughput[w][buffer] = variant.getThroughput(w) - output.getThroughput(w);
+            }
+            for (int i = 0; i < idle.length; i++) {
+                idle[i][buffer] = variant.getInspectorIdle(i) - output.getInspectorIdle(i);
+            }
+        }
+        output.setSensitivities(output.getSensitivities().with(new SensitivityEstimates(output, names, throughput, idle)));
+        return output;
+    }
+}
@@ -0,0 +1,105 @@
+package model;
+
+/**
+ * Derivatives of the throughputs and inspector idle fractions of a run with respect to line parameters
+ * Service rates come from perturbation analysis of the run itself, see GradientEstimator, and buffer
+ * capacities from differences to runs with one more space, see SensitivityAnalysis.
+ */
+public class SensitivityEstimates {
+    private final String[] productNames;
+    private final String[] inspectorNames;
+    private final String[] parameterNames;
+    private final double[][] throughput; //by product, then parameter
+    private final double[][] inspectorIdle; //by inspector, then parameter
+
+    SensitivityEstimates(SimulationOutput output, String[] parameterNames, double[][] throughput, double[][] inspectorIdle) {
+        productNames = new String[output.getProductCount()];
+        for (int w = 0; w < productNames.length; w++) {
+            productNames[w] = output.getProductName(w);
+        }
+        inspectorNames = new String[output.getInspectorCount()];
+        for (int i = 0; i < inspectorNames.length; i++) {
+            inspectorNames[i] = output.getInspectorName(i);
+        }
+        this.parameterNames = parameterNames;
+        this.throughput = throughput;
+        this.inspectorIdle = inspectorIdle;
+    }
+
+    /**
+     * @return The estimates with the parameters of other estimates of the same run added after its own
+     */
+    SensitivityEstimates with(SensitivityEstimates other) {
+        int count = parameterNames.length + other.parameterNames.length;
+        String[] names = new String[count];
+        System.arraycopy(parameterNames, 0, names, 0, parameterNames.length);
+        System.arraycopy(other.parameterNames, 0, names, parameterNames.length, other.parameterNames.length);
+        return new SensitivityEstimates(productNames, inspectorNames, names, join(throughput, other.throughput),
+                join(inspectorIdle, other.inspectorIdle));
+    }
+
+    private SensitivityEstimates(String[] productNames, String[] inspectorNames, String[] parameterNames, double[][] throughput,
+                                 double[][] inspectorIdle) {
+        this.productNames = productNames;
+        this.inspectorNames = inspectorNames;
+        this.parameterNames = parameterNames;
+        this.throughput = throughput;
+        this.inspectorIdle = inspectorIdle;
+    }
+
+    private static double[][] join(double[][] first, double[][] second) {
+        double[][] joined = new double[first.length][];
+        for (int row = 0; row < first.length; row++) {
+            joined[row] = new double[first[row].length + second[row].length];
+            System.arraycopy(first[row], 0, joined[row], 0, first[row].length);
+            System.arraycopy(second[row], 0, joined[row], first[row].length, second[row].length);
+        }
+        return joined;
+    }
+
+    public int getParameterCount() {
+        return parameterNames.length;
+    }
+
+    /**
+     * @return e.g. "rate Inspector1.C1" or "capacity Workstation1.C1"
+     */
+    public String getParameterName(int parameter) {
+        return parameterNames[parameter];
+    }
+
+    /**
+     * @return Change of a product's throughput per unit of the parameter
+     */
+    public double getThroughput(int product, int parameter) {
+        return throughput[product][parameter];
+    }
+
+    /**
+     * @return Change of an inspector's idle fraction per unit of the parameter
+     */
+    public double getInspectorIdle(int inspector, int parameter) {
+        return inspectorIdle[inspector][parameter];
+    }
+
+    public void printOutput() {
+        System.out.printf("%-28s", "Sensitivity:");
+        for (String product : productNames) {
+            System.out.printf(" %14s", product + "Throughput");
+        }
+        for (String inspector : inspectorNames) {
+            System.out.printf(" %14s", inspector + "Idle");
+        }
+        System.out.println();
+        for (int p = 0; p < parameterNames.length; p++) {
+            System.out.printf("%-28s", parameterNames[p]);
+            for (double[] row : throughput) {
+                System.out.printf(" %14.6e", row[p]);
+            }
+            for (double[] row : inspectorIdle) {
+                System.out.printf(" %14.6e", row[p]);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Runs replications until the confidence interval of every tracked metric is narrow enough
+ * After a first round, the number of further replications is estimated from the current
+ * variance (n * (h / target)^2) and rounded up to keep every worker of the runner busy.
+ */
+public class SequentialReplicationProcedure {
+    private final SimulationReplicationRunner runner;
+    private final double relativeHalfWidth;
+    private final double confidence;
+    private final int minReplications;
+    private final int maxReplications;
+    private final List<SimulationMetric> metrics;
+
+    /**
+     * @param runner Runs each round of replications
+     * @param relativeHalfWidth Target half-width as a fraction of the mean, e.g. 0.01
+     * @param confidence Confidence level of the intervals, e.g. 0.95
+     * @param minReplications Replications of the first round, at least 2
+     * @param maxReplications Stop here even if the target is not met
+     * @param metrics The metrics that must meet the target
+     */
+    public SequentialReplicationProcedure(SimulationReplicationRunner runner, double relativeHalfWidth, double confidence,
+                                          int minReplications, int maxReplications, List<SimulationMetric> metrics) {
+        if (relativeHalfWidth <= 0 || confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("Invalid precision target");
+        if (minReplications < 2 || maxReplications < minReplications)
+            throw new IllegalArgumentException("Invalid replication limits");
+        if (metrics.isEmpty())
+            throw new IllegalArgumentException("No metrics to track");
+        this.runner = runner;
+        this.relativeHalfWidth = relativeHalfWidth;
+        this.confidence = confidence;
+        this.minReplications = minReplications;
+        this.maxReplications = maxReplications;
+        this.metrics = new ArrayList<>(metrics);
+    }
+
+    /**
+     * Run replications of one design until the target is met
+     * @param scenarios Creates the scenario of each replication number, from 0
+     * @return The outputs and interval estimates
+     */
+    public Result run(IntFunction<SimulationScenario> scenarios) {
+        Map<SimulationMetric, WelfordAccumulator> statistics = new LinkedHashMap<>();
+        List<SimulationOutput> outputs = new ArrayList<>();
+
+        int batch = minReplications;
+        while (true) {
+            List<SimulationScenario> round = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                round.add(scenarios.apply(outputs.size() + i));
+            }
+            for (SimulationOutput output : runner.runAll(round)) {
+                if (statistics.isEmpty()) {
+                    for (SimulationMetric metric : SimulationMetric.all(output)) {
+                        statistics.put(metric, new WelfordAccumulator());
+                    }
+                }
+                outputs.add(output);
+                for (Map.Entry<SimulationMetric, WelfordAccumulator> entry : statistics.entrySet()) {
+                    entry.getValue().add(entry.getKey().valueOf(output));
+                }
+            }
+
+            int needed = estimateReplications(statistics, outputs.size());
+            if (needed <= outputs.size())
+                return new Result(outputs, statistics, confidence, true);
+            if (outputs.size() >= maxReplications)
+                return new Result(outputs, statistics, confidence, false);
+
+            int parallelism = runner.getParallelism();
+            batch = needed - outputs.size();
+            batch = ((batch + parallelism - 1) / parallelism) * parallelism;
+            batch = Math.min(batch, maxReplications - outputs.size());
+        }
+    }
+
+    /**
+     * Estimate the total replications needed for the widest tracked interval to meet the target
+     */
+    private int estimateReplications(Map<SimulationMetric, WelfordAccumulator> statistics, int replications) {
+        double needed = replications;
+        for (SimulationMetric metric : metrics) {
+            WelfordAccumulator statistic = statistics.get(metric);
+            if (statistic == null)
+                throw new IllegalArgumentException("Metric not produced by the line");
+            double ratio = statistic.getRelativeHalfWidth(confidence) / relativeHalfWidth;
+            if (Double.isNaN(ratio) || Double.isInfinite(ratio))
+                return Integer.MAX_VALUE; //mean of zero, can't reach a relative target
+            if (ratio > 1)
+                needed = Math.max(needed, Math.ceil(replications * ratio * ratio));
+        }
+        return (int) Math.min(needed, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Outputs of a sequential run with the interval estimate of each metric
+     */
+    public static class Result {
+        private final List<SimulationOutput> outputs;
+        private final Map<SimulationMetric, WelfordAccumulator> statistics;
+        private final double confidence;
+        private final boolean converged;
+
+        private Result(List<SimulationOutput> outputs, Map<SimulationMetric, WelfordAccumulator> statistics, double confidence, boolean converged) {
+            this.outputs = outputs;
+            this.statistics = statistics;
+            this.confidence = confidence;
+            this.converged = converged;
+        }
+
+        public List<SimulationOutput> getOutputs() {
+            return outputs;
+        }
+
+        public WelfordAccumulator getStatistics(SimulationMetric metric) {
+            return statistics.get(metric);
+        }
+
+        /**
+         * @return False if the replication limit was reached before the target
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+
+        public void printOutput() {
+            System.out.println("------------------------------");
+            System.out.println("Inspector 1 Routing: " + outputs.get(0).getRouting().getClass().getSimpleName());
+            System.out.println("Replications:        " + outputs.size() + (converged ? "" : " (precision target not met)"));
+            System.out.printf("%.0f%% Confidence Intervals:\n", confidence * 100);
+            for (Map.Entry<SimulationMetric, WelfordAccumulator> entry : statistics.entrySet()) {
+                WelfordAccumulator statistic = entry.getValue();
+                System.out.printf("%-13s %12.8f +/- %.8f (%.3f%%)\n", entry.getKey().getName(outputs.get(0)), statistic.getMean(),
+                        statistic.getHalfWidth(confidence), statistic.getRelativeHalfWidth(confidence) * 100);
+            }
+            System.out.println("------------------------------");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Service time sampler for one input process
+ * Variates are generated a block at a time, so each draw is a single array read and the
+ * generation loop of a subclass runs without per-draw calls.
+ */
+public abstract class ServiceSampler {
+    public static final int BLOCK_SIZE = 256;
+
+    protected final RandomStream stream;
+    private final double[] block = new double[BLOCK_SIZE];
+    private int position = BLOCK_SIZE;
+
+    //Variates generated so far, including the unused rest of the block
+    private long generated;
+    private double generatedSum;
+
+    /**
+     * @param stream The stream to draw from, not shared with other samplers
+     */
+    protected ServiceSampler(RandomStream stream) {
+        this.stream = stream;
+    }
+
+    public final double next() {
+        if (position == BLOCK_SIZE)
+            fillBlock();
+        return block[position++];
+    }
+
+    /**
+     * @return Mean of the distribution sampled
+     */
+    public abstract double getMean();
+
+    /**
+     * @return How many variates were returned by next
+     */
+    public long getCount() {
+        return generated - (BLOCK_SIZE - position);
+    }
+
+    /**
+     * @return Sum of the variates returned by next
+     */
+    public double getSum() {
+        double sum = generatedSum;
+        for (int i = position; i < BLOCK_SIZE; i++) {
+            sum -= block[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Save the stream position and the variates left in the block, see readState
+     */
+    public void writeState(DataOutput out) throws IOException {
+        stream.writeState(out);
+        out.writeLong(generated);
+        out.writeDouble(generatedSum);
+        out.writeShort(position);
+        for (int i = position; i < BLOCK_SIZE; i++) {
+            out.writeDouble(block[i]);
+        }
+    }
+
+    /**
+     * Continue from a state saved by writeState
+     */
+    public void readState(DataInput in) throws IOException {
+        stream.readState(in);
+        generated = in.readLong();
+        generatedSum = in.readDouble();
+        int start = in.readShort();
+        if (start < 0 || start > BLOCK_SIZE)
+            throw new IOException("Invalid sampler state");
+        for (int i = start; i < BLOCK_SIZE; i++) {
+            block[i] = in.readDouble();
+        }
+        position = start;
+    }
+
+    /**
+     * Fill a block with new variates
+     * @param block The block, BLOCK_SIZE long
+     */
+    protected abstract void generate(double[] block);
+
+    private void fillBlock() {
+        generate(block);
+        double sum = 0;
+        for (double value : block) {
+            sum += value;
+        }
+        generated += BLOCK_SIZE;
+        generatedSum += sum;
+        position = 0;
+    }
+}
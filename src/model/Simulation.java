@@ -1,452 +1,1338 @@
 package model;
 
-import java.util.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 public class Simulation {
-    private static SimulationRandom simRandom; //random variable generator
-    private static double clock; //current simulation time
-    private static int totalProducts; //how many products to simulate
-    private static PriorityQueue<Event> futureEvents; //List of queued events, sorted by time
-    private static double lastEventTime;
-    private static Insp1Routing insp1Routing;
-
-    //Total inputs
-    private static int numberC1;
-    private static int numberC2;
-    private static int numberC3;
-
-    //Total outputs
-    private static int numberProducts;
-    private static int numberP1;
-    private static int numberP2;
-    private static int numberP3;
+    //Cached enum values, values() allocates a new array on every call
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final LineModel model; //line topology, compiled to indices
+    private final SimulationRandom simRandom; //random variable generator
+    private final long seed;
+    private final boolean useHistorical;
+    private final boolean printState;
+    private final boolean useInitialization;
+    private final String design; //name of the run's design in the metrics registry
+    private double clock; //current simulation time
+    private int totalProducts; //product count to stop at
+    private boolean started;
+    private final FutureEventList futureEvents; //List of queued events, sorted by time
+    private double lastEventTime;
+    private long numberEvents; //events processed so far
+    private final Insp1Routing insp1Routing;
+    private final int inspectorCount;
+    private final int stationCount; //inspectors, then workstations
+
+    //Total inputs, per component
+    private final int[] numberComponents;
+
+    //Total outputs, per workstation
+    private int numberProducts;
+    private final int[] numberProduced;
 
     //Workstation buffers
-    private static int ws1BufferC1;
-    private static int ws2BufferC1;
-    private static int ws2BufferC2;
-    private static int ws3BufferC1;
-    private static int ws3BufferC3;
-
-    //Idle inspector hold item
-    private static Event inspector1Hold;
-    private static Event inspector2Hold;
-
-    //Idle time tracking
-    private static double insp1Active;
-    private static double insp2Active;
-    private static double ws1Active;
-    private static double ws2Active;
-    private static double ws3Active;
-    
+    private final int[] bufferLevels;
+    private final int[] bufferCapacities;
+
+    //Component each inspector is inspecting, and the one it holds waiting for buffer space (-1 if none)
+    private final int[] inspectorComponent;
+    private final int[] inspectorHold;
+    private int holdCount;
+
+    //Busy state per station, true while the station has a pending event
+    private final boolean[] busy;
+
+    //Active time tracking, only stations whose state changed update their flag after an event
+    //A station busy after an event is counted active since the previous one, as in the original model.
+    //Inspector times feed the output, so they are summed event by event like the original model. Workstation
+    //times are only traced and are kept as active periods, so an event costs the same however many workstations.
+    private final boolean[] activeAfterEvent; //busy state after the last processed event
+    private final double[] activeTime; //inspectors up to the last processed event, workstations the completed periods
+    private final double[] activeSince; //start of the current active period of each workstation
+    private final double[] tracedActiveTime; //every station up to the current event, for the trace
+    private final boolean[] changed;
+    private final int[] changedStations;
+    private int changedCount;
+
     //Initialization tracking
-    private static int initializationLength = 100;
-    private static double initializationClock;
-    private static double initializationInsp1;
-    private static double initializationInsp2;
-    private static int initializationP1;
-    private static int initializationP2;
-    private static int initializationP3;
+    private final int initializationLength = 100;
+    private double initializationClock;
+    private boolean initializationTaken; //output is measured from the snapshot below
+    private int initializationProducts;
+    private final int[] initializationProduced;
+    private final double[] initializationActive;
+
+    //Warm-up detection, null when disabled
+    private final WarmupSeries warmupSeries;
+    private final double[] inspectorActive; //scratch for snapshots
+
+    //Time-weighted station and buffer states
+    private final StationMetrics stationMetrics;
+
+    //State tracing, null unless enabled
+    private final TraceLayout traceLayout;
+    private final String traceFile;
+    private TraceWriter traceWriter;
+    private ByteBuffer stateRecord; //console printing
+
+    //Rate derivatives along the sample path, null unless enabled
+    private final GradientEstimator gradients;
+
+    //Hold, wait and lead times of each component, null unless enabled
+    private final LeadTimeTracker leadTimes;
+
+    //Live progress, null outside runSimulation
+    private SimulationTelemetry.Progress progress;
+
+    //Periodic checkpoints, null unless enabled
+    private final String checkpointFile;
+    private final int checkpointInterval;
+
+    //Names for the output
+    private final String[] productNames;
+    private final String[] inspectorNames;
+
+    public Simulation(SimulationScenario scenario) {
+        model = scenario.getModel();
+        totalProducts = scenario.getTotalProducts();
+        useHistorical = scenario.isUseHistorical();
+        if (useHistorical)
+            simRandom = new SimulationHistoricalData(model, scenario.getSeed(), scenario.getReplication());
+        else
+            simRandom = new SimulationRandom(model, scenario.getSeed(), scenario.getReplication(), scenario.getSamplingMethod(),
+                    scenario.getInputModel());
+        seed = scenario.getSeed();
+        insp1Routing = scenario.createRouting();
+        design = scenario.getDesign() != null ? scenario.getDesign() : insp1Routing.getClass().getSimpleName();
+        printState = scenario.isPrintState();
+        useInitialization = scenario.isUseInitialization();
+        futureEvents = scenario.createEventList();
 
+        inspectorCount = model.getInspectorCount();
+        int workstationCount = model.getWorkstationCount();
+        stationCount = inspectorCount + workstationCount;
+        numberComponents = new int[model.getComponentCount()];
+        numberProduced = new int[workstationCount];
+        bufferLevels = new int[model.getBufferCount()];
+        bufferCapacities = model.getBufferCapacities();
+        inspectorComponent = new int[inspectorCount];
+        inspectorHold = new int[inspectorCount];
+        busy = new boolean[stationCount];
+        activeAfterEvent = new boolean[stationCount];
+        activeTime = new double[stationCount];
+        activeSince = new double[stationCount];
+        tracedActiveTime = new double[stationCount];
+        changed = new boolean[stationCount];
+        changedStations = new int[stationCount];
+        initializationProduced = new int[workstationCount];
+        initializationActive = new double[inspectorCount];
+        inspectorActive = new double[inspectorCount];
+        stationMetrics = new StationMetrics(model);
+        traceFile = scenario.getTraceFile();
+        traceLayout = printState || traceFile != null ? TraceLayout.of(model) : null;
+        checkpointFile = scenario.getCheckpointFile();
+        checkpointInterval = scenario.getCheckpointInterval();
+        warmupSeries = scenario.isDetectWarmup() ? new WarmupSeries(1000, 5, workstationCount, inspectorCount) : null;
+        if (scenario.isEstimateGradients()) {
+            if (useHistorical || scenario.getInputModel() != InputModel.Exponential)
+                throw new IllegalArgumentException("Gradients need exponential service times");
+            if (warmupSeries != null || checkpointFile != null)
+                throw new IllegalArgumentException("Gradients can't be combined with warm-up detection or checkpoints");
+            gradients = new GradientEstimator(model);
+        }
+        else
+            gradients = null;
+        if (scenario.isTrackLeadTimes() && checkpointFile != null)
+            throw new IllegalArgumentException("Lead times can't be combined with checkpoints");
+        leadTimes = scenario.isTrackLeadTimes() ? new LeadTimeTracker(model) : null;
+
+        productNames = new String[workstationCount];
+        for (int w = 0; w < workstationCount; w++) {
+            productNames[w] = model.getProductName(w);
+        }
+        inspectorNames = new String[inspectorCount];
+        for (int i = 0; i < inspectorCount; i++) {
+            inspectorNames[i] = model.getInspectorName(i);
+        }
+    }
+
+    /**
+     * @param args Options choosing what to run, see usage, then an optional properties file describing the production line,
+     *             see LineConfiguration
+     */
     public static void main(String[] args) {
         //Simulation constants
         long[] seeds = {0, 1, 4, 516, 1234, 4005, 4806, 6374, 314159, 100980888};
         int totalProducts = 1000000;
         boolean printState = false; //Disable on large sims, affects performance
+        boolean traceEvents = false; //Write the state after each event to a compressed binary file per run, print with TraceDecoder
         boolean useInitialization = false;
+        boolean detectWarmup = false; //Choose the initialization period with MSER-5, overrides useInitialization
+        InputModel inputModel = InputModel.Exponential; //Or draw service times from distributions fitted to the historical data
+        boolean useBatchEngine = false; //Run the replications of each routing in lock step, see BatchSimulation
+        boolean useCompiledEngine = false; //Run an event loop generated for the line and each routing, needs a JDK, see ModelCompiler
+        String resultsFile = null; //Also append every run to this columnar file, summarize with ResultStoreReader
+        int progressSeconds = 0; //Print the progress of the runs this often, 0 for none; always published over JMX
+        boolean trackLeadTimes = false; //Follow every component through the line, print the pooled time distributions of each routing
+        boolean printMetrics = false; //Print the station metrics registry of each design, always published over JMX
+        String mode = null; //One of the studies below instead of the standard replications
+
+        //Sequential stopping, replications of the first seed until the intervals are narrow enough
+        double relativeHalfWidth = 0.005;
+        double confidence = 0.95;
+
+        //Design sweep, KN selection of the routing and buffer capacities with the highest total throughput
+        double indifferenceZone = 0.001; //products per minute
+
+        //Variance reduction, antithetic pairs and control variates of the first seed's replications
+        int reductionReplications = 20;
+
+        //Routing search, evolve decision tables from the two policies for the highest total throughput
+        int searchGenerations = 30;
+        int searchOffspring = 8;
+        int searchReplications = 10;
+        int searchProducts = 100000;
+
+        //Forked replications, warm up the first seed once and run every replication from its end state
+        int warmupProducts = 10000;
+        int forks = 10;
+
+        String lineFile = null;
+        try {
+            for (int a = 0; a < args.length; a++) {
+                switch (args[a]) {
+                    case "--products":
+                        totalProducts = Integer.parseInt(args[++a]);
+                        break;
+                    case "--print-state":
+                        printState = true;
+                        break;
+                    case "--trace":
+                        traceEvents = true;
+                        break;
+                    case "--initialization":
+                        useInitialization = true;
+                        break;
+                    case "--detect-warmup":
+                        detectWarmup = true;
+                        break;
+                    case "--input-model":
+                        inputModel = InputModel.valueOf(args[++a]);
+                        break;
+                    case "--batch":
+                        useBatchEngine = true;
+                        break;
+                    case "--compiled":
+                        useCompiledEngine = true;
+                        break;
+                    case "--results":
+                        resultsFile = args[++a];
+                        break;
+                    case "--progress":
+                        progressSeconds = Integer.parseInt(args[++a]);
+                        break;
+                    case "--lead-times":
+                        trackLeadTimes = true;
+                        break;
+                    case "--metrics":
+                        printMetrics = true;
+                        break;
+                    case "--sequential":
+                    case "--sweep":
+                    case "--variance-reduction":
+                    case "--search-routing":
+                    case "--sensitivities":
+                    case "--steady-state":
+                    case "--fork":
+                        if (mode != null)
+                            throw new IllegalArgumentException("Choose one of " + mode + " and " + args[a]);
+                        mode = args[a];
+                        break;
+                    default:
+                        if (args[a].startsWith("--") || lineFile != null)
+                            throw new IllegalArgumentException("Unknown argument " + args[a]);
+                        lineFile = args[a];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            printUsage("Missing value of " + args[args.length - 1]);
+            return;
+        } catch (IllegalArgumentException e) {
+            printUsage(e.getMessage());
+            return;
+        }
+
+        LineModel model = LineModel.builtIn();
+        if (lineFile != null) {
+            try {
+                model = LineConfiguration.load(lineFile).compile();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Line configuration error: " + e.getMessage());
+                return;
+            }
+        }
+
+        SimulationTelemetry.register();
+        MetricsRegistry.register();
+        if (progressSeconds > 0)
+            new TelemetrySampler(SimulationTelemetry.getDefault(), System.out).start(progressSeconds); //Daemon, ends with the JVM
+
+        if ("--sweep".equals(mode)) {
+            runDesignSweep(model, seeds[0], totalProducts, indifferenceZone, confidence, useInitialization, resultsFile);
+            return;
+        }
+
+        if ("--variance-reduction".equals(mode)) {
+            runVarianceReduction(model, seeds[0], totalProducts, reductionReplications, confidence, useInitialization);
+            return;
+        }
+
+        if ("--search-routing".equals(mode)) {
+            runRoutingSearch(model, seeds[0], searchProducts, searchReplications, searchGenerations, searchOffspring, confidence,
+                    useInitialization);
+            return;
+        }
+
+        if ("--sensitivities".equals(mode)) {
+            runSensitivityAnalysis(model, seeds[0], totalProducts, useInitialization);
+            return;
+        }
+
+        if ("--steady-state".equals(mode)) {
+            for (Supplier<Insp1Routing> routing : Arrays.<Supplier<Insp1Routing>>asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new)) {
+                System.out.println();
+                new SteadyStateSolver(model, routing).solve(1e-12, 100000).printOutput();
+            }
+            return;
+        }
 
-        //Standard Simulation
-        SimulationOutput[] outputs = new SimulationOutput[seeds.length + 1];
-        for (int i = 0; i < seeds.length; i++) {
-            outputs[i] = runSimulation(seeds[i], totalProducts, new Insp1RoutingP1First(), false, printState, useInitialization);
+        if ("--fork".equals(mode)) {
+            runForks(model, seeds[0], warmupProducts, forks, totalProducts);
+            return;
         }
-        outputs[seeds.length] = runSimulation(0, totalProducts, new Insp1RoutingP1First(), true, printState, useInitialization);
 
-        //Alternative Design
-        SimulationOutput[] altOutputs = new SimulationOutput[seeds.length + 1];
-        for (int i = 0; i < seeds.length; i++) {
-            altOutputs[i] = runSimulation(seeds[i], totalProducts, new Insp1RoutingRotatingPriority(), false, printState, useInitialization);
+        if ("--sequential".equals(mode)) {
+            runSequential(model, seeds[0], totalProducts, relativeHalfWidth, confidence, useInitialization);
+            return;
         }
-        altOutputs[seeds.length] = runSimulation(0, totalProducts, new Insp1RoutingRotatingPriority(), true, printState, useInitialization);
+
+        //Standard Simulation, then Alternative Design
+        List<SimulationScenario> scenarios = new ArrayList<>();
+        addScenarios(scenarios, model, seeds, totalProducts, Insp1RoutingP1First::new, inputModel, printState, traceEvents, useInitialization, detectWarmup);
+        addScenarios(scenarios, model, seeds, totalProducts, Insp1RoutingRotatingPriority::new, inputModel, printState, traceEvents, useInitialization, detectWarmup);
+        for (SimulationScenario scenario : scenarios) {
+            scenario.setTrackLeadTimes(trackLeadTimes);
+        }
+
+        //Replications are independent, run them across all cores
+        SimulationReplicationRunner runner = new SimulationReplicationRunner(printState ? 1 : Runtime.getRuntime().availableProcessors());
+        List<SimulationOutput> results;
+        try (ResultStoreWriter store = openResults(resultsFile, model)) {
+            runner.setResultStore(store);
+            if (useBatchEngine && !printState && !traceEvents && !detectWarmup && !trackLeadTimes)
+                results = runner.runBatches(scenarios, 32);
+            else if (useCompiledEngine && !printState && !traceEvents && !detectWarmup && !trackLeadTimes)
+                results = runner.runCompiled(scenarios);
+            else
+                results = runner.runAll(scenarios);
+        } catch (IOException e) {
+            System.out.println("Results file error: " + e.getMessage());
+            return;
+        } finally {
+            runner.shutdown();
+        }
+        for (SimulationOutput output : results) {
+            System.out.println();
+            output.printOutput();
+        }
+
+        int designRuns = results.size() / 2;
+        SimulationOutput[] outputs = results.subList(0, designRuns).toArray(new SimulationOutput[0]);
+        SimulationOutput[] altOutputs = results.subList(designRuns, results.size()).toArray(new SimulationOutput[0]);
 
         //Print raw output table
         //For quick copy to excel
         System.out.println();
         System.out.println("Simulation Specification:");
-        System.out.println("seed\tclock\tp1Throughput\tp2Throughput\tp3Throughput\tinsp1Idle\tinsp2Idle");
+        outputs[0].printRawHeader();
         for (int i = 0; i < outputs.length; i++) {
             outputs[i].printRawOutput();
         }
         System.out.println();
         System.out.println("Alternate Design:");
-        System.out.println("seed\tclock\tp1Throughput\tp2Throughput\tp3Throughput\tinsp1Idle\tinsp2Idle");
+        altOutputs[0].printRawHeader();
         for (int i = 0; i < altOutputs.length; i++) {
             altOutputs[i].printRawOutput();
         }
+
+        if (trackLeadTimes) {
+            for (SimulationOutput[] design : new SimulationOutput[][]{outputs, altOutputs}) {
+                LeadTimes pooled = design[0].getLeadTimes();
+                for (int i = 1; i < design.length; i++) {
+                    pooled = pooled.merge(design[i].getLeadTimes());
+                }
+                System.out.println();
+                System.out.println(design[0].getRouting().getClass().getSimpleName() + ", all runs:");
+                pooled.printOutput();
+            }
+        }
+
+        if (printMetrics) {
+            System.out.println();
+            System.out.println("Station Metrics, all runs of each design:");
+            MetricsRegistry.getDefault().printOutput();
+        }
     }
 
-    private static SimulationOutput runSimulation(long seed, int products, Insp1Routing routing, boolean useHistorical, boolean printState, boolean useInitialization) {
-        totalProducts = products;
-        if (useHistorical)
-            simRandom = new SimulationHistoricalData(seed);
-        else
-            simRandom = new SimulationRandom(seed);
-        insp1Routing = routing;
+    private static void printUsage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: Simulation [options] [line properties file]");
+        System.err.println("Runs every seed and the historical data with each routing, unless one study is chosen:");
+        System.err.println("  --sequential          replications of the first seed until the throughput intervals are narrow enough");
+        System.err.println("  --sweep               KN selection of the best routing and buffer capacities");
+        System.err.println("  --variance-reduction  antithetic pairs and control variates of the first seed");
+        System.err.println("  --search-routing      evolve routing tables for the highest total throughput");
+        System.err.println("  --sensitivities       derivatives of the outputs with respect to rates and capacities");
+        System.err.println("  --steady-state        exact steady state of the exponential line");
+        System.err.println("  --fork                replications forked from one warmed-up state");
+        System.err.println("Options:");
+        System.err.println("  --products <n>        products per run, default 1000000");
+        System.err.println("  --initialization      discard the initialization period");
+        System.err.println("  --detect-warmup       choose the initialization period with MSER-5");
+        System.err.println("  --input-model <name>  Exponential, InverseCdf, Alias or Kernel service times");
+        System.err.println("  --batch               run the replications of each routing in lock step");
+        System.err.println("  --compiled            run an event loop generated for the line, needs a JDK");
+        System.err.println("  --lead-times          print the lead time distributions of each routing");
+        System.err.println("  --metrics             print the station metrics of each design over all runs");
+        System.err.println("  --print-state         print the state after each event, for small runs");
+        System.err.println("  --trace               write the state after each event to a trace file per run");
+        System.err.println("  --results <file>      append every run to a results file");
+        System.err.println("  --progress <seconds>  print the progress of the runs this often");
+    }
+
+    /**
+     * Run each routing design until its throughput intervals meet the precision target
+     * @param model The production line to simulate
+     * @param seed The seed whose replication substreams are used
+     * @param totalProducts How many products each replication simulates
+     * @param relativeHalfWidth Target half-width as a fraction of the mean
+     * @param confidence Confidence level of the intervals
+     * @param useInitialization Discard the initialization period from the output
+     */
+    private static void runSequential(LineModel model, long seed, int totalProducts, double relativeHalfWidth, double confidence, boolean useInitialization) {
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try {
+            SequentialReplicationProcedure procedure = new SequentialReplicationProcedure(runner, relativeHalfWidth, confidence, 5, 1000,
+                    SimulationMetric.throughputs(model));
+            List<Supplier<Insp1Routing>> designs = Arrays.asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new);
+            for (Supplier<Insp1Routing> routing : designs) {
+                SequentialReplicationProcedure.Result result = procedure.run(replication -> {
+                    SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, false, useInitialization);
+                    scenario.setReplication(replication);
+                    scenario.setModel(model);
+                    return scenario;
+                });
+                System.out.println();
+                result.printOutput();
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Estimate the throughputs of each routing design with antithetic pairs and with control variates
+     * @param model The production line to simulate
+     * @param seed The seed whose replication substreams are used
+     * @param totalProducts How many products each run simulates
+     * @param replications Pairs for the antithetic estimate, runs for the control variate estimate
+     * @param confidence Confidence level of the intervals
+     * @param useInitialization Discard the initialization period from the output
+     */
+    private static void runVarianceReduction(LineModel model, long seed, int totalProducts, int replications, double confidence,
+                                             boolean useInitialization) {
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try {
+            List<Supplier<Insp1Routing>> designs = Arrays.asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new);
+            for (Supplier<Insp1Routing> routing : designs) {
+                List<SimulationScenario> scenarios = new ArrayList<>();
+                for (int replication = 0; replication < replications; replication++) {
+                    SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, false, useInitialization);
+                    scenario.setReplication(replication);
+                    scenario.setModel(model);
+                    scenarios.add(scenario);
+                }
+
+                List<SimulationOutput> pairs = runner.runAntitheticPairs(scenarios);
+                List<SimulationOutput> runs = runner.runAll(scenarios);
+                SimulationOutput first = runs.get(0);
+                System.out.println();
+                System.out.println("------------------------------");
+                System.out.println("Inspector 1 Routing: " + first.getRouting().getClass().getSimpleName());
+                System.out.printf("%.0f%% Confidence Intervals, %d replications:\n", confidence * 100, replications);
+                for (SimulationMetric metric : SimulationMetric.throughputs(model)) {
+                    AntitheticEstimator antithetic = new AntitheticEstimator(metric);
+                    for (int i = 0; i < pairs.size(); i += 2) {
+                        antithetic.add(pairs.get(i), pairs.get(i + 1));
+                    }
+                    ControlVariateEstimator control = new ControlVariateEstimator(metric);
+                    for (SimulationOutput output : runs) {
+                        control.add(output);
+                    }
+                    System.out.printf("%-13s antithetic %12.8f +/- %.8f (variance ratio %.3f, correlation %.3f)\n", metric.getName(first),
+                            antithetic.getMean(), antithetic.getHalfWidth(confidence), 1 - antithetic.getVarianceReduction(),
+                            antithetic.getCorrelation());
+                    System.out.printf("%-13s control    %12.8f +/- %.8f (variance ratio %.3f)\n", "",
+                            control.getMean(), control.getHalfWidth(confidence), 1 - control.getVarianceReduction());
+                }
+                System.out.println("------------------------------");
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Run replications of each routing design forked from one warmed-up state
+     * @param model The production line to simulate
+     * @param seed The seed of the warm-up run, whose later substreams drive the forks
+     * @param warmupProducts How many products the warm-up run simulates
+     * @param forks How many replications to fork
+     * @param totalProducts How many products each fork simulates past the warm-up
+     */
+    private static void runForks(LineModel model, long seed, int warmupProducts, int forks, int totalProducts) {
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try {
+            List<Supplier<Insp1Routing>> designs = Arrays.asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new);
+            for (Supplier<Insp1Routing> routing : designs) {
+                SimulationScenario warmup = new SimulationScenario(seed, warmupProducts, routing, false, false, false);
+                warmup.setModel(model);
+                Simulation simulation = new Simulation(warmup);
+                simulation.runUntil(warmupProducts);
+                SimulationCheckpoint checkpoint = simulation.checkpoint();
+
+                //Replication 0 is the warm-up run's own substream
+                List<SimulationScenario> scenarios = new ArrayList<>();
+                for (int replication = 1; replication <= forks; replication++) {
+                    SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, false, false);
+                    scenario.setReplication(replication);
+                    scenario.setModel(model);
+                    scenarios.add(scenario);
+                }
+                List<SimulationOutput> results = runner.forkAll(checkpoint, scenarios);
+                System.out.println();
+                System.out.println("Forked from " + warmupProducts + " products (" + checkpoint.size() + " byte checkpoint):");
+                results.get(0).printRawHeader();
+                for (SimulationOutput output : results) {
+                    output.printRawOutput();
+                }
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Select the best routing and buffer capacities of the line
+     * @param model The production line to vary
+     * @param seed The seed whose replication substreams are shared by all designs
+     * @param totalProducts How many products each replication simulates
+     * @param indifferenceZone Smallest total throughput difference worth detecting
+     * @param confidence Probability of correct selection
+     * @param useInitialization Discard the initialization period from the output
+     * @param resultsFile File to append every replication to, null for none
+     */
+    private static void runDesignSweep(LineModel model, long seed, int totalProducts, double indifferenceZone, double confidence,
+                                       boolean useInitialization, String resultsFile) {
+        DesignSweep sweep = new DesignSweep(model.getConfiguration());
+        sweep.addRouting("P1First", Insp1RoutingP1First::new);
+        sweep.addRouting("Rotating", Insp1RoutingRotatingPriority::new);
+        for (int w = 0; w < model.getWorkstationCount(); w++) {
+            sweep.setCapacities(w, 1, 2, 3);
+        }
+
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try (ResultStoreWriter store = openResults(resultsFile, model)) {
+            runner.setResultStore(store);
+            KnSelectionProcedure procedure = new KnSelectionProcedure(runner, SimulationMetric.totalThroughput(),
+                    indifferenceZone, confidence, 10, 1000);
+            KnSelectionProcedure.Result result = procedure.run(sweep.createDesigns(), seed, totalProducts, useInitialization);
+            System.out.println();
+            result.printOutput();
+        } catch (IOException e) {
+            System.out.println("Results file error: " + e.getMessage());
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Search for a routing table with a higher total throughput than the hand-written policies
+     * @param model The production line
+     * @param seed The seed whose replication substreams are shared by all tables
+     * @param totalProducts How many products each replication simulates
+     * @param replications Replications of each table
+     * @param generations Generations of the search
+     * @param offspring Tables tried per generation
+     * @param confidence Confidence level of the validation intervals
+     * @param useInitialization Discard the initialization period from the output
+     */
+    private static void runRoutingSearch(LineModel model, long seed, int totalProducts, int replications, int generations, int offspring,
+                                         double confidence, boolean useInitialization) {
+        List<String> names = Arrays.asList("P1First", "RotatingPriority");
+        List<RoutingTable> starts = Arrays.asList(RoutingTable.compile(model, Insp1RoutingP1First::new),
+                RoutingTable.compile(model, Insp1RoutingRotatingPriority::new));
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try {
+            RoutingSearch search = new RoutingSearch(runner, seed, replications, totalProducts, useInitialization);
+            System.out.println();
+            search.search(names, starts, generations, offspring, confidence).printOutput();
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Run each routing design once with the sensitivities of its outputs
+     * @param model The production line
+     * @param seed The seed of the runs
+     * @param totalProducts How many products each run simulates
+     * @param useInitialization Discard the initialization period from the output
+     */
+    private static void runSensitivityAnalysis(LineModel model, long seed, int totalProducts, boolean useInitialization) {
+        SimulationReplicationRunner runner = new SimulationReplicationRunner();
+        try {
+            List<Supplier<Insp1Routing>> designs = Arrays.asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new);
+            for (Supplier<Insp1Routing> routing : designs) {
+                SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, false, useInitialization);
+                scenario.setModel(model);
+                System.out.println();
+                SensitivityAnalysis.run(runner, scenario).printOutput();
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * @param file The results file, null for none
+     * @return A writer appending to the file, null if there is none
+     */
+    private static ResultStoreWriter openResults(String file, LineModel model) throws IOException {
+        return file == null ? null : new ResultStoreWriter(file, model);
+    }
+
+    /**
+     * Add a run for every seed plus the historical data run, if the line has traces, of one routing design
+     * @param scenarios The list to add the runs to
+     * @param model The production line to simulate
+     * @param seeds The random seeds to run
+     * @param totalProducts How many products each run simulates
+     * @param routing Creates the inspector 1 routing for each run
+     * @param inputModel Distribution of the service times of the seeded runs
+     * @param printState Print the state after each event
+     * @param traceEvents Write the state after each event to trace-routing-seed.gz
+     * @param useInitialization Discard the initialization period from the output
+     * @param detectWarmup Choose the initialization period from the run itself
+     */
+    private static void addScenarios(List<SimulationScenario> scenarios, LineModel model, long[] seeds, int totalProducts, Supplier<Insp1Routing> routing,
+                                     InputModel inputModel, boolean printState, boolean traceEvents, boolean useInitialization, boolean detectWarmup) {
+        for (long seed : seeds) {
+            SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, printState, useInitialization);
+            scenario.setInputModel(inputModel);
+            scenarios.add(scenario);
+        }
+        if (model.hasTraces())
+            scenarios.add(new SimulationScenario(0, totalProducts, routing, true, printState, useInitialization));
+        for (SimulationScenario scenario : scenarios) {
+            scenario.setModel(model);
+            scenario.setDetectWarmup(detectWarmup);
+            if (traceEvents)
+                scenario.setTraceFile("trace-" + scenario.createRouting().getClass().getSimpleName() + "-"
+                        + (scenario.isUseHistorical() ? "historical" : String.valueOf(scenario.getSeed())) + ".gz");
+        }
+    }
+
+    /**
+     * Run the simulation to completion
+     * A simulation object can only be run once, or once after a checkpoint is restored
+     * @return The output statistics of the run
+     */
+    public SimulationOutput runSimulation() {
+        openTrace();
+        progress = SimulationTelemetry.getDefault().startRun(model, 1, numberEvents, clock, numberProduced);
+        try {
+            advance(totalProducts);
+            return createOutput();
+        } finally {
+            progress.finish(numberEvents, clock, numberProduced);
+            progress = null;
+            closeTrace();
+        }
+    }
+
+    /**
+     * Run until a number of products is produced, without ending the run
+     * Used to reach a state to checkpoint. States are only traced and printed by runSimulation.
+     * @param products The product count to stop at
+     */
+    public void runUntil(int products) {
+        advance(Math.min(products, totalProducts));
+    }
+
+    /**
+     * Capture the state of the run between two events
+     * The run continues unchanged, random number state included
+     * @return A snapshot to restore or fork from
+     */
+    public SimulationCheckpoint checkpoint() {
+        if (gradients != null)
+            throw new IllegalStateException("Gradient estimates can't be checkpointed");
+        if (leadTimes != null)
+            throw new IllegalStateException("Lead times can't be checkpointed");
+        if (!started)
+            advance(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SimulationCheckpoint.MAGIC);
+            out.writeInt(SimulationCheckpoint.VERSION);
+            writeLine(out);
+            out.writeUTF(insp1Routing.getClass().getName());
+            out.writeBoolean(useHistorical);
+            out.writeBoolean(warmupSeries != null);
+
+            out.writeDouble(clock);
+            out.writeDouble(lastEventTime);
+            out.writeLong(numberEvents);
+            out.writeInt(numberProducts);
+            writeInts(out, numberComponents);
+            writeInts(out, numberProduced);
+            writeInts(out, bufferLevels);
+            writeInts(out, inspectorComponent);
+            writeInts(out, inspectorHold);
+            for (int s = 0; s < stationCount; s++) {
+                out.writeBoolean(busy[s]);
+                out.writeBoolean(activeAfterEvent[s]);
+                out.writeDouble(activeTime[s]);
+                out.writeDouble(activeSince[s]);
+                out.writeBoolean(changed[s]);
+            }
+            out.writeBoolean(initializationTaken);
+            out.writeInt(initializationProducts);
+            out.writeDouble(initializationClock);
+            writeInts(out, initializationProduced);
+            for (double active : initializationActive) {
+                out.writeDouble(active);
+            }
+            out.writeLong(insp1Routing.getState());
+
+            //In poll order, so the restored list breaks ties the same way
+            int pending = futureEvents.size();
+            double[] times = new double[pending];
+            int[] kinds = new int[pending];
+            int[] entities = new int[pending];
+            futureEvents.copyPending(times, kinds, entities);
+            out.writeInt(pending);
+            for (int e = 0; e < pending; e++) {
+                out.writeDouble(times[e]);
+                out.writeByte(kinds[e]);
+                out.writeInt(entities[e]);
+            }
+
+            stationMetrics.writeState(out);
+            if (warmupSeries != null)
+                warmupSeries.writeState(out);
+            //Last, so forks can stop before it
+            simRandom.writeState(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //In memory, not expected
+        }
+        return new SimulationCheckpoint(bytes.toByteArray());
+    }
 
-        initialization();
+    /**
+     * Resume a checkpointed run exactly as if it was never interrupted
+     * @param scenario The scenario of the checkpointed run
+     * @param checkpoint The state to continue from
+     * @return A simulation that continues the run to the scenario's total products
+     */
+    public static Simulation restore(SimulationScenario scenario, SimulationCheckpoint checkpoint) {
+        Simulation simulation = new Simulation(scenario);
+        try (DataInputStream in = checkpoint.open()) {
+            simulation.readState(in);
+            simulation.simRandom.readState(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid checkpoint: " + e.getMessage(), e);
+        }
+        return simulation;
+    }
 
-        if (printState) {
-            printSimulationStateHeader();
-            printSimulationState(null);
+    /**
+     * Start an independent replication from a checkpointed state, such as the end of a warm-up
+     * The random numbers come from the scenario's seed and replication substream instead of the checkpoint.
+     * Output is measured from the checkpoint.
+     * @param scenario The fork, which must use the line and routing of the checkpointed run
+     * @param checkpoint The state to start from
+     * @return A simulation that produces the scenario's total products past the checkpoint
+     */
+    public static Simulation fork(SimulationScenario scenario, SimulationCheckpoint checkpoint) {
+        if (scenario.isDetectWarmup())
+            throw new IllegalArgumentException("Forks start warmed up, warm-up detection does not apply");
+        Simulation simulation = new Simulation(scenario);
+        try (DataInputStream in = checkpoint.open()) {
+            simulation.readState(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid checkpoint: " + e.getMessage(), e);
         }
+        simulation.totalProducts = simulation.numberProducts + scenario.getTotalProducts();
+        simulation.markInitialization();
+        return simulation;
+    }
+
+    /**
+     * Resume a run from its checkpoint file if one was saved, see SimulationScenario.setCheckpointFile
+     * @param scenario The run to resume or start
+     * @return A simulation to run with runSimulation
+     */
+    public static Simulation resume(SimulationScenario scenario) throws IOException {
+        String file = scenario.getCheckpointFile();
+        if (file != null && new File(file).exists())
+            return restore(scenario, SimulationCheckpoint.load(file));
+        return new Simulation(scenario);
+    }
 
-        while (numberProducts < totalProducts) {
-            Event event = futureEvents.poll();
+    /**
+     * Start the run if needed, then process events until a number of products is produced
+     * @param products The product count to stop at
+     */
+    private void advance(int products) {
+        if (!started) {
+            initialization();
+            started = true;
+            if (traceLayout != null)
+                recordState(null, -1, -1);
+        }
+        int nextCheckpoint = checkpointFile == null ? Integer.MAX_VALUE : (numberProducts / checkpointInterval + 1) * checkpointInterval;
 
-            if (event == null)
+        while (numberProducts < products) {
+            if (!futureEvents.poll())
                 break; //No more queued events, terminate
 
-            clock = event.getEventTime();
+            clock = futureEvents.getPolledTime();
+            numberEvents++;
+            EventType eventType = EVENT_TYPES[futureEvents.getPolledKind()];
+            int entity = futureEvents.getPolledEntity();
+            int component = -1;
+            if (gradients != null)
+                gradients.startEvent(eventType == EventType.Arrival ? entity : inspectorCount + entity);
+
+            if (eventType == EventType.Arrival) {
+                component = inspectorComponent[entity];
+                setBusy(entity, false);
+                processArrivalEvent(entity);
+            } else {
+                setBusy(inspectorCount + entity, false);
+                processDepartureEvent(entity);
+            }
+            updateActiveTimes();
 
-            if (event.getEventType() == EventType.Arrival)
-                processArrivalEvent(event);
-            else if (event.getEventType() == EventType.Departure)
-                processDepartureEvent(event);
-            updateIdleTimes();
+            if (traceLayout != null)
+                recordState(eventType, component, entity);
 
-            if (printState)
-                printSimulationState(event);
+            if (useInitialization && numberProducts == initializationLength && eventType == EventType.Departure)
+                markInitialization();
 
-            if (useInitialization && numberProducts == initializationLength && event.getEventType() == EventType.Departure) {
-                initializationClock = clock;
-                initializationInsp1 = insp1Active;
-                initializationInsp2 = insp2Active;
-                initializationP1 = numberP1;
-                initializationP2 = numberP2;
-                initializationP3 = numberP3;
+            if (warmupSeries != null && eventType == EventType.Departure && numberProducts == warmupSeries.getNextObservation()) {
+                for (int i = 0; i < inspectorCount; i++) {
+                    inspectorActive[i] = getActiveTime(i);
+                }
+                warmupSeries.record(clock, numberProduced, inspectorActive);
             }
 
-            lastEventTime = event.getEventTime();
+            lastEventTime = clock;
+            if (gradients != null)
+                gradients.endEvent();
+            if (progress != null && (numberEvents & (SimulationTelemetry.PUBLISH_INTERVAL - 1)) == 0)
+                progress.publish(numberEvents, clock, numberProduced, futureEvents.size());
+
+            if (numberProducts == nextCheckpoint && eventType == EventType.Departure) {
+                saveCheckpoint();
+                nextCheckpoint += checkpointInterval;
+            }
+        }
+    }
+
+    /**
+     * Measure the output from the current event on
+     */
+    private void markInitialization() {
+        initializationTaken = true;
+        initializationProducts = numberProducts;
+        initializationClock = clock;
+        System.arraycopy(numberProduced, 0, initializationProduced, 0, numberProduced.length);
+        for (int i = 0; i < inspectorCount; i++) {
+            initializationActive[i] = getActiveTime(i);
+        }
+        stationMetrics.reset(clock);
+        if (gradients != null)
+            gradients.markInitialization(activeAfterEvent);
+        if (leadTimes != null)
+            leadTimes.reset();
+    }
+
+    private void saveCheckpoint() {
+        try {
+            checkpoint().save(checkpointFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't save checkpoint " + checkpointFile, e);
         }
+    }
 
-        //Log output and print to console
+    private SimulationOutput createOutput() {
+        int[] produced = numberProduced.clone();
+        double[] active = new double[inspectorCount];
+        for (int i = 0; i < inspectorCount; i++) {
+            active[i] = getActiveTime(i);
+        }
         SimulationOutput output;
-        if (useInitialization && numberProducts > initializationLength)
+        if (warmupSeries != null) {
+            int cutoff = warmupSeries.detectCutoff();
+            for (int w = 0; w < produced.length; w++) {
+                produced[w] -= warmupSeries.getProducts(cutoff, w);
+            }
+            for (int i = 0; i < inspectorCount; i++) {
+                active[i] -= warmupSeries.getInspectorActive(cutoff, i);
+            }
+            output = new SimulationOutput(useHistorical, seed, insp1Routing, clock - warmupSeries.getClock(cutoff),
+                    productNames, produced, inspectorNames, active);
+            output.setWarmupCutoff(warmupSeries.getProducts(cutoff), warmupSeries.getClock(cutoff));
+        }
+        else if (initializationTaken && numberProducts > initializationProducts) {
+            for (int w = 0; w < produced.length; w++) {
+                produced[w] -= initializationProduced[w];
+            }
+            for (int i = 0; i < inspectorCount; i++) {
+                active[i] -= initializationActive[i];
+            }
             output = new SimulationOutput(useHistorical, seed, insp1Routing, clock - initializationClock,
-                    numberP1 - initializationP1, numberP2 - initializationP2, numberP3 - initializationP3,
-                    insp1Active - initializationInsp1, insp2Active - initializationInsp2);
+                    productNames, produced, inspectorNames, active);
+        }
         else
-            output = new SimulationOutput(useHistorical, seed, insp1Routing, clock, numberP1, numberP2, numberP3, insp1Active, insp2Active);
-        System.out.println();
-        output.printOutput();
+            output = new SimulationOutput(useHistorical, seed, insp1Routing, clock, productNames, produced, inspectorNames, active);
+
+        if (gradients != null)
+            output.setSensitivities(gradients.createEstimates(model, output, produced, active, activeAfterEvent,
+                    initializationTaken && numberProducts > initializationProducts));
+        if (leadTimes != null)
+            output.setLeadTimes(leadTimes.createLeadTimes());
+
+        if (!useHistorical) {
+            double[] serviceMeans = new double[model.getServiceSourceCount()];
+            double[] expectedServiceMeans = new double[serviceMeans.length];
+            for (int source = 0; source < serviceMeans.length; source++) {
+                serviceMeans[source] = simRandom.getServiceMean(source);
+                expectedServiceMeans[source] = simRandom.getExpectedServiceMean(source);
+            }
+            output.setServiceMeans(serviceMeans, expectedServiceMeans);
+        }
+
+        stationMetrics.finish(clock);
+        output.setStationMetrics(stationMetrics);
+        StationMetricsPublisher.publish(design, output);
         return output;
     }
 
+    /**
+     * Load the engine state written by checkpoint, up to the random number state
+     */
+    private void readState(DataInputStream in) throws IOException {
+        if (leadTimes != null)
+            throw new IOException("Lead times can't be tracked from a checkpoint");
+        if (!readLine(in))
+            throw new IOException("Checkpoint is for a different line");
+        if (!in.readUTF().equals(insp1Routing.getClass().getName()))
+            throw new IOException("Checkpoint is for a different routing");
+        if (in.readBoolean() != useHistorical)
+            throw new IOException("Checkpoint is for a different random number source");
+        if (in.readBoolean() != (warmupSeries != null))
+            throw new IOException("Checkpoint warm-up detection doesn't match");
+
+        clock = in.readDouble();
+        lastEventTime = in.readDouble();
+        numberEvents = in.readLong();
+        numberProducts = in.readInt();
+        readInts(in, numberComponents);
+        readInts(in, numberProduced);
+        readInts(in, bufferLevels);
+        readInts(in, inspectorComponent);
+        readInts(in, inspectorHold);
+        holdCount = 0;
+        for (int hold : inspectorHold) {
+            if (hold != -1)
+                holdCount++;
+        }
+        changedCount = 0;
+        for (int s = 0; s < stationCount; s++) {
+            busy[s] = in.readBoolean();
+            activeAfterEvent[s] = in.readBoolean();
+            activeTime[s] = in.readDouble();
+            activeSince[s] = in.readDouble();
+            changed[s] = in.readBoolean();
+            if (changed[s])
+                changedStations[changedCount++] = s;
+        }
+        initializationTaken = in.readBoolean();
+        initializationProducts = in.readInt();
+        initializationClock = in.readDouble();
+        readInts(in, initializationProduced);
+        for (int i = 0; i < inspectorCount; i++) {
+            initializationActive[i] = in.readDouble();
+        }
+        insp1Routing.setState(in.readLong());
+
+        futureEvents.clear();
+        int pending = in.readInt();
+        if (pending < 0 || pending > stationCount)
+            throw new IOException("Invalid event count");
+        for (int e = 0; e < pending; e++) {
+            double time = in.readDouble();
+            int kind = in.readByte();
+            int entity = in.readInt();
+            if (kind < 0 || kind >= EVENT_TYPES.length)
+                throw new IOException("Invalid event type");
+            futureEvents.add(time, kind, entity);
+        }
+
+        stationMetrics.readState(in);
+        if (warmupSeries != null)
+            warmupSeries.readState(in);
+        started = true;
+    }
+
+    /**
+     * Write the counts and capacities of the line, to reject checkpoints of other lines
+     */
+    private void writeLine(DataOutputStream out) throws IOException {
+        out.writeInt(inspectorCount);
+        out.writeInt(numberProduced.length);
+        out.writeInt(numberComponents.length);
+        writeInts(out, bufferCapacities);
+    }
+
+    private boolean readLine(DataInputStream in) throws IOException {
+        if (in.readInt() != inspectorCount || in.readInt() != numberProduced.length || in.readInt() != numberComponents.length)
+            return false;
+        int[] capacities = new int[bufferCapacities.length];
+        readInts(in, capacities);
+        return Arrays.equals(capacities, bufferCapacities);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void readInts(DataInputStream in, int[] values) throws IOException {
+        if (in.readInt() != values.length)
+            throw new IOException("Checkpoint is for a different line");
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+    }
+
+    private void openTrace() {
+        if (printState && stateRecord == null) {
+            System.out.print(traceLayout.formatHeader());
+            stateRecord = ByteBuffer.allocate(traceLayout.getRecordSize()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (traceFile != null) {
+            try {
+                traceWriter = new TraceWriter(traceFile, traceLayout);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't create trace " + traceFile, e);
+            }
+        }
+    }
+
+    private void closeTrace() {
+        if (traceWriter != null)
+            traceWriter.close();
+        traceWriter = null;
+    }
+
+    public long getNumberEvents() {
+        return numberEvents;
+    }
+
     /**
      * Initialize the simulation
      */
-    private static void initialization() {
-        futureEvents = new PriorityQueue<>();
+    private void initialization() {
+        futureEvents.clear();
         clock = 0.0;
         lastEventTime = 0.0;
+        numberEvents = 0;
 
-        inspector1Hold = null;
-        inspector2Hold = null;
-
-        ws1BufferC1 = 0;
-        ws2BufferC1 = 0;
-        ws2BufferC2 = 0;
-        ws3BufferC1 = 0;
-        ws3BufferC3 = 0;
-        numberC1 = 0;
-        numberC2 = 0;
-        numberC3 = 0;
+        Arrays.fill(inspectorComponent, -1);
+        Arrays.fill(inspectorHold, -1);
+        holdCount = 0;
+
+        Arrays.fill(busy, false);
+        Arrays.fill(bufferLevels, 0);
+        Arrays.fill(numberComponents, 0);
         numberProducts = 0;
-        numberP1 = 0;
-        numberP2 = 0;
-        numberP3 = 0;
-        insp1Active = 0;
-        insp2Active = 0;
-        ws1Active = 0;
-        ws2Active = 0;
-        ws3Active = 0;
+        Arrays.fill(numberProduced, 0);
+
+        Arrays.fill(activeAfterEvent, false);
+        Arrays.fill(activeTime, 0);
+        Arrays.fill(activeSince, 0);
+        Arrays.fill(changed, false);
+        changedCount = 0;
 
+        initializationTaken = false;
+        initializationProducts = 0;
         initializationClock = 0;
-        initializationInsp1 = 0;
-        initializationInsp2 = 0;
-        initializationP1 = 0;
-        initializationP2 = 0;
-        initializationP3 = 0;
+        Arrays.fill(initializationProduced, 0);
+        Arrays.fill(initializationActive, 0);
 
         if (totalProducts == 0) return;
 
         //Queue starting arrival events
-        double insp1T = simRandom.nextServinsp1();
-        futureEvents.add(new Event(EventType.Arrival, ComponentType.C1, null, insp1T));
-        numberC1++;
-
-        double insp2T;
-        ComponentType insp2C = simRandom.nextInsp2Comp();
-        if (insp2C == ComponentType.C2) {
-            insp2T = simRandom.nextServinsp22();
-            numberC2++;
-        } else {
-            insp2T = simRandom.nextServinsp23();
-            numberC3++;
+        for (int i = 0; i < inspectorCount; i++) {
+            scheduleArrivalEvent(i);
         }
-        futureEvents.add(new Event(EventType.Arrival, insp2C, null, insp2T));
     }
 
     /**
      * Process an arrival event and queue further events
      * Triggered when an inspector finishes
-     * @param event The arrival event to be processed
+     * @param inspector The inspector that finished inspection
      */
-    private static void processArrivalEvent(Event event) {
-        ProductType destinationProduct = null;
-        switch (event.getComponentType()) {
-            case C1:
-                destinationProduct = determineC1Destination();
-                if(destinationProduct == null){
-                    inspector1Hold = event;
-                    break;
-                }
-                switch (destinationProduct) {
-                    case P1:
-                        ws1BufferC1++;
-                        break;
-                    case P2:
-                        ws2BufferC1++;
-                        break;
-                    case P3:
-                        ws3BufferC1++;
-                        break;
-                }
-                break;
-            case C2:
-                if (ws2BufferC2 < 2) {
-                    ws2BufferC2++;
-                    destinationProduct = ProductType.P2;
-                } else {
-                    inspector2Hold = event;
-                }
-                break;
-            case C3:
-                if (ws3BufferC3 < 2) {
-                    ws3BufferC3++;
-                    destinationProduct = ProductType.P3;
-                } else {
-                    inspector2Hold = event;
-                }
-                break;
+    private void processArrivalEvent(int inspector) {
+        int component = inspectorComponent[inspector];
+        if (leadTimes != null)
+            leadTimes.endInspection(inspector, clock);
+        int buffer = determineDestination(component);
+        if (buffer == -1) {
+            inspectorHold[inspector] = component;
+            holdCount++;
+            stationMetrics.setBlocked(inspector, true, clock);
+            return;
         }
+        stationMetrics.setLevel(buffer, ++bufferLevels[buffer], clock);
+        if (leadTimes != null)
+            leadTimes.enterBuffer(inspector, buffer, clock);
 
         //Set up arrivals and departures if not on hold
-        if(destinationProduct != null){
-            scheduleArrivalEvent(event);
-            scheduleDepartureEvent(destinationProduct);
-        }
+        scheduleArrivalEvent(inspector);
+        scheduleDepartureEvent(model.getBufferWorkstation(buffer));
     }
 
     /**
-     * Schedule a departure event, if applicable
-     * @param event The event of the last inspection
+     * Start the next inspection of an inspector
+     * @param inspector The inspector, which must not be holding a component
      */
-    private static void scheduleArrivalEvent(Event event) {
-        ComponentType nextComponent = null;
-        double nextTime = Double.NaN;
-        if (event.getComponentType() == ComponentType.C1) { //Inspector 1
-            if (inspector1Hold == null) {
-                nextComponent = ComponentType.C1;
-                nextTime = simRandom.nextServinsp1();
-                numberC1++;
-            }
-        } else { //Inspector 2
-            if (inspector2Hold == null) {
-                nextComponent = simRandom.nextInsp2Comp();
-                if (nextComponent == ComponentType.C2) {
-                    nextTime = simRandom.nextServinsp22();
-                    numberC2++;
-                } else {
-                    nextTime = simRandom.nextServinsp23();
-                    numberC3++;
-                }
-            }
-        }
-
-        if (!Double.isNaN(nextTime) && nextComponent != null) {
-            Event newEvent = new Event(EventType.Arrival, nextComponent, null, clock + nextTime);
-            futureEvents.add(newEvent);
-        }
+    private void scheduleArrivalEvent(int inspector) {
+        int choice = simRandom.nextChoice(inspector);
+        int component = model.getInspectorComponents(inspector)[choice];
+        int source = model.getInspectorSources(inspector)[choice];
+        double nextTime = simRandom.nextService(source);
+        if (gradients != null)
+            gradients.schedule(inspector, source, nextTime);
+        numberComponents[component]++;
+        inspectorComponent[inspector] = component;
+        if (leadTimes != null)
+            leadTimes.startInspection(inspector, clock);
+        addEvent(clock + nextTime, EventType.Arrival, inspector, inspector);
     }
 
     /**
      * Schedule a departure event, if applicable
-     * @param type The product to attempt to schedule assembly for
+     * @param workstation The workstation to attempt to schedule assembly for
      */
-    private static void scheduleDepartureEvent(ProductType type) {
+    private void scheduleDepartureEvent(int workstation) {
         //If true, that workstation is already running, can't schedule now
-        if (futureEvents.stream().anyMatch(e -> e.getProductType() == type)) {
+        int station = inspectorCount + workstation;
+        if (busy[station]) {
             return;
         }
 
         //check sufficient buffer
-        double nextTime = Double.NaN;
-        switch (type) {
-            case P1:
-                if (ws1BufferC1 > 0) {
-                    nextTime = simRandom.nextWs1();
-                    ws1BufferC1--;
-                }
-                break;
-            case P2:
-                if (ws2BufferC1 > 0 && ws2BufferC2 > 0) {
-                    nextTime = simRandom.nextWs2();
-                    ws2BufferC1--;
-                    ws2BufferC2--;
-                }
-                break;
-            case P3:
-                if (ws3BufferC1 > 0 && ws3BufferC3 > 0) {
-                    nextTime = simRandom.nextWs3();
-                    ws3BufferC1--;
-                    ws3BufferC3--;
-                }
-                break;
-            default:
-                throw new IllegalArgumentException();
+        int start = model.getWorkstationBufferStart(workstation);
+        int end = model.getWorkstationBufferEnd(workstation);
+        for (int buffer = start; buffer < end; buffer++) {
+            if (bufferLevels[buffer] == 0)
+                return;
         }
 
-        if(!Double.isNaN(nextTime)) { //check the product is being made
-            Event newEvent = new Event(EventType.Departure, null, type, clock + nextTime);
-            futureEvents.add(newEvent);
-            processHoldEvent();
+        int source = model.getWorkstationSource(workstation);
+        double nextTime = simRandom.nextService(source);
+        if (gradients != null)
+            gradients.schedule(station, source, nextTime);
+        for (int buffer = start; buffer < end; buffer++) {
+            stationMetrics.setLevel(buffer, --bufferLevels[buffer], clock);
         }
+        if (leadTimes != null)
+            leadTimes.startAssembly(workstation, clock);
+        addEvent(clock + nextTime, EventType.Departure, workstation, station);
+        processHoldEvent();
     }
 
     /**
-     * Check for a hold and cancel if applicable
+     * Check for holds and cancel where buffer space opened up, in inspector order
      * Called after a departure event gets scheduled
      */
-    private static void processHoldEvent(){
-        if(inspector1Hold != null){
-            ProductType holdDestination = determineC1Destination();
-            if(holdDestination != null){
-                switch (holdDestination) {
-                    case P1:
-                        ws1BufferC1++;
-                        break;
-                    case P2:
-                        ws2BufferC1++;
-                        break;
-                    case P3:
-                        ws3BufferC1++;
-                        break;
-                }
-                Event holdEvent = inspector1Hold;
-                inspector1Hold = null;
-                scheduleArrivalEvent(holdEvent);
-
-            }
-        }
-
-        if(inspector2Hold != null){
-            boolean canLiftHold = false;
-            if(inspector2Hold.getComponentType() == ComponentType.C2 && ws2BufferC2 < 2){
-                ws2BufferC2++;
-                canLiftHold = true;
-            }
-            else if(inspector2Hold.getComponentType() == ComponentType.C3 && ws3BufferC3 < 2){
-                ws3BufferC3++;
-                canLiftHold = true;
-            }
-            if(canLiftHold) {
-                Event holdEvent = inspector2Hold;
-                inspector2Hold = null;
-                scheduleArrivalEvent(holdEvent);
-
-            }
+    private void processHoldEvent() {
+        if (holdCount == 0)
+            return;
+        for (int inspector = 0; inspector < inspectorCount; inspector++) {
+            int component = inspectorHold[inspector];
+            if (component == -1)
+                continue;
+            int buffer = determineDestination(component);
+            if (buffer == -1)
+                continue;
+            stationMetrics.setLevel(buffer, ++bufferLevels[buffer], clock);
+            if (leadTimes != null)
+                leadTimes.enterBuffer(inspector, buffer, clock);
+            inspectorHold[inspector] = -1;
+            holdCount--;
+            stationMetrics.setBlocked(inspector, false, clock);
+            scheduleArrivalEvent(inspector);
+            scheduleDepartureEvent(model.getBufferWorkstation(buffer));
         }
     }
 
     /**
      * Process a departure event
      * Triggered when a workstation finished
-     * @param event The departure event to be processed
+     * @param workstation The workstation that finished assembly
      */
-    private static void processDepartureEvent(Event event) {
-        switch (event.getProductType()){
-            case P1:
-                numberP1++;
-                break;
-            case P2:
-                numberP2++;
-                break;
-            case P3:
-                numberP3++;
-                break;
-        }
+    private void processDepartureEvent(int workstation) {
+        if (leadTimes != null)
+            leadTimes.completeAssembly(workstation, clock);
+        numberProduced[workstation]++;
         numberProducts++;
-        scheduleDepartureEvent(event.getProductType());
+        scheduleDepartureEvent(workstation);
     }
 
     /**
-     * Check for activity and update idle times as appropriate
+     * Update the busy state of the stations that changed in this event, then add the time since the
+     * last event to every inspector busy after it
+     * Inspectors are summed event by event like the original model, so idle fractions match it to the
+     * last bit. Workstations start or end an active period only when their state changes.
      */
-    private static void updateIdleTimes(){
-        if (futureEvents.stream().anyMatch(e -> e.getComponentType() == ComponentType.C1)) {
-            insp1Active += clock - lastEventTime;
-        }
-        if (futureEvents.stream().anyMatch(e -> (e.getComponentType() == ComponentType.C2 || e.getComponentType() == ComponentType.C3))) {
-            insp2Active += clock - lastEventTime;
-        }
-        if (futureEvents.stream().anyMatch(e -> e.getProductType() == ProductType.P1)) {
-            ws1Active += clock - lastEventTime;
-        }
-        if (futureEvents.stream().anyMatch(e -> e.getProductType() == ProductType.P2)) {
-            ws2Active += clock - lastEventTime;
+    private void updateActiveTimes() {
+        for (int i = 0; i < changedCount; i++) {
+            int station = changedStations[i];
+            changed[station] = false;
+            if (busy[station] == activeAfterEvent[station])
+                continue;
+            if (station >= inspectorCount) {
+                if (busy[station])
+                    activeSince[station] = lastEventTime;
+                else
+                    activeTime[station] += lastEventTime - activeSince[station];
+            }
+            if (gradients != null) {
+                if (busy[station])
+                    gradients.startActive(station);
+                else
+                    gradients.endActive(station);
+            }
+            activeAfterEvent[station] = busy[station];
         }
-        if (futureEvents.stream().anyMatch(e -> e.getProductType() == ProductType.P3)) {
-            ws3Active += clock - lastEventTime;
+        changedCount = 0;
+        for (int inspector = 0; inspector < inspectorCount; inspector++) {
+            if (activeAfterEvent[inspector])
+                activeTime[inspector] += clock - lastEventTime;
         }
     }
 
     /**
-     * Determine destination for component1 based on simulation state
-     * @return The output to direct C1 to. Returns null if all buffers are full.
+     * @param station The inspector index, or inspectorCount plus the workstation index
+     * @return Time the station has been active up to the current event
      */
-    private static ProductType determineC1Destination() {
-        return insp1Routing.determineC1Destination(ws1BufferC1, ws2BufferC1, ws3BufferC1);
+    private double getActiveTime(int station) {
+        if (station >= inspectorCount && activeAfterEvent[station])
+            return activeTime[station] + clock - activeSince[station];
+        return activeTime[station];
     }
 
     /**
-     * Print the header for the formatted output of the simulation state to the console
+     * Queue an event and mark the station it belongs to as busy
+     * Each station has at most one pending event at a time
+     * @param time The time of the event
+     * @param eventType The type of event
+     * @param entity The inspector for arrivals, the workstation for departures
+     * @param station The station index of the entity
      */
-    private static void printSimulationStateHeader() {
-        System.out.printf("%10s %5s %5s %10s | %4s %4s %4s | %4s %4s %4s %4s %4s | %4s %4s %4s | %10s %10s | %10s %10s %10s\n",
-                "Event", "Comp", "Prod", "Clock",
-                "C1", "C2", "C3", "B11", "B21", "B22", "B31", "B33", "P1", "P2", "P3",
-                "insp1 Idle", "insp2 Idle", "ws1 Idle", "ws2 Idle", "ws3 Idle");
+    private void addEvent(double time, EventType eventType, int entity, int station) {
+        futureEvents.add(time, eventType.ordinal(), entity);
+        setBusy(station, true);
     }
 
     /**
-     * Print a formatted output of the simulation state to the console
-     * @param event The current simulation event
+     * Update the busy state of a station
+     * @param station The inspector index, or inspectorCount plus the workstation index
+     * @param state The new state of the station
      */
-    private static void printSimulationState(Event event) {
-        String typeEvent = "";
-        String typeComponent = "";
-        String typeProduct = "";
+    private void setBusy(int station, boolean state) {
+        busy[station] = state;
+        stationMetrics.setBusy(station, state, clock);
+        if (!changed[station]) {
+            changed[station] = true;
+            changedStations[changedCount++] = station;
+        }
+    }
 
-        if (event != null) {
-            if (event.getEventType() != null) typeEvent = event.getEventType().toString();
-            if (event.getComponentType() != null) typeComponent = event.getComponentType().toString();
-            if (event.getProductType() != null) typeProduct = event.getProductType().toString();
+    /**
+     * Determine the buffer for a component based on simulation state
+     * Components used by several workstations are routed by the inspector 1 routing
+     * @return The buffer to direct the component to. Returns -1 if all buffers are full.
+     */
+    private int determineDestination(int component) {
+        int[] candidates = model.getComponentBuffers(component);
+        if (candidates.length == 1) {
+            int buffer = candidates[0];
+            return bufferLevels[buffer] < bufferCapacities[buffer] ? buffer : -1;
         }
+        int choice = insp1Routing.determineDestination(bufferLevels, bufferCapacities, candidates);
+        return choice == -1 ? -1 : candidates[choice];
+    }
 
-        System.out.printf("%10s %5s %5s %10.3f | %4d %4d %4d | %4d %4d %4d %4d %4d | %4d %4d %4d | %10.3f %10.3f | %10.3f %10.3f %10.3fs\n",
-                typeEvent, typeComponent, typeProduct, clock,
-                numberC1, numberC2, numberC3, ws1BufferC1, ws2BufferC1, ws2BufferC2, ws3BufferC1, ws3BufferC3, numberP1, numberP2, numberP3,
-                clock - insp1Active, clock - insp2Active, clock - ws1Active, clock - ws2Active, clock - ws3Active);
+    /**
+     * Trace the state after an event and print it if enabled
+     * @param eventType The type of the current simulation event, null before the first event
+     * @param component The component inspected for arrivals
+     * @param entity The inspector for arrivals, the workstation for departures
+     */
+    private void recordState(EventType eventType, int component, int entity) {
+        for (int s = 0; s < stationCount; s++) {
+            tracedActiveTime[s] = getActiveTime(s);
+        }
+        if (traceWriter != null)
+            traceWriter.record(eventType, component, entity, clock, numberComponents, bufferLevels, numberProduced,
+                    activeAfterEvent, tracedActiveTime);
+        if (stateRecord != null) {
+            stateRecord.clear();
+            traceLayout.encode(stateRecord, eventType, component, entity, clock, numberComponents, bufferLevels, numberProduced,
+                    activeAfterEvent, tracedActiveTime);
+            stateRecord.flip();
+            System.out.print(traceLayout.formatRecord(stateRecord));
+        }
     }
 }
@@ -0,0 +1,69 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshot of the full state of a run between two events, see Simulation.checkpoint
+ * Holds the clock, pending events, buffers, holds, counters, routing state and random number state,
+ * so the run can be resumed or forked into independent replications.
+ */
+public class SimulationCheckpoint {
+    static final int MAGIC = 0x53494d43; //"SIMC"
+    static final int VERSION = 3;
+
+    private final byte[] data;
+
+    SimulationCheckpoint(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @param data Bytes returned by toByteArray
+     */
+    public static SimulationCheckpoint fromByteArray(byte[] data) {
+        return new SimulationCheckpoint(data.clone());
+    }
+
+    /**
+     * Read a checkpoint saved by save
+     * @param file The checkpoint file
+     */
+    public static SimulationCheckpoint load(String file) throws IOException {
+        return new SimulationCheckpoint(Files.readAllBytes(new File(file).toPath()));
+    }
+
+    /**
+     * Write the checkpoint, replacing the file only once it is complete
+     * An interrupted save leaves the previous checkpoint in place
+     * @param file The checkpoint file
+     */
+    public void save(String file) throws IOException {
+        File target = new File(file);
+        File temporary = new File(file + ".tmp");
+        Files.write(temporary.toPath(), data);
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public byte[] toByteArray() {
+        return data.clone();
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    /**
+     * @return A stream over the state, positioned after the header
+     */
+    DataInputStream open() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Not a simulation checkpoint");
+        return in;
+    }
+}
@@ -0,0 +1,48 @@
+package model;
+
+import java.util.function.Supplier;
+
+/**
+ * One alternative system: a routing policy on a production line
+ */
+public class SimulationDesign {
+    private final String name;
+    private final Supplier<Insp1Routing> routing;
+    private final LineModel model;
+
+    public SimulationDesign(String name, Supplier<Insp1Routing> routing, LineModel model) {
+        this.name = name;
+        this.routing = routing;
+        this.model = model;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Supplier<Insp1Routing> getRouting() {
+        return routing;
+    }
+
+    public LineModel getModel() {
+        return model;
+    }
+
+    /**
+     * Create the scenario of one replication
+     * Replication r of every design uses the same substreams of the seed, so designs are
+     * compared under common random numbers
+     * @param seed The random seed
+     * @param replication The replication number, from 0
+     * @param totalProducts How many products to simulate
+     * @param useInitialization Discard the initialization period from the output
+     * @return The scenario
+     */
+    public SimulationScenario createScenario(long seed, int replication, int totalProducts, boolean useInitialization) {
+        SimulationScenario scenario = new SimulationScenario(seed, totalProducts, routing, false, false, useInitialization);
+        scenario.setReplication(replication);
+        scenario.setModel(model);
+        scenario.setDesign(name);
+        return scenario;
+    }
+}
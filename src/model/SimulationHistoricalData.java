@@ -1,80 +1,90 @@
 package model;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.Map;
 
 public class SimulationHistoricalData extends SimulationRandom {
-    private static boolean dataLoaded = false;
-    private static List<Double> servinsp1;
-    private static List<Double> servinsp22;
-    private static List<Double> servinsp23;
-    private static List<Double> ws1;
-    private static List<Double> ws2;
-    private static List<Double> ws3;
+    //Traces shared by all runs, loaded the first time each file is needed
+    private static final Map<String, HistoricalTrace> traces = new HashMap<>();
 
-    private int nextServinsp1 = 0;
-    private int nextServinsp22 = 0;
-    private int nextServinsp23 = 0;
-    private int nextWs1 = 0;
-    private int nextWs2 = 0;
-    private int nextWs3 = 0;
+    private final HistoricalTrace[] sourceTraces;
+    private final int[] nextSample;
 
     public SimulationHistoricalData(long seed) {
-        super(seed); //still need seed for the inspector 2 components
-
-        //Only load the first time needed
-        if (!dataLoaded) {
-            servinsp1 = loadSimulationDataFile("servinsp1.dat");
-            servinsp22 = loadSimulationDataFile("servinsp22.dat");
-            servinsp23 = loadSimulationDataFile("servinsp23.dat");
-            ws1 = loadSimulationDataFile("ws1.dat");
-            ws2 = loadSimulationDataFile("ws2.dat");
-            ws3 = loadSimulationDataFile("ws3.dat");
-            dataLoaded = true;
-        }
+        this(LineModel.builtIn(), seed, 0);
     }
 
-    private static List<Double> loadSimulationDataFile(String file) {
-        List<Double> toReturn = new ArrayList<>();
-        Scanner sc = null;
-        try {
-            sc = new Scanner(new File(file));
-            while (sc.hasNext()) { //File should be entirely numbers, so if this doesn't work we want an exception
-                toReturn.add(sc.nextDouble());
-            }
-        } catch (Exception e) {
-            System.err.println("Simulation file error: " + file);
-        } finally {
-            if (sc != null)
-                sc.close();
-        }
-        return toReturn;
+    public SimulationHistoricalData(long seed, int replication) {
+        this(LineModel.builtIn(), seed, replication);
     }
 
-    public double nextServinsp1() {
-        return servinsp1.get(nextServinsp1++ % servinsp1.size());
-    }
+    /**
+     * @param model The line, every service source needs a trace file
+     * @param seed Still needed for the component choices
+     * @param replication The replication number, from 0
+     */
+    public SimulationHistoricalData(LineModel model, long seed, int replication) {
+        super(model, seed, replication);
 
-    public double nextServinsp22() {
-        return servinsp22.get(nextServinsp22++ % servinsp22.size());
+        sourceTraces = new HistoricalTrace[model.getServiceSourceCount()];
+        for (int source = 0; source < sourceTraces.length; source++) {
+            String file = model.getSourceTrace(source);
+            if (file == null)
+                throw new IllegalStateException("No historical data for " + model.getSourceName(source));
+            sourceTraces[source] = loadTrace(file);
+        }
+        nextSample = new int[sourceTraces.length];
     }
 
-    public double nextServinsp23() {
-        return servinsp23.get(nextServinsp23++ % servinsp23.size());
+    /**
+     * Load a data file, only the first time needed
+     * Synchronized so concurrent replications share a single copy
+     */
+    static synchronized HistoricalTrace loadTrace(String file) {
+        HistoricalTrace trace = traces.get(file);
+        if (trace == null) {
+            trace = HistoricalTrace.load(file);
+            traces.put(file, trace);
+        }
+        return trace;
     }
 
-    public double nextWs1() {
-        return ws1.get(nextWs1++ % ws1.size());
+    /**
+     * Also saves the replay position of every trace
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        for (int sample : nextSample) {
+            out.writeInt(sample);
+        }
     }
 
-    public double nextWs2() {
-        return ws2.get(nextWs2++ % ws2.size());
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        for (int source = 0; source < nextSample.length; source++) {
+            int sample = in.readInt();
+            if (sample < 0 || sample >= Math.max(1, sourceTraces[source].size()))
+                throw new IOException("Invalid trace position");
+            nextSample[source] = sample;
+        }
     }
 
-    public double nextWs3() {
-        return ws3.get(nextWs3++ % ws3.size());
+    /**
+     * Replay the trace of a source cyclically, wrapping the index instead of taking a modulo
+     */
+    @Override
+    public double nextService(int source) {
+        HistoricalTrace trace = sourceTraces[source];
+        int sample = nextSample[source];
+        double value = trace.get(sample);
+        if (++sample == trace.size())
+            sample = 0;
+        nextSample[source] = sample;
+        return value;
     }
 }
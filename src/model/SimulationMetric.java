@@ -0,0 +1,146 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An output statistic that replications can be summarized by
+ */
+public final class SimulationMetric {
+    private enum Kind {
+        Throughput, TotalThroughput, InspectorIdle
+    }
+
+    private final Kind kind;
+    private final int index;
+
+    private SimulationMetric(Kind kind, int index) {
+        this.kind = kind;
+        this.index = index;
+    }
+
+    /**
+     * @param product The workstation of the product
+     * @return Products per minute of the workstation
+     */
+    public static SimulationMetric throughput(int product) {
+        return new SimulationMetric(Kind.Throughput, product);
+    }
+
+    /**
+     * @return Products per minute of the whole line
+     */
+    public static SimulationMetric totalThroughput() {
+        return new SimulationMetric(Kind.TotalThroughput, 0);
+    }
+
+    /**
+     * @param inspector The inspector
+     * @return Fraction of the time the inspector was idle
+     */
+    public static SimulationMetric inspectorIdle(int inspector) {
+        return new SimulationMetric(Kind.InspectorIdle, inspector);
+    }
+
+    /**
+     * @return The throughput of every product
+     */
+    public static List<SimulationMetric> throughputs(LineModel model) {
+        List<SimulationMetric> metrics = new ArrayList<>();
+        for (int w = 0; w < model.getWorkstationCount(); w++) {
+            metrics.add(throughput(w));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return Every throughput and inspector idle metric
+     */
+    public static List<SimulationMetric> all(LineModel model) {
+        return all(model.getWorkstationCount(), model.getInspectorCount());
+    }
+
+    /**
+     * @return Every throughput and inspector idle metric of an output's line
+     */
+    public static List<SimulationMetric> all(SimulationOutput output) {
+        return all(output.getProductCount(), output.getInspectorCount());
+    }
+
+    static List<SimulationMetric> all(int products, int inspectors) {
+        List<SimulationMetric> metrics = new ArrayList<>();
+        for (int w = 0; w < products; w++) {
+            metrics.add(throughput(w));
+        }
+        for (int i = 0; i < inspectors; i++) {
+            metrics.add(inspectorIdle(i));
+        }
+        return metrics;
+    }
+
+    public double valueOf(SimulationOutput output) {
+        switch (kind) {
+            case Throughput:
+                return output.getThroughput(index);
+            case TotalThroughput:
+                return output.getTotalProducts() / output.getClock();
+            default:
+                return output.getInspectorIdle(index);
+        }
+    }
+
+    /**
+     * @return The metric of one run of a results file block
+     */
+    double valueOf(ResultStoreReader.Block block, int row) {
+        switch (kind) {
+            case Throughput:
+                return block.getThroughput(row, index);
+            case TotalThroughput:
+                return block.getTotalProducts(row) / block.getClock(row);
+            default:
+                return block.getInspectorIdle(row, index);
+        }
+    }
+
+    /**
+     * @return The metric name with the product or inspector names of an output, e.g. P1Throughput
+     */
+    public String getName(SimulationOutput output) {
+        switch (kind) {
+            case Throughput:
+                return output.getProductName(index) + "Throughput";
+            case TotalThroughput:
+                return "TotalThroughput";
+            default:
+                return output.getInspectorName(index) + "Idle";
+        }
+    }
+
+    /**
+     * @return The metric name with the product or inspector names of a results file
+     */
+    String getName(String[] productNames, String[] inspectorNames) {
+        switch (kind) {
+            case Throughput:
+                return productNames[index] + "Throughput";
+            case TotalThroughput:
+                return "TotalThroughput";
+            default:
+                return inspectorNames[index] + "Idle";
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SimulationMetric))
+            return false;
+        SimulationMetric metric = (SimulationMetric) other;
+        return kind == metric.kind && index == metric.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return kind.hashCode() * 31 + index;
+    }
+}
@@ -1,28 +1,175 @@
 package model;
 
+import java.io.PrintStream;
+
 public class SimulationOutput {
     private boolean useHistorical;
     private long seed;
     private Insp1Routing routing;
     private double clock;
     private int totalProducts;
-    private double p1Throughput;
-    private double p2Throughput;
-    private double p3Throughput;
-    private double insp1Idle;
-    private double insp2Idle;
+    private String[] productNames;
+    private double[] throughput;
+    private String[] inspectorNames;
+    private double[] inspectorIdle;
+    private int warmupProducts = -1; //-1 unless the cutoff was detected
+    private double warmupClock;
+    private StationMetrics stationMetrics;
+    private SensitivityEstimates sensitivities;
+    private LeadTimes leadTimes;
+    private double[] serviceMeans; //null for historical data
+    private double[] expectedServiceMeans;
 
-    public SimulationOutput(boolean useHistorical, long seed, Insp1Routing routing, double clock, int numberP1, int numberP2, int numberP3, double insp1Active, double insp2Active){
+    /**
+     * @param productCounts Products completed by each workstation
+     * @param inspectorActive Time each inspector spent inspecting
+     */
+    public SimulationOutput(boolean useHistorical, long seed, Insp1Routing routing, double clock,
+                            String[] productNames, int[] productCounts, String[] inspectorNames, double[] inspectorActive){
         this.useHistorical = useHistorical;
         this.seed = seed;
         this.routing = routing;
         this.clock = clock;
-        totalProducts = numberP1 + numberP2 + numberP3;
-        p1Throughput = (numberP1 / clock);
-        p2Throughput = (numberP2 / clock);
-        p3Throughput = (numberP3 / clock);
-        insp1Idle = ((clock - insp1Active) / clock);
-        insp2Idle = ((clock - insp2Active) / clock);
+        this.productNames = productNames;
+        this.inspectorNames = inspectorNames;
+        throughput = new double[productCounts.length];
+        for (int w = 0; w < productCounts.length; w++) {
+            totalProducts += productCounts[w];
+            throughput[w] = (productCounts[w] / clock);
+        }
+        inspectorIdle = new double[inspectorActive.length];
+        for (int i = 0; i < inspectorActive.length; i++) {
+            inspectorIdle[i] = ((clock - inspectorActive[i]) / clock);
+        }
+    }
+
+    public boolean isUseHistorical(){
+        return useHistorical;
+    }
+
+    public long getSeed(){
+        return seed;
+    }
+
+    public Insp1Routing getRouting(){
+        return routing;
+    }
+
+    public double getClock(){
+        return clock;
+    }
+
+    public int getTotalProducts(){
+        return totalProducts;
+    }
+
+    public int getProductCount(){
+        return throughput.length;
+    }
+
+    public String getProductName(int product){
+        return productNames[product];
+    }
+
+    /**
+     * @return Products per minute of one workstation
+     */
+    public double getThroughput(int product){
+        return throughput[product];
+    }
+
+    public int getInspectorCount(){
+        return inspectorIdle.length;
+    }
+
+    public String getInspectorName(int inspector){
+        return inspectorNames[inspector];
+    }
+
+    /**
+     * @return Fraction of the time an inspector was idle
+     */
+    public double getInspectorIdle(int inspector){
+        return inspectorIdle[inspector];
+    }
+
+    /**
+     * Record the detected warm-up period that was discarded from the output
+     * @param products Products completed during the warm-up
+     * @param clock Simulation time at the end of the warm-up
+     */
+    public void setWarmupCutoff(int products, double clock){
+        warmupProducts = products;
+        warmupClock = clock;
+    }
+
+    /**
+     * @return Products discarded as warm-up, -1 if the cutoff was not detected
+     */
+    public int getWarmupProducts(){
+        return warmupProducts;
+    }
+
+    public double getWarmupClock(){
+        return warmupClock;
+    }
+
+    /**
+     * @return Station and buffer states of the run, from the fixed initialization point if one was used, null if not collected
+     */
+    public StationMetrics getStationMetrics(){
+        return stationMetrics;
+    }
+
+    public void setStationMetrics(StationMetrics stationMetrics){
+        this.stationMetrics = stationMetrics;
+    }
+
+    /**
+     * @return Derivatives of the throughputs and idle fractions, null if not estimated
+     */
+    public SensitivityEstimates getSensitivities(){
+        return sensitivities;
+    }
+
+    public void setSensitivities(SensitivityEstimates sensitivities){
+        this.sensitivities = sensitivities;
+    }
+
+    /**
+     * @return Hold, wait and lead time distributions, null unless the run tracked them
+     */
+    public LeadTimes getLeadTimes(){
+        return leadTimes;
+    }
+
+    public void setLeadTimes(LeadTimes leadTimes){
+        this.leadTimes = leadTimes;
+    }
+
+    /**
+     * Record the mean service time drawn from each service source, for control variates
+     * @param serviceMeans Observed mean of each source over the whole run
+     * @param expectedServiceMeans Mean of each source's distribution
+     */
+    public void setServiceMeans(double[] serviceMeans, double[] expectedServiceMeans){
+        this.serviceMeans = serviceMeans;
+        this.expectedServiceMeans = expectedServiceMeans;
+    }
+
+    /**
+     * @return Number of service sources with an observed mean, 0 for historical data
+     */
+    public int getServiceSourceCount(){
+        return serviceMeans == null ? 0 : serviceMeans.length;
+    }
+
+    public double getServiceMean(int source){
+        return serviceMeans[source];
+    }
+
+    public double getExpectedServiceMean(int source){
+        return expectedServiceMeans[source];
     }
 
     public void printOutput(){
@@ -31,26 +178,64 @@ public class SimulationOutput {
         System.out.println("Inspector 1 Routing: " + routing.getClass().getSimpleName());
         System.out.println("Total Products:      " + totalProducts);
         System.out.printf("Simulation Time:     %.4f minutes\n", clock);
+        if (warmupProducts >= 0)
+            System.out.printf("Warm-up Cutoff:      %d products, %.4f minutes\n", warmupProducts, warmupClock);
         System.out.println();
         System.out.println("Throughput:");
-        System.out.printf("%2s: %8.4f units/minute\n", ProductType.P1, p1Throughput);
-        System.out.printf("%2s: %8.4f units/minute\n", ProductType.P2, p2Throughput);
-        System.out.printf("%2s: %8.4f units/minute\n", ProductType.P3, p3Throughput);
+        for (int w = 0; w < throughput.length; w++) {
+            System.out.printf("%2s: %8.4f units/minute\n", productNames[w], throughput[w]);
+        }
         System.out.println();
         System.out.println("Inspector Idle Probability:");
-        System.out.printf("Inspector 1: %8.4f%%\n", insp1Idle * 100);
-        System.out.printf("Inspector 2: %8.4f%%\n", insp2Idle * 100);
+        for (int i = 0; i < inspectorIdle.length; i++) {
+            System.out.printf("Inspector %d: %8.4f%%\n", i + 1, inspectorIdle[i] * 100);
+        }
+        if (stationMetrics != null) {
+            System.out.println();
+            stationMetrics.printOutput();
+        }
+        if (sensitivities != null) {
+            System.out.println();
+            sensitivities.printOutput();
+        }
+        if (leadTimes != null) {
+            System.out.println();
+            leadTimes.printOutput();
+        }
         System.out.println("------------------------------");
     }
 
+    /**
+     * Print the column names of printRawOutput
+     */
+    public void printRawHeader(){
+        printRawHeader(System.out);
+    }
+
+    public void printRawHeader(PrintStream out){
+        out.print("seed\tclock");
+        for (String product : productNames) {
+            out.print("\t" + product.toLowerCase() + "Throughput");
+        }
+        for (String inspector : inspectorNames) {
+            out.print("\t" + inspector + "Idle");
+        }
+        out.println();
+    }
+
     public void printRawOutput(){
-        System.out.print((useHistorical ? "Historical Data" : seed));
-        System.out.print("\t" + clock);
-        System.out.print("\t" + p1Throughput);
-        System.out.print("\t" + p2Throughput);
-        System.out.print("\t" + p3Throughput);
-        System.out.print("\t" + (insp1Idle * 100) + "%");
-        System.out.print("\t" + (insp2Idle * 100) + "%");
-        System.out.println();
+        printRawOutput(System.out);
+    }
+
+    public void printRawOutput(PrintStream out){
+        out.print((useHistorical ? "Historical Data" : seed));
+        out.print("\t" + clock);
+        for (double value : throughput) {
+            out.print("\t" + value);
+        }
+        for (double value : inspectorIdle) {
+            out.print("\t" + (value * 100) + "%");
+        }
+        out.println();
     }
 }
@@ -1,46 +1,198 @@
 package model;
 
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class SimulationRandom {
-    private Random random;
+    //Distributions fitted to the trace files, shared by all runs of the same input model
+    private static final Map<String, EmpiricalDistribution> distributions = new HashMap<>();
+
+    private final LineModel model;
+    private final RandomStream[] streams;
+    private final ServiceSampler[] samplers;
+    private final SamplingMethod method;
 
     public SimulationRandom(long seed) {
-        this.random = new Random(seed);
+        this(LineModel.builtIn(), seed, 0);
+    }
+
+    public SimulationRandom(long seed, int replication) {
+        this(LineModel.builtIn(), seed, replication);
+    }
+
+    /**
+     * Create the streams of one replication
+     * Every replication of a seed gets its own substream, 2^96 draws apart, and every input
+     * process (source) of the line gets its own stream within it, 2^64 draws apart. Runs with the
+     * same seed and replication therefore use common random numbers for each process, whatever the routing.
+     * @param model The line whose sources to create streams for
+     * @param seed The base seed
+     * @param replication The replication number, from 0
+     */
+    public SimulationRandom(LineModel model, long seed, int replication) {
+        this(model, seed, replication, SamplingMethod.Ziggurat);
+    }
+
+    /**
+     * Create the streams of one replication, see above
+     * An Antithetic run mirrors every uniform of the InverseTransform run of the same seed and replication.
+     * @param method How service times and component choices are drawn from the streams
+     */
+    public SimulationRandom(LineModel model, long seed, int replication, SamplingMethod method) {
+        this(model, seed, replication, method, InputModel.Exponential);
+    }
+
+    /**
+     * Create the streams of one replication, see above
+     * Empirical input models fit a distribution to the trace file of every service source, drawn with the
+     * source's stream, so their runs take any seed and keep common random numbers across routings.
+     * The sampling method then only changes the component choices.
+     * @param inputModel The distribution of the service times
+     */
+    public SimulationRandom(LineModel model, long seed, int replication, SamplingMethod method, InputModel inputModel) {
+        if (replication < 0)
+            throw new IllegalArgumentException("Invalid replication");
+        this.model = model;
+        this.method = method;
+
+        RandomStream base = new RandomStream(seed);
+        for (int i = 0; i < replication; i++) {
+            base.longJump();
+        }
+        streams = new RandomStream[model.getSourceCount()];
+        for (int source = 0; source < streams.length; source++) {
+            streams[source] = new RandomStream(base);
+            base.jump();
+        }
+        samplers = new ServiceSampler[model.getServiceSourceCount()];
+        for (int source = 0; source < samplers.length; source++) {
+            if (inputModel == InputModel.Exponential) {
+                samplers[source] = new ExponentialSampler(streams[source], model.getSourceRate(source), method);
+            } else {
+                String file = model.getSourceTrace(source);
+                if (file == null)
+                    throw new IllegalStateException("No historical data for " + model.getSourceName(source));
+                samplers[source] = new EmpiricalSampler(streams[source], fitDistribution(inputModel, file));
+            }
+        }
+    }
+
+    /**
+     * Fit a distribution to a data file, only the first time needed
+     */
+    private static synchronized EmpiricalDistribution fitDistribution(InputModel inputModel, String file) {
+        String key = inputModel + ":" + file;
+        EmpiricalDistribution distribution = distributions.get(key);
+        if (distribution == null) {
+            HistoricalTrace trace = SimulationHistoricalData.loadTrace(file);
+            double[] samples = new double[trace.size()];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = trace.get(i);
+            }
+            distribution = EmpiricalDistribution.of(inputModel, samples);
+            distributions.put(key, distribution);
+        }
+        return distribution;
     }
 
-    public double NextExponential(double rateParameter) {
+    /**
+     * Draw an exponential variate by inverse transform, with 1 - U in place of U for Antithetic runs
+     * Draws directly from the process stream, bypassing its buffered sampler
+     * @param source The input process stream to use
+     * @param rateParameter The rate of the distribution
+     * @return The variate
+     */
+    public double NextExponential(int source, double rateParameter) {
         if (rateParameter <= 0)
             throw new IllegalArgumentException("Invalid rate parameter");
 
-        return -Math.log(1 - random.nextDouble()) / rateParameter;
+        if (method == SamplingMethod.Antithetic)
+            return -Math.log(streams[source].nextOpenDouble()) / rateParameter;
+        return -Math.log(1 - streams[source].nextDouble()) / rateParameter;
     }
 
-    public double nextServinsp1(){
-        return NextExponential(0.096544573);
+    /**
+     * Draw a service time
+     * @param source The inspection or assembly source of the line
+     * @return The service time
+     */
+    public double nextService(int source) {
+        return samplers[source].next();
     }
 
-    public double nextServinsp22(){
-        return NextExponential(0.06436289);
+    /**
+     * Choose the next component an inspector works on
+     * The first component takes the top of the draw, so an even two-way choice is the sign of the
+     * stream's next long, as the built-in line has always drawn it.
+     * @param inspector The inspector
+     * @return Index into the inspector's components
+     */
+    public int nextChoice(int inspector) {
+        int source = model.getInspectorChoiceSource(inspector);
+        if (source == -1)
+            return 0;
+        double u; //in (0, 1], counted down from the top of the draw
+        if (method == SamplingMethod.Ziggurat)
+            u = 1 - streams[source].nextDouble();
+        else if (method == SamplingMethod.InverseTransform)
+            u = 1 - streams[source].nextOpenDouble();
+        else
+            u = streams[source].nextOpenDouble();
+        double[] cumulative = model.getInspectorCumulativeWeights(inspector);
+        int choice = 0;
+        while (u > cumulative[choice])
+            choice++;
+        return choice;
     }
 
-    public double nextServinsp23(){
-        return NextExponential(0.048466621);
+    /**
+     * @param source A service source of the line
+     * @return Mean of the service times drawn so far, NaN before the first
+     */
+    public double getServiceMean(int source) {
+        long count = samplers[source].getCount();
+        return count == 0 ? Double.NaN : samplers[source].getSum() / count;
     }
 
-    public double nextWs1(){
-        return NextExponential(0.217182777);
+    /**
+     * @param source A service source of the line
+     * @return Expectation of the service times, 1 / rate or the mean of the fitted distribution
+     */
+    public double getExpectedServiceMean(int source) {
+        return samplers[source].getMean();
     }
 
-    public double nextWs2(){
-        return NextExponential(0.090150136);
+    /**
+     * Save the position of every stream, with the variates buffered by the samplers
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(streams.length);
+        for (int source = 0; source < streams.length; source++) {
+            if (source < samplers.length)
+                samplers[source].writeState(out);
+            else
+                streams[source].writeState(out);
+        }
     }
 
-    public double nextWs3(){
-        return NextExponential(0.113693469);
+    /**
+     * Continue from a state saved by writeState, for the same line
+     */
+    public void readState(DataInput in) throws IOException {
+        if (in.readInt() != streams.length)
+            throw new IOException("Random state is for a different line");
+        for (int source = 0; source < streams.length; source++) {
+            if (source < samplers.length)
+                samplers[source].readState(in);
+            else
+                streams[source].readState(in);
+        }
     }
 
-    public ComponentType nextInsp2Comp(){
-        return random.nextBoolean() ? ComponentType.C2 : ComponentType.C3;
+    protected LineModel getModel() {
+        return model;
     }
 }
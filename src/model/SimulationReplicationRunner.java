@@ -0,0 +1,183 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+public class SimulationReplicationRunner {
+    private final ForkJoinPool pool;
+    private ResultStoreWriter results; //null unless set
+
+    public SimulationReplicationRunner(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism How many replications to run at once
+     */
+    public SimulationReplicationRunner(int parallelism){
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Invalid parallelism");
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Run every scenario, spread across the pool
+     * @param scenarios The runs to perform
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> runAll(List<SimulationScenario> scenarios){
+        return run(scenarios, scenario -> new Simulation(scenario).runSimulation(), null);
+    }
+
+    /**
+     * Run every scenario, spread across the pool, handing each output over as soon as its run finishes
+     * @param scenarios The runs to perform
+     * @param completed Called from the worker threads with each scenario and its output, in completion order
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> runAll(List<SimulationScenario> scenarios, BiConsumer<SimulationScenario, SimulationOutput> completed){
+        return run(scenarios, scenario -> new Simulation(scenario).runSimulation(), completed);
+    }
+
+    /**
+     * Run every scenario as a fork of one checkpointed state, see Simulation.fork
+     * @param checkpoint The state every run starts from
+     * @param scenarios The runs to perform, with different replications
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> forkAll(SimulationCheckpoint checkpoint, List<SimulationScenario> scenarios){
+        return run(scenarios, scenario -> Simulation.fork(scenario, checkpoint).runSimulation(), null);
+    }
+
+    /**
+     * Run every scenario as an antithetic pair, an InverseTransform run and its Antithetic mirror
+     * @param scenarios The runs to pair, the sampling method is replaced
+     * @return The outputs of each pair in turn, the InverseTransform run first
+     */
+    public List<SimulationOutput> runAntitheticPairs(List<SimulationScenario> scenarios){
+        List<SimulationScenario> pairs = new ArrayList<>(scenarios.size() * 2);
+        for (SimulationScenario scenario : scenarios) {
+            SimulationScenario run = new SimulationScenario(scenario);
+            run.setSamplingMethod(SamplingMethod.InverseTransform);
+            SimulationScenario mirror = new SimulationScenario(scenario);
+            mirror.setSamplingMethod(SamplingMethod.Antithetic);
+            pairs.add(run);
+            pairs.add(mirror);
+        }
+        return runAll(pairs);
+    }
+
+    /**
+     * Run every scenario with the lock-step BatchSimulation engine, spread across the pool
+     * Consecutive scenarios that can share a batch are run together, up to batchSize at a time
+     * @param scenarios The runs to perform, without tracing, checkpoints or warm-up detection
+     * @param batchSize Most replications per batch
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> runBatches(List<SimulationScenario> scenarios, int batchSize){
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Invalid batch size");
+        List<List<SimulationScenario>> batches = new ArrayList<>();
+        List<SimulationScenario> batch = null;
+        for (SimulationScenario scenario : scenarios) {
+            if (batch == null || batch.size() == batchSize || !BatchSimulation.isCompatible(batch.get(0), scenario)) {
+                batch = new ArrayList<>();
+                batches.add(batch);
+            }
+            batch.add(scenario);
+        }
+        SimulationTelemetry.getDefault().plan(scenarios);
+
+        List<ForkJoinTask<List<SimulationOutput>>> tasks = new ArrayList<>(batches.size());
+        for (List<SimulationScenario> runs : batches) {
+            tasks.add(pool.submit(() -> {
+                List<SimulationOutput> outputs = new BatchSimulation(runs).runSimulation();
+                if (results != null) {
+                    for (int r = 0; r < runs.size(); r++) {
+                        results.append(runs.get(r), outputs.get(r));
+                    }
+                }
+                return outputs;
+            }));
+        }
+
+        List<SimulationOutput> outputs = new ArrayList<>(scenarios.size());
+        for (ForkJoinTask<List<SimulationOutput>> task : tasks) {
+            outputs.addAll(task.join());
+        }
+        return outputs;
+    }
+
+    /**
+     * Run every scenario with an event loop generated for its line and routing, see ModelCompiler
+     * Each line and routing is compiled once, before any run starts.
+     * @param scenarios The runs to perform, without tracing, checkpoints, warm-up detection, gradients or lead times
+     * @return The output of each run, in the same order as the scenarios
+     */
+    public List<SimulationOutput> runCompiled(List<SimulationScenario> scenarios){
+        Map<List<Object>, CompiledLine> lines = new HashMap<>();
+        Map<SimulationScenario, CompiledLine> compiled = new IdentityHashMap<>();
+        for (SimulationScenario scenario : scenarios) {
+            Insp1Routing routing = scenario.createRouting();
+            //Tables share their routing class, so they are told apart by the table
+            Object policy = routing instanceof TableRouting ? ((TableRouting) routing).getTable() : routing.getClass();
+            List<Object> key = Arrays.asList(scenario.getModel(), policy);
+            CompiledLine line = lines.get(key);
+            if (line == null) {
+                line = ModelCompiler.compile(scenario.getModel(), scenario.getRouting());
+                lines.put(key, line);
+            }
+            compiled.put(scenario, line);
+        }
+        return run(scenarios, scenario -> compiled.get(scenario).create(scenario).runSimulation(), null);
+    }
+
+    private List<SimulationOutput> run(List<SimulationScenario> scenarios, Function<SimulationScenario, SimulationOutput> simulate,
+                                       BiConsumer<SimulationScenario, SimulationOutput> completed){
+        SimulationTelemetry.getDefault().plan(scenarios);
+        List<ForkJoinTask<SimulationOutput>> tasks = new ArrayList<>(scenarios.size());
+        for (SimulationScenario scenario : scenarios) {
+            tasks.add(pool.submit(() -> {
+                SimulationOutput output = simulate.apply(scenario);
+                if (results != null)
+                    results.append(scenario, output);
+                if (completed != null)
+                    completed.accept(scenario, output);
+                return output;
+            }));
+        }
+
+        List<SimulationOutput> outputs = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<SimulationOutput> task : tasks) {
+            outputs.add(task.join());
+        }
+        return outputs;
+    }
+
+    /**
+     * Record every run to a results file as soon as it finishes
+     * @param results The file to append to, null to stop recording
+     */
+    public void setResultStore(ResultStoreWriter results){
+        this.results = results;
+    }
+
+    public int getParallelism(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the worker threads once all submitted runs finish
+     */
+    public void shutdown(){
+        pool.shutdown();
+    }
+}
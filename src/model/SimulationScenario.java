@@ -0,0 +1,225 @@
+package model;
+
+import java.util.function.Supplier;
+
+public class SimulationScenario {
+    private long seed;
+    private int replication;
+    private int totalProducts;
+    private Supplier<Insp1Routing> routing;
+    private boolean useHistorical;
+    private boolean printState;
+    private boolean useInitialization;
+    private boolean detectWarmup;
+    private boolean estimateGradients;
+    private boolean trackLeadTimes;
+    private Supplier<FutureEventList> eventList = HeapEventList::new;
+    private LineModel model = LineModel.builtIn();
+    private String traceFile;
+    private String checkpointFile;
+    private int checkpointInterval;
+    private SamplingMethod samplingMethod = SamplingMethod.Ziggurat;
+    private InputModel inputModel = InputModel.Exponential;
+    private String design;
+
+    public SimulationScenario(long seed, int totalProducts, Supplier<Insp1Routing> routing, boolean useHistorical, boolean printState, boolean useInitialization){
+        this.seed = seed;
+        this.totalProducts = totalProducts;
+        this.routing = routing;
+        this.useHistorical = useHistorical;
+        this.printState = printState;
+        this.useInitialization = useInitialization;
+    }
+
+    /**
+     * Copy every setting of another scenario
+     */
+    public SimulationScenario(SimulationScenario other){
+        seed = other.seed;
+        replication = other.replication;
+        totalProducts = other.totalProducts;
+        routing = other.routing;
+        useHistorical = other.useHistorical;
+        printState = other.printState;
+        useInitialization = other.useInitialization;
+        detectWarmup = other.detectWarmup;
+        estimateGradients = other.estimateGradients;
+        trackLeadTimes = other.trackLeadTimes;
+        eventList = other.eventList;
+        model = other.model;
+        traceFile = other.traceFile;
+        checkpointFile = other.checkpointFile;
+        checkpointInterval = other.checkpointInterval;
+        samplingMethod = other.samplingMethod;
+        inputModel = other.inputModel;
+        design = other.design;
+    }
+
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return The random number substream of the seed to use, 0 unless set
+     */
+    public int getReplication(){
+        return replication;
+    }
+
+    public void setReplication(int replication){
+        this.replication = replication;
+    }
+
+    public int getTotalProducts(){
+        return totalProducts;
+    }
+
+    /**
+     * Create a fresh routing for a run
+     * Routings may keep state, so runs must not share them
+     * @return A new inspector 1 routing
+     */
+    public Insp1Routing createRouting(){
+        return routing.get();
+    }
+
+    public Supplier<Insp1Routing> getRouting(){
+        return routing;
+    }
+
+    public boolean isUseHistorical(){
+        return useHistorical;
+    }
+
+    public boolean isPrintState(){
+        return printState;
+    }
+
+    public boolean isUseInitialization(){
+        return useInitialization;
+    }
+
+    /**
+     * @return True if the initialization period is chosen by MSER-5 instead of a fixed product count
+     */
+    public boolean isDetectWarmup(){
+        return detectWarmup;
+    }
+
+    public void setDetectWarmup(boolean detectWarmup){
+        this.detectWarmup = detectWarmup;
+    }
+
+    /**
+     * @return True if the run estimates the derivatives of its outputs with respect to the service rates, see GradientEstimator
+     */
+    public boolean isEstimateGradients(){
+        return estimateGradients;
+    }
+
+    public void setEstimateGradients(boolean estimateGradients){
+        this.estimateGradients = estimateGradients;
+    }
+
+    /**
+     * Times are recorded from the initialization snapshot if one is taken, from the start with warm-up detection
+     * @return True if the run records the hold, wait and lead times of every component, see LeadTimeTracker
+     */
+    public boolean isTrackLeadTimes(){
+        return trackLeadTimes;
+    }
+
+    public void setTrackLeadTimes(boolean trackLeadTimes){
+        this.trackLeadTimes = trackLeadTimes;
+    }
+
+    /**
+     * Create the pending event set for a run
+     * @return A new, empty event list
+     */
+    public FutureEventList createEventList(){
+        return eventList.get();
+    }
+
+    public void setEventList(Supplier<FutureEventList> eventList){
+        this.eventList = eventList;
+    }
+
+    /**
+     * @return The production line to simulate, the built-in line unless set
+     */
+    public LineModel getModel(){
+        return model;
+    }
+
+    public void setModel(LineModel model){
+        this.model = model;
+    }
+
+    /**
+     * @return The file to write the binary state trace to, null for no trace
+     */
+    public String getTraceFile(){
+        return traceFile;
+    }
+
+    public void setTraceFile(String traceFile){
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * @return The file the run saves its checkpoints to, null if none
+     */
+    public String getCheckpointFile(){
+        return checkpointFile;
+    }
+
+    public int getCheckpointInterval(){
+        return checkpointInterval;
+    }
+
+    /**
+     * Save a checkpoint periodically, so an interrupted run can continue with Simulation.resume
+     * @param checkpointFile The file to save to, replaced by each checkpoint
+     * @param checkpointInterval How many products between checkpoints
+     */
+    public void setCheckpointFile(String checkpointFile, int checkpointInterval){
+        if (checkpointFile != null && checkpointInterval <= 0)
+            throw new IllegalArgumentException("Invalid checkpoint interval");
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public SamplingMethod getSamplingMethod(){
+        return samplingMethod;
+    }
+
+    /**
+     * @param samplingMethod How service times are generated, not used with historical data
+     */
+    public void setSamplingMethod(SamplingMethod samplingMethod){
+        this.samplingMethod = samplingMethod;
+    }
+
+    public InputModel getInputModel(){
+        return inputModel;
+    }
+
+    /**
+     * @param inputModel Distribution of the service times, not used with historical data
+     */
+    public void setInputModel(InputModel inputModel){
+        this.inputModel = inputModel;
+    }
+
+    /**
+     * @return Name of the design the run belongs to, null if it is only identified by its routing
+     */
+    public String getDesign(){
+        return design;
+    }
+
+    public void setDesign(String design){
+        this.design = design;
+    }
+}
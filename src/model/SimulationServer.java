@@ -0,0 +1,299 @@
+package model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Resident simulation service on the loopback interface
+ * Keeps one warmed-up JVM and replication pool across experiments, so runs don't pay for startup and
+ * JIT compilation. Requests are form encoded, in the query string or a POST body:
+ *
+ *   GET /run?routing=P1First,RotatingPriority&seeds=1,2&replications=1&products=100000&historical=false
+ *
+ * Optional parameters are initialization, detectWarmup, inputModel and sampling. The response streams
+ * one tab-separated row per run as soon as it finishes, after a header row, see SimulationOutput.printRawOutput.
+ * GET /status reports the parallelism and the runs completed so far.
+ */
+public class SimulationServer {
+    static final int DEFAULT_PORT = 8405;
+
+    private final LineModel model;
+    private final SimulationReplicationRunner runner;
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final AtomicLong completedRuns = new AtomicLong();
+
+    /**
+     * Bind the service, call start to accept requests
+     * @param model The line every request simulates
+     * @param port The local port, 0 for any free port
+     * @param parallelism How many runs to perform at once, shared by all requests
+     * @throws IOException If the port can't be bound
+     */
+    public SimulationServer(LineModel model, int port, int parallelism) throws IOException {
+        this.model = model;
+        runner = new SimulationReplicationRunner(parallelism);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requests = Executors.newCachedThreadPool();
+        server.setExecutor(requests);
+        server.createContext("/run", this::handleRun);
+        server.createContext("/status", this::handleStatus);
+    }
+
+    /**
+     * Run short replications of every routing on every pool thread, so the simulation code is compiled
+     * before the first request is timed
+     * @param products How many products each warm-up run simulates
+     */
+    public void warmUp(int products) {
+        List<SimulationScenario> scenarios = new ArrayList<>();
+        for (int r = 0; r < runner.getParallelism(); r++) {
+            for (Supplier<Insp1Routing> routing : routings(null)) {
+                SimulationScenario scenario = new SimulationScenario(r, products, routing, false, false, false);
+                scenario.setModel(model);
+                scenarios.add(scenario);
+            }
+        }
+        runner.runAll(scenarios);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, waiting up to a second for open exchanges, then stop the pool
+     */
+    public void stop() {
+        server.stop(1);
+        requests.shutdown();
+        runner.shutdown();
+    }
+
+    /**
+     * @return The bound port, useful when created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getCompletedRuns() {
+        return completedRuns.get();
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        String status = "parallelism\t" + runner.getParallelism() + "\ncompletedRuns\t" + completedRuns.get() + "\n";
+        byte[] body = status.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleRun(HttpExchange exchange) throws IOException {
+        List<SimulationScenario> scenarios;
+        try {
+            String method = exchange.getRequestMethod();
+            Map<String, String> parameters = parseForm(exchange.getRequestURI().getRawQuery());
+            if (method.equals("POST"))
+                parameters.putAll(parseForm(readBody(exchange.getRequestBody())));
+            else if (!method.equals("GET")) {
+                sendError(exchange, 405, "Use GET or POST");
+                return;
+            }
+            scenarios = createScenarios(parameters);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        PrintStream out = new PrintStream(exchange.getResponseBody(), false, "UTF-8");
+        boolean[] headerWritten = new boolean[1];
+        try {
+            runner.runAll(scenarios, (scenario, output) -> {
+                completedRuns.incrementAndGet();
+                synchronized (out) {
+                    if (!headerWritten[0]) {
+                        out.print("routing\treplication\t");
+                        output.printRawHeader(out);
+                        headerWritten[0] = true;
+                    }
+                    out.print(output.getRouting().getClass().getSimpleName() + "\t" + scenario.getReplication() + "\t");
+                    output.printRawOutput(out);
+                    out.flush();
+                }
+            });
+        } catch (RuntimeException e) {
+            //Headers are sent, report the failure in the stream
+            synchronized (out) {
+                out.println("error\t" + e);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Build the runs of a request, every routing for every seed and replication, then the historical runs
+     */
+    private List<SimulationScenario> createScenarios(Map<String, String> parameters) {
+        List<Supplier<Insp1Routing>> routings = routings(parameters.get("routing"));
+        long[] seeds = parseSeeds(parameters.getOrDefault("seeds", ""));
+        int replications = parseInt(parameters, "replications", 1);
+        int products = parseInt(parameters, "products", 1000000);
+        boolean historical = Boolean.parseBoolean(parameters.get("historical"));
+        boolean useInitialization = Boolean.parseBoolean(parameters.get("initialization"));
+        boolean detectWarmup = Boolean.parseBoolean(parameters.get("detectWarmup"));
+        InputModel inputModel = InputModel.valueOf(parameters.getOrDefault("inputModel", InputModel.Exponential.name()));
+        SamplingMethod sampling = SamplingMethod.valueOf(parameters.getOrDefault("sampling", SamplingMethod.Ziggurat.name()));
+        if (replications <= 0 || products <= 0)
+            throw new IllegalArgumentException("Invalid replications or products");
+        if (seeds.length == 0 && !historical)
+            throw new IllegalArgumentException("No seeds and no historical run requested");
+        if ((historical || inputModel != InputModel.Exponential) && !model.hasTraces())
+            throw new IllegalArgumentException("The line has no historical data");
+
+        List<SimulationScenario> scenarios = new ArrayList<>();
+        for (Supplier<Insp1Routing> routing : routings) {
+            for (long seed : seeds) {
+                for (int r = 0; r < replications; r++) {
+                    SimulationScenario scenario = new SimulationScenario(seed, products, routing, false, false, useInitialization);
+                    scenario.setReplication(r);
+                    scenario.setInputModel(inputModel);
+                    scenario.setSamplingMethod(sampling);
+                    scenarios.add(scenario);
+                }
+            }
+            if (historical)
+                scenarios.add(new SimulationScenario(0, products, routing, true, false, useInitialization));
+        }
+        for (SimulationScenario scenario : scenarios) {
+            scenario.setModel(model);
+            scenario.setDetectWarmup(detectWarmup);
+        }
+        return scenarios;
+    }
+
+    /**
+     * @param names Comma separated routing names, with or without the Insp1Routing prefix, null for all
+     */
+    private static List<Supplier<Insp1Routing>> routings(String names) {
+        List<Supplier<Insp1Routing>> routings = new ArrayList<>();
+        if (names == null) {
+            routings.add(Insp1RoutingP1First::new);
+            routings.add(Insp1RoutingRotatingPriority::new);
+            return routings;
+        }
+        for (String name : names.split(",")) {
+            String routing = name.trim();
+            if (routing.startsWith("Insp1Routing"))
+                routing = routing.substring("Insp1Routing".length());
+            if (routing.equals("P1First"))
+                routings.add(Insp1RoutingP1First::new);
+            else if (routing.equals("RotatingPriority"))
+                routings.add(Insp1RoutingRotatingPriority::new);
+            else
+                throw new IllegalArgumentException("Unknown routing: " + name);
+        }
+        return routings;
+    }
+
+    private static long[] parseSeeds(String value) {
+        if (value.trim().isEmpty())
+            return new long[0];
+        String[] parts = value.split(",");
+        long[] seeds = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            seeds[i] = Long.parseLong(parts[i].trim());
+        }
+        return seeds;
+    }
+
+    private static int parseInt(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> parameters = new HashMap<>();
+        if (form == null)
+            return parameters;
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty())
+                continue;
+            int split = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(split < 0 ? pair : pair.substring(0, split), "UTF-8");
+                String value = split < 0 ? "true" : URLDecoder.decode(pair.substring(split + 1), "UTF-8");
+                parameters.put(name, value);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @param args Optional port, then an optional properties file describing the production line
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LineModel model = LineModel.builtIn();
+        if (args.length > 1) {
+            try {
+                model = LineConfiguration.load(args[1]).compile();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Line configuration error: " + e.getMessage());
+                return;
+            }
+        }
+
+        SimulationServer server = new SimulationServer(model, port, Runtime.getRuntime().availableProcessors());
+        server.warmUp(100000);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/run");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        Thread.currentThread().join();
+    }
+}
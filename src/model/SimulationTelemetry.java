@@ -0,0 +1,248 @@
+package model;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live progress of the runs in this JVM, for watching long campaigns
+ * Runs keep their own counts and add what changed to striped counters every PUBLISH_INTERVAL events,
+ * so the event loop never waits on a lock or another thread, and readers only sum the counters.
+ * Figures lag the runs by up to one interval each. Only runs performed with runSimulation are counted.
+ */
+public class SimulationTelemetry implements SimulationTelemetryMXBean {
+    static final int PUBLISH_INTERVAL = 1 << 12; //events, a power of two
+    static final String OBJECT_NAME = "model:type=SimulationTelemetry";
+    private static final SimulationTelemetry DEFAULT = new SimulationTelemetry();
+
+    private final LongAdder events = new LongAdder();
+    private final DoubleAdder simulatedMinutes = new DoubleAdder();
+    private final LongAdder pendingEvents = new LongAdder();
+    private final LongAdder products = new LongAdder();
+    private final Map<String, LongAdder> productCounts = new ConcurrentHashMap<>();
+    private final LongAdder runsStarted = new LongAdder();
+    private final LongAdder runsCompleted = new LongAdder();
+
+    //Campaign planned through SimulationReplicationRunner, written by the submitting threads only
+    private volatile long plannedRuns;
+    private volatile long plannedProducts;
+    private volatile long campaignStart = System.nanoTime();
+    private volatile long campaignStartEvents;
+    private volatile long campaignStartProducts;
+    private volatile long completedBase; //runs completed before the last reset
+
+    /**
+     * @return The telemetry runs report to
+     */
+    public static SimulationTelemetry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Publish the default telemetry to the platform MBean server, once per JVM
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(DEFAULT, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            //Registered before
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register telemetry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Add runs to the campaign, for the runs remaining and the estimated time
+     * A new campaign starts when the previous one has no runs remaining.
+     */
+    synchronized void plan(List<SimulationScenario> scenarios) {
+        long total = 0;
+        for (SimulationScenario scenario : scenarios) {
+            total += scenario.getTotalProducts();
+        }
+        if (getRunsRemaining() == 0) {
+            campaignStartEvents = events.sum();
+            campaignStartProducts = products.sum();
+            campaignStart = System.nanoTime();
+            plannedRuns = runsCompleted.sum();
+            plannedProducts = campaignStartProducts;
+        }
+        plannedRuns += scenarios.size();
+        plannedProducts += total;
+    }
+
+    /**
+     * Start reporting one or more runs stepped together by one thread
+     * @param model The line of the runs
+     * @param runs How many runs the counts cover
+     * @param events Events processed so far, nonzero for a resumed run
+     * @param clock Total simulated time so far
+     * @param produced Total products of each workstation so far
+     * @return The progress for the running thread to publish to
+     */
+    Progress startRun(LineModel model, int runs, long events, double clock, int[] produced) {
+        LongAdder[] counts = new LongAdder[produced.length];
+        for (int w = 0; w < produced.length; w++) {
+            counts[w] = productCounts.computeIfAbsent(model.getProductName(w), name -> new LongAdder());
+        }
+        runsStarted.add(runs);
+        return new Progress(this, runs, counts, events, clock, produced);
+    }
+
+    @Override
+    public long getEventsProcessed() {
+        return events.sum();
+    }
+
+    /**
+     * @return Mean event rate since the campaign started
+     */
+    @Override
+    public double getEventsPerSecond() {
+        return (events.sum() - campaignStartEvents) / elapsedSeconds();
+    }
+
+    /**
+     * @return Simulated time of all runs together
+     */
+    @Override
+    public double getSimulatedMinutes() {
+        return simulatedMinutes.sum();
+    }
+
+    /**
+     * @return Products completed by type, all runs together
+     */
+    @Override
+    public Map<String, Long> getProductsCompleted() {
+        Map<String, Long> completed = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : productCounts.entrySet()) {
+            completed.put(entry.getKey(), entry.getValue().sum());
+        }
+        return completed;
+    }
+
+    /**
+     * @return Events queued by the active runs
+     */
+    @Override
+    public long getPendingEvents() {
+        return pendingEvents.sum();
+    }
+
+    @Override
+    public long getActiveRuns() {
+        return runsStarted.sum() - runsCompleted.sum();
+    }
+
+    @Override
+    public long getRunsCompleted() {
+        return runsCompleted.sum() - completedBase;
+    }
+
+    @Override
+    public long getRunsRemaining() {
+        return Math.max(0, plannedRuns - runsCompleted.sum());
+    }
+
+    /**
+     * @return Seconds until the campaign's planned products are done at the rate so far, -1 if unknown
+     */
+    @Override
+    public double getEstimatedSecondsRemaining() {
+        long done = products.sum();
+        long remaining = plannedProducts - done;
+        if (remaining <= 0)
+            return getRunsRemaining() == 0 ? 0 : -1;
+        long campaignProducts = done - campaignStartProducts;
+        if (campaignProducts <= 0)
+            return -1;
+        return remaining * elapsedSeconds() / campaignProducts;
+    }
+
+    /**
+     * Zero the counts and end the campaign, active runs and pending events still count the runs in progress
+     */
+    @Override
+    public synchronized void reset() {
+        events.reset();
+        simulatedMinutes.reset();
+        products.reset();
+        for (LongAdder count : productCounts.values()) {
+            count.reset();
+        }
+        completedBase = runsCompleted.sum();
+        plannedRuns = completedBase;
+        plannedProducts = 0;
+        campaignStartEvents = 0;
+        campaignStartProducts = 0;
+        campaignStart = System.nanoTime();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1, System.nanoTime() - campaignStart) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * The published counts of runs on one thread, only that thread may call it
+     * Keeps the last values published, so each publication adds only what changed.
+     */
+    static final class Progress {
+        private final SimulationTelemetry telemetry;
+        private final int runs;
+        private final LongAdder[] productCounts; //per workstation
+        private long events;
+        private double clock;
+        private final int[] produced;
+        private int pending;
+
+        private Progress(SimulationTelemetry telemetry, int runs, LongAdder[] productCounts, long events, double clock, int[] produced) {
+            this.telemetry = telemetry;
+            this.runs = runs;
+            this.productCounts = productCounts;
+            this.events = events;
+            this.clock = clock;
+            this.produced = produced.clone();
+        }
+
+        /**
+         * @param events Events processed so far
+         * @param clock Total simulated time so far
+         * @param produced Total products of each workstation so far
+         * @param pending Events currently queued
+         */
+        void publish(long events, double clock, int[] produced, int pending) {
+            telemetry.events.add(events - this.events);
+            telemetry.simulatedMinutes.add(clock - this.clock);
+            telemetry.pendingEvents.add(pending - this.pending);
+            int total = 0;
+            for (int w = 0; w < produced.length; w++) {
+                int added = produced[w] - this.produced[w];
+                if (added != 0)
+                    productCounts[w].add(added);
+                total += added;
+                this.produced[w] = produced[w];
+            }
+            telemetry.products.add(total);
+            this.events = events;
+            this.clock = clock;
+            this.pending = pending;
+        }
+
+        /**
+         * Publish the final counts and mark the runs completed
+         */
+        void finish(long events, double clock, int[] produced) {
+            publish(events, clock, produced, 0);
+            telemetry.runsCompleted.add(runs);
+        }
+    }
+}
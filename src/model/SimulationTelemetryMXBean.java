@@ -0,0 +1,28 @@
+package model;
+
+import java.util.Map;
+
+/**
+ * Management interface of SimulationTelemetry, published as model:type=SimulationTelemetry
+ */
+public interface SimulationTelemetryMXBean {
+    long getEventsProcessed();
+
+    double getEventsPerSecond();
+
+    double getSimulatedMinutes();
+
+    Map<String, Long> getProductsCompleted();
+
+    long getPendingEvents();
+
+    long getActiveRuns();
+
+    long getRunsCompleted();
+
+    long getRunsRemaining();
+
+    double getEstimatedSecondsRemaining();
+
+    void reset();
+}
@@ -0,0 +1,235 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Time-weighted state of every station and buffer of a run
+ * Inspectors are inspecting or blocked holding a component no buffer has room for, workstations
+ * are assembling or starved waiting for components. Each buffer keeps the time spent at every
+ * level, which gives its mean occupancy and occupancy histogram. Accumulators are primitive
+ * arrays updated when a state changes, so collecting costs a few additions per event.
+ */
+public class StationMetrics {
+    private final LineModel model;
+    private final int inspectorCount;
+    private final int levels; //largest capacity + 1
+
+    private double start;
+    private double end;
+    private final double[] busyTime; //per station, inspectors then workstations
+    private final double[] busySince;
+    private final boolean[] busy;
+    private final double[] blockedTime; //per inspector
+    private final double[] blockedSince;
+    private final boolean[] blocked;
+    private final double[] levelTime; //buffers x levels
+    private final double[] levelSince;
+    private final int[] level;
+
+    public StationMetrics(LineModel model) {
+        this.model = model;
+        inspectorCount = model.getInspectorCount();
+        int stations = inspectorCount + model.getWorkstationCount();
+        busyTime = new double[stations];
+        busySince = new double[stations];
+        busy = new boolean[stations];
+        blockedTime = new double[inspectorCount];
+        blockedSince = new double[inspectorCount];
+        blocked = new boolean[inspectorCount];
+        int maxCapacity = 0;
+        for (int capacity : model.getBufferCapacities()) {
+            maxCapacity = Math.max(maxCapacity, capacity);
+        }
+        levels = maxCapacity + 1;
+        levelTime = new double[model.getBufferCount() * levels];
+        levelSince = new double[model.getBufferCount()];
+        level = new int[model.getBufferCount()];
+    }
+
+    /**
+     * @param station The inspector index, or the inspector count plus the workstation index
+     */
+    public void setBusy(int station, boolean state, double clock) {
+        if (busy[station] == state)
+            return;
+        if (state)
+            busySince[station] = clock;
+        else
+            busyTime[station] += clock - busySince[station];
+        busy[station] = state;
+    }
+
+    public void setBlocked(int inspector, boolean state, double clock) {
+        if (blocked[inspector] == state)
+            return;
+        if (state)
+            blockedSince[inspector] = clock;
+        else
+            blockedTime[inspector] += clock - blockedSince[inspector];
+        blocked[inspector] = state;
+    }
+
+    public void setLevel(int buffer, int newLevel, double clock) {
+        levelTime[buffer * levels + level[buffer]] += clock - levelSince[buffer];
+        levelSince[buffer] = clock;
+        level[buffer] = newLevel;
+    }
+
+    /**
+     * Discard everything before a time, keeping the current states
+     */
+    public void reset(double clock) {
+        start = clock;
+        Arrays.fill(busyTime, 0);
+        Arrays.fill(busySince, clock);
+        Arrays.fill(blockedTime, 0);
+        Arrays.fill(blockedSince, clock);
+        Arrays.fill(levelTime, 0);
+        Arrays.fill(levelSince, clock);
+    }
+
+    /**
+     * Close the open periods at the end of the run
+     */
+    public void finish(double clock) {
+        for (int s = 0; s < busy.length; s++) {
+            if (busy[s]) {
+                busyTime[s] += clock - busySince[s];
+                busySince[s] = clock;
+            }
+        }
+        for (int i = 0; i < inspectorCount; i++) {
+            if (blocked[i]) {
+                blockedTime[i] += clock - blockedSince[i];
+                blockedSince[i] = clock;
+            }
+        }
+        for (int b = 0; b < level.length; b++) {
+            setLevel(b, level[b], clock);
+        }
+        end = clock;
+    }
+
+    /**
+     * Save the accumulators and open periods, see readState
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeDouble(start);
+        for (int s = 0; s < busy.length; s++) {
+            out.writeBoolean(busy[s]);
+            out.writeDouble(busyTime[s]);
+            out.writeDouble(busySince[s]);
+        }
+        for (int i = 0; i < inspectorCount; i++) {
+            out.writeBoolean(blocked[i]);
+            out.writeDouble(blockedTime[i]);
+            out.writeDouble(blockedSince[i]);
+        }
+        for (int b = 0; b < level.length; b++) {
+            out.writeInt(level[b]);
+            out.writeDouble(levelSince[b]);
+            for (int l = 0; l < levels; l++) {
+                out.writeDouble(levelTime[b * levels + l]);
+            }
+        }
+    }
+
+    /**
+     * Continue from a state saved by writeState, for the same line
+     */
+    public void readState(DataInput in) throws IOException {
+        start = in.readDouble();
+        for (int s = 0; s < busy.length; s++) {
+            busy[s] = in.readBoolean();
+            busyTime[s] = in.readDouble();
+            busySince[s] = in.readDouble();
+        }
+        for (int i = 0; i < inspectorCount; i++) {
+            blocked[i] = in.readBoolean();
+            blockedTime[i] = in.readDouble();
+            blockedSince[i] = in.readDouble();
+        }
+        for (int b = 0; b < level.length; b++) {
+            level[b] = in.readInt();
+            if (level[b] < 0 || level[b] >= levels)
+                throw new IOException("Invalid buffer level");
+            levelSince[b] = in.readDouble();
+            for (int l = 0; l < levels; l++) {
+                levelTime[b * levels + l] = in.readDouble();
+            }
+        }
+    }
+
+    public LineModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return Length of the measured period
+     */
+    public double getDuration() {
+        return end - start;
+    }
+
+    /**
+     * @return Fraction of the time the station was inspecting or assembling
+     */
+    public double getBusyFraction(int station) {
+        return busyTime[station] / getDuration();
+    }
+
+    /**
+     * @return Fraction of the time the inspector held a component with no room for it
+     */
+    public double getBlockedFraction(int inspector) {
+        return blockedTime[inspector] / getDuration();
+    }
+
+    /**
+     * @return Fraction of the time the workstation waited for components
+     */
+    public double getStarvedFraction(int workstation) {
+        return 1 - getBusyFraction(inspectorCount + workstation);
+    }
+
+    /**
+     * @return Fraction of the time the buffer held a number of components
+     */
+    public double getLevelFraction(int buffer, int bufferLevel) {
+        return levelTime[buffer * levels + bufferLevel] / getDuration();
+    }
+
+    /**
+     * @return Time-weighted mean number of components in the buffer
+     */
+    public double getMeanLevel(int buffer) {
+        double sum = 0;
+        for (int l = 1; l < levels; l++) {
+            sum += l * levelTime[buffer * levels + l];
+        }
+        return sum / getDuration();
+    }
+
+    public void printOutput() {
+        System.out.println("Station Utilization:  busy  blocked  starved");
+        for (int i = 0; i < inspectorCount; i++) {
+            System.out.printf("%-8s %18.4f%% %7.4f%%\n", model.getInspectorName(i), getBusyFraction(i) * 100, getBlockedFraction(i) * 100);
+        }
+        for (int w = 0; w < model.getWorkstationCount(); w++) {
+            System.out.printf("%-8s %18.4f%% %17.4f%%\n", model.getWorkstationName(w), getBusyFraction(inspectorCount + w) * 100,
+                    getStarvedFraction(w) * 100);
+        }
+        System.out.println();
+        System.out.println("Buffer Occupancy:     mean  time at each level");
+        for (int b = 0; b < level.length; b++) {
+            StringBuilder histogram = new StringBuilder();
+            for (int l = 0; l <= model.getBufferCapacity(b); l++) {
+                histogram.append(String.format(" %d:%.1f%%", l, getLevelFraction(b, l) * 100));
+            }
+            System.out.printf("%-8s %15.4f %s\n", model.getBufferName(b), getMeanLevel(b), histogram);
+        }
+    }
+}
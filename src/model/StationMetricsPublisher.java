@@ -0,0 +1,127 @@
+package model;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes the station metrics of each run to the MetricsRegistry and as JFR events
+ * The project targets Java 8, where jdk.jfr can't be compiled against, so the event types are
+ * defined at runtime through jdk.jfr.EventFactory when the JVM has it (11+). Events are only
+ * built while a recording is enabled for them, e.g. java -XX:StartFlightRecording ...
+ * Event names are model.StationUtilization and model.BufferOccupancy.
+ */
+public class StationMetricsPublisher {
+    private static final JfrEventType STATION_EVENT = JfrEventType.create("model.StationUtilization", "Station Utilization",
+            new String[]{"station", "busy", "blocked", "starved", "measuredTime"},
+            new Class<?>[]{String.class, double.class, double.class, double.class, double.class});
+    private static final JfrEventType BUFFER_EVENT = JfrEventType.create("model.BufferOccupancy", "Buffer Occupancy",
+            new String[]{"buffer", "capacity", "meanLevel", "fullFraction", "emptyFraction"},
+            new Class<?>[]{String.class, int.class, double.class, double.class, double.class});
+
+    /**
+     * Publish the station metrics of a run, if it has any
+     * Registry names start with the line and design, e.g. built-in/P1First/station.ws1.busy
+     * @param design The design of the run, as named in the results file
+     * @param output The output of the run
+     */
+    public static void publish(String design, SimulationOutput output) {
+        StationMetrics metrics = output.getStationMetrics();
+        if (metrics == null)
+            return;
+        LineModel model = metrics.getModel();
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        String prefix = model.getConfiguration().getName() + "/" + design + "/";
+        int inspectors = model.getInspectorCount();
+
+        for (int i = 0; i < inspectors; i++) {
+            String name = model.getInspectorName(i);
+            registry.record(prefix + "station." + name + ".busy", metrics.getBusyFraction(i));
+            registry.record(prefix + "station." + name + ".blocked", metrics.getBlockedFraction(i));
+            if (STATION_EVENT != null)
+                STATION_EVENT.emit(name, metrics.getBusyFraction(i), metrics.getBlockedFraction(i), 0.0, metrics.getDuration());
+        }
+        for (int w = 0; w < model.getWorkstationCount(); w++) {
+            String name = model.getWorkstationName(w);
+            registry.record(prefix + "station." + name + ".busy", metrics.getBusyFraction(inspectors + w));
+            registry.record(prefix + "station." + name + ".starved", metrics.getStarvedFraction(w));
+            if (STATION_EVENT != null)
+                STATION_EVENT.emit(name, metrics.getBusyFraction(inspectors + w), 0.0, metrics.getStarvedFraction(w),
+                        metrics.getDuration());
+        }
+        for (int b = 0; b < model.getBufferCount(); b++) {
+            String name = model.getBufferName(b);
+            int capacity = model.getBufferCapacity(b);
+            registry.record(prefix + "buffer." + name + ".meanLevel", metrics.getMeanLevel(b));
+            registry.record(prefix + "buffer." + name + ".full", metrics.getLevelFraction(b, capacity));
+            if (BUFFER_EVENT != null)
+                BUFFER_EVENT.emit(name, capacity, metrics.getMeanLevel(b), metrics.getLevelFraction(b, capacity),
+                        metrics.getLevelFraction(b, 0));
+        }
+    }
+
+    /**
+     * A JFR event type defined through reflection
+     */
+    private static final class JfrEventType {
+        private final Object factory;
+        private final Method newEvent;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+
+        private JfrEventType(Object factory, Method newEvent, Method shouldCommit, Method set, Method commit) {
+            this.factory = factory;
+            this.newEvent = newEvent;
+            this.shouldCommit = shouldCommit;
+            this.set = set;
+            this.commit = commit;
+        }
+
+        /**
+         * @return The event type, null if the JVM has no JFR
+         */
+        @SuppressWarnings("unchecked")
+        static JfrEventType create(String name, String label, String[] fields, Class<?>[] types) {
+            try {
+                Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+                Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+                Constructor<?> descriptor = descriptorClass.getConstructor(Class.class, String.class);
+
+                List<Object> annotations = new ArrayList<>();
+                annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Name"), name));
+                annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Label"), label));
+                annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Category"),
+                        new String[]{"Simulation"}));
+                List<Object> values = new ArrayList<>();
+                for (int i = 0; i < fields.length; i++) {
+                    values.add(descriptor.newInstance(types[i], fields[i]));
+                }
+                Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, values);
+                return new JfrEventType(factory, factoryClass.getMethod("newEvent"), eventClass.getMethod("shouldCommit"),
+                        eventClass.getMethod("set", int.class, Object.class), eventClass.getMethod("commit"));
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                return null;
+            }
+        }
+
+        void emit(Object... values) {
+            try {
+                Object event = newEvent.invoke(factory);
+                if (!(Boolean) shouldCommit.invoke(event))
+                    return;
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (ReflectiveOperationException e) {
+                //JFR refused the event, metrics are still in the registry
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Exact long-run averages of a line with exponential service times, without simulation
+ * The line is then a continuous-time Markov chain over the component each inspector holds and whether
+ * it is blocked, the buffer levels, the busy workstations and the routing state. The reachable states
+ * are enumerated with the same event rules as Simulation, and the balance equations of the chain are
+ * solved by Gauss-Seidel iteration.
+ */
+public class SteadyStateSolver {
+    private static final int ROUTING_BITS = 16; //routing states are packed below the line state
+
+    private final LineModel model;
+    private final Supplier<Insp1Routing> routing;
+
+    //Mixed radix of the line state, inspector component and blocked flag, then buffer levels, then busy workstations
+    private final int inspectorCount;
+    private final int workstationCount;
+    private final int bufferCount;
+
+    //Scratch state of the transition being applied
+    private final int[] choice; //index into the inspector's components
+    private final boolean[] blocked;
+    private final int[] levels;
+    private final boolean[] busy;
+    private final boolean[] restarted; //inspectors starting a new component, chosen after the transition
+    private Insp1Routing current;
+
+    //States and transitions found so far
+    private Map<Long, Integer> index;
+    private long[] states;
+    private int stateCount;
+    private int transitionCount;
+    private int[] transitionFrom = new int[1024];
+    private int[] transitionTo = new int[1024];
+    private double[] transitionRate = new double[1024];
+
+    /**
+     * @param model The line, whose source rates give the exponential service times
+     * @param routing Creates the inspector 1 routing, which must only depend on its state and the buffer levels
+     */
+    public SteadyStateSolver(LineModel model, Supplier<Insp1Routing> routing) {
+        this.model = model;
+        this.routing = routing;
+        inspectorCount = model.getInspectorCount();
+        workstationCount = model.getWorkstationCount();
+        bufferCount = model.getBufferCount();
+        choice = new int[inspectorCount];
+        blocked = new boolean[inspectorCount];
+        levels = new int[bufferCount];
+        busy = new boolean[workstationCount];
+        restarted = new boolean[inspectorCount];
+    }
+
+    /**
+     * Enumerate the chain and solve for its steady state
+     * @param tolerance Largest change of any state probability, relative to the largest one, at which to stop
+     * @param maxIterations Sweeps after which to stop anyway
+     * @return The steady state measures
+     */
+    public Result solve(double tolerance, int maxIterations) {
+        if (!(tolerance > 0) || maxIterations <= 0)
+            throw new IllegalArgumentException("Invalid stopping rule");
+        current = routing.get();
+        transitionCount = 0;
+
+        //Breadth first search from the empty line, all inspectors on their first component
+        index = new HashMap<>();
+        states = new long[1024];
+        stateCount = 0;
+        decode(0);
+        addState(encode());
+        for (int s = 0; s < stateCount; s++) {
+            for (int i = 0; i < inspectorCount; i++) {
+                decode(states[s]);
+                if (blocked[i])
+                    continue;
+                double rate = model.getSourceRate(model.getInspectorSources(i)[choice[i]]);
+                completeInspection(i);
+                addSuccessors(s, rate);
+            }
+            for (int w = 0; w < workstationCount; w++) {
+                decode(states[s]);
+                if (!busy[w])
+                    continue;
+                double rate = model.getSourceRate(model.getWorkstationSource(w));
+                busy[w] = false;
+                startAssembly(w);
+                addSuccessors(s, rate);
+            }
+        }
+
+        //Incoming transitions of every state, and the total rate out of it
+        int[] incomingStart = new int[stateCount + 1];
+        double[] outRate = new double[stateCount];
+        for (int t = 0; t < transitionCount; t++) {
+            incomingStart[transitionTo[t] + 1]++;
+            outRate[transitionFrom[t]] += transitionRate[t];
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (outRate[s] == 0)
+                throw new IllegalStateException("The line can deadlock");
+            incomingStart[s + 1] += incomingStart[s];
+        }
+        int[] incomingFrom = new int[transitionCount];
+        double[] incomingRate = new double[transitionCount];
+        int[] fill = Arrays.copyOf(incomingStart, stateCount);
+        for (int t = 0; t < transitionCount; t++) {
+            int slot = fill[transitionTo[t]]++;
+            incomingFrom[slot] = transitionFrom[t];
+            incomingRate[slot] = transitionRate[t];
+        }
+
+        //Gauss-Seidel on the balance equations, pi(s) * out(s) = sum of pi(r) * q(r, s)
+        double[] probability = new double[stateCount];
+        Arrays.fill(probability, 1.0 / stateCount);
+        int iterations = 0;
+        double change = Double.POSITIVE_INFINITY;
+        while (change > tolerance && iterations < maxIterations) {
+            iterations++;
+            change = 0;
+            double total = 0;
+            for (int s = 0; s < stateCount; s++) {
+                double inflow = 0;
+                for (int t = incomingStart[s]; t < incomingStart[s + 1]; t++) {
+                    inflow += probability[incomingFrom[t]] * incomingRate[t];
+                }
+                double next = inflow / outRate[s];
+                change = Math.max(change, Math.abs(next - probability[s]));
+                probability[s] = next;
+                total += next;
+            }
+            double largest = 0;
+            for (int s = 0; s < stateCount; s++) {
+                probability[s] /= total;
+                largest = Math.max(largest, probability[s]);
+            }
+            change /= total * largest;
+        }
+
+        //Long-run averages
+        double[] throughput = new double[workstationCount];
+        double[] workstationBusy = new double[workstationCount];
+        double[] inspectorBlocked = new double[inspectorCount];
+        double[] meanLevel = new double[bufferCount];
+        for (int s = 0; s < stateCount; s++) {
+            decode(states[s]);
+            double p = probability[s];
+            for (int w = 0; w < workstationCount; w++) {
+                if (busy[w]) {
+                    workstationBusy[w] += p;
+                    throughput[w] += p * model.getSourceRate(model.getWorkstationSource(w));
+                }
+            }
+            for (int i = 0; i < inspectorCount; i++) {
+                if (blocked[i])
+                    inspectorBlocked[i] += p;
+            }
+            for (int b = 0; b < bufferCount; b++) {
+                meanLevel[b] += p * levels[b];
+            }
+        }
+        return new Result(model, current, stateCount, transitionCount, iterations, change, throughput, workstationBusy, inspectorBlocked,
+                meanLevel);
+    }
+
+    /**
+     * Route the component an inspector finished, like Simulation.processArrivalEvent
+     */
+    private void completeInspection(int inspector) {
+        int component = model.getInspectorComponents(inspector)[choice[inspector]];
+        int buffer = determineDestination(component);
+        if (buffer == -1) {
+            blocked[inspector] = true;
+            return;
+        }
+        levels[buffer]++;
+        restarted[inspector] = true;
+        startAssembly(model.getBufferWorkstation(buffer));
+    }
+
+    /**
+     * Start a workstation if it is idle and has every component, like Simulation.scheduleDepartureEvent
+     */
+    private void startAssembly(int workstation) {
+        if (busy[workstation])
+            return;
+        int start = model.getWorkstationBufferStart(workstation);
+        int end = model.getWorkstationBufferEnd(workstation);
+        for (int buffer = start; buffer < end; buffer++) {
+            if (levels[buffer] == 0)
+                return;
+        }
+        for (int buffer = start; buffer < end; buffer++) {
+            levels[buffer]--;
+        }
+        busy[workstation] = true;
+        releaseHolds();
+    }
+
+    /**
+     * Unblock inspectors whose buffer has space, in inspector order, like Simulation.processHoldEvent
+     */
+    private void releaseHolds() {
+        for (int inspector = 0; inspector < inspectorCount; inspector++) {
+            if (!blocked[inspector])
+                continue;
+            int buffer = determineDestination(model.getInspectorComponents(inspector)[choice[inspector]]);
+            if (buffer == -1)
+                continue;
+            levels[buffer]++;
+            blocked[inspector] = false;
+            restarted[inspector] = true;
+            startAssembly(model.getBufferWorkstation(buffer));
+        }
+    }
+
+    private int determineDestination(int component) {
+        int[] candidates = model.getComponentBuffers(component);
+        int[] capacities = model.getBufferCapacities();
+        if (candidates.length == 1) {
+            int buffer = candidates[0];
+            return levels[buffer] < capacities[buffer] ? buffer : -1;
+        }
+        int destination = current.determineDestination(levels, capacities, candidates);
+        return destination == -1 ? -1 : candidates[destination];
+    }
+
+    /**
+     * Add a transition to every component choice of the restarted inspectors
+     */
+    private void addSuccessors(int from, double rate) {
+        //Odometer over the choices of the restarted inspectors
+        for (int i = 0; i < inspectorCount; i++) {
+            if (restarted[i])
+                choice[i] = 0;
+        }
+        while (true) {
+            double probability = 1;
+            for (int i = 0; i < inspectorCount; i++) {
+                if (restarted[i])
+                    probability *= getChoiceProbability(i, choice[i]);
+            }
+            if (probability > 0) {
+                int to = addState(encode());
+                if (to != from)
+                    addTransition(from, to, rate * probability);
+            }
+
+            int i = 0;
+            while (i < inspectorCount && (!restarted[i] || ++choice[i] == model.getInspectorComponents(i).length)) {
+                if (restarted[i])
+                    choice[i] = 0;
+                i++;
+            }
+            if (i == inspectorCount)
+                break;
+        }
+        Arrays.fill(restarted, false);
+    }
+
+    /**
+     * @return The index of a state, added if it is new
+     */
+    private int addState(long state) {
+        Integer existing = index.get(state);
+        if (existing != null)
+            return existing;
+        if (stateCount == states.length)
+            states = Arrays.copyOf(states, stateCount * 2);
+        states[stateCount] = state;
+        index.put(state, stateCount);
+        return stateCount++;
+    }
+
+    private double getChoiceProbability(int inspector, int component) {
+        double[] cumulative = model.getInspectorCumulativeWeights(inspector);
+        return component == 0 ? cumulative[0] : cumulative[component] - cumulative[component - 1];
+    }
+
+    private void addTransition(int from, int to, double rate) {
+        if (transitionCount == transitionFrom.length) {
+            transitionFrom = Arrays.copyOf(transitionFrom, transitionCount * 2);
+            transitionTo = Arrays.copyOf(transitionTo, transitionCount * 2);
+            transitionRate = Arrays.copyOf(transitionRate, transitionCount * 2);
+        }
+        transitionFrom[transitionCount] = from;
+        transitionTo[transitionCount] = to;
+        transitionRate[transitionCount] = rate;
+        transitionCount++;
+    }
+
+    private long encode() {
+        long state = 0;
+        try {
+            for (int i = 0; i < inspectorCount; i++) {
+                state = Math.addExact(Math.multiplyExact(state, 2L * model.getInspectorComponents(i).length),
+                        choice[i] * 2 + (blocked[i] ? 1 : 0));
+            }
+            for (int b = 0; b < bufferCount; b++) {
+                state = Math.addExact(Math.multiplyExact(state, model.getBufferCapacity(b) + 1L), levels[b]);
+            }
+            for (int w = 0; w < workstationCount; w++) {
+                state = Math.addExact(Math.multiplyExact(state, 2L), busy[w] ? 1 : 0);
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The line has too many states to solve");
+        }
+        long routingState = current.getState();
+        if (routingState < 0 || routingState >= 1 << ROUTING_BITS || state >= 1L << (63 - ROUTING_BITS))
+            throw new IllegalArgumentException("The line has too many states to solve");
+        return state << ROUTING_BITS | routingState;
+    }
+
+    private void decode(long state) {
+        current.setState(state & ((1 << ROUTING_BITS) - 1));
+        state >>>= ROUTING_BITS;
+        for (int w = workstationCount - 1; w >= 0; w--) {
+            busy[w] = (state & 1) == 1;
+            state >>>= 1;
+        }
+        for (int b = bufferCount - 1; b >= 0; b--) {
+            int radix = model.getBufferCapacity(b) + 1;
+            levels[b] = (int) (state % radix);
+            state /= radix;
+        }
+        for (int i = inspectorCount - 1; i >= 0; i--) {
+            int radix = 2 * model.getInspectorComponents(i).length;
+            int value = (int) (state % radix);
+            choice[i] = value / 2;
+            blocked[i] = value % 2 == 1;
+            state /= radix;
+        }
+    }
+
+    public static class Result {
+        private final LineModel model;
+        private final Insp1Routing routing;
+        private final int states;
+        private final int transitions;
+        private final int iterations;
+        private final double change;
+        private final double[] throughput;
+        private final double[] workstationBusy;
+        private final double[] inspectorBlocked;
+        private final double[] meanLevel;
+
+        Result(LineModel model, Insp1Routing routing, int states, int transitions, int iterations, double change,
+               double[] throughput, double[] workstationBusy, double[] inspectorBlocked, double[] meanLevel) {
+            this.model = model;
+            this.routing = routing;
+            this.states = states;
+            this.transitions = transitions;
+            this.iterations = iterations;
+            this.change = change;
+            this.throughput = throughput;
+            this.workstationBusy = workstationBusy;
+            this.inspectorBlocked = inspectorBlocked;
+            this.meanLevel = meanLevel;
+        }
+
+        public int getStates() {
+            return states;
+        }
+
+        public int getTransitions() {
+            return transitions;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * @return Relative change of the last sweep, at most the tolerance if the iteration converged
+         */
+        public double getChange() {
+            return change;
+        }
+
+        /**
+         * @return Products per minute of one workstation
+         */
+        public double getThroughput(int workstation) {
+            return throughput[workstation];
+        }
+
+        public double getTotalThroughput() {
+            double total = 0;
+            for (double value : throughput) {
+                total += value;
+            }
+            return total;
+        }
+
+        /**
+         * Equal in the long run to StationMetrics.getBusyFraction of the workstation's station
+         * @return Probability a workstation is assembling
+         */
+        public double getWorkstationBusy(int workstation) {
+            return workstationBusy[workstation];
+        }
+
+        /**
+         * Equal in the long run to StationMetrics.getStarvedFraction
+         * @return Probability a workstation is idle, waiting for components
+         */
+        public double getWorkstationIdle(int workstation) {
+            return 1 - workstationBusy[workstation];
+        }
+
+        /**
+         * Equal in the long run to StationMetrics.getBlockedFraction. SimulationOutput's idle fraction is
+         * not the same quantity: like the original model it counts a change of state from the event before
+         * the one making it, so it runs somewhat higher or lower than this.
+         * @return Probability an inspector is blocked by full buffers
+         */
+        public double getInspectorBlocked(int inspector) {
+            return inspectorBlocked[inspector];
+        }
+
+        public double getMeanLevel(int buffer) {
+            return meanLevel[buffer];
+        }
+
+        public void printOutput() {
+            System.out.println("------------------------------");
+            System.out.println("Steady State Solution");
+            System.out.println("Inspector 1 Routing: " + routing.getClass().getSimpleName());
+            System.out.println("States:              " + states + " (" + transitions + " transitions)");
+            System.out.printf("Gauss-Seidel:        %d sweeps, change %.2e\n", iterations, change);
+            System.out.println();
+            System.out.println("Throughput:");
+            for (int w = 0; w < throughput.length; w++) {
+                System.out.printf("%2s: %8.4f units/minute\n", model.getProductName(w), throughput[w]);
+            }
+            System.out.println();
+            System.out.println("Workstation Busy/Idle Probability (StationMetrics busy/starved):");
+            for (int w = 0; w < workstationBusy.length; w++) {
+                System.out.printf("%s: %8.4f%% %8.4f%%\n", model.getWorkstationName(w), workstationBusy[w] * 100,
+                        getWorkstationIdle(w) * 100);
+            }
+            System.out.println();
+            System.out.println("Inspector Blocked Probability (StationMetrics blocked, not the simulation's idle):");
+            for (int i = 0; i < inspectorBlocked.length; i++) {
+                System.out.printf("Inspector %d: %8.4f%%\n", i + 1, inspectorBlocked[i] * 100);
+            }
+            System.out.println();
+            System.out.println("Mean Buffer Level:");
+            for (int b = 0; b < meanLevel.length; b++) {
+                System.out.printf("%s: %6.4f\n", model.getBufferName(b), meanLevel[b]);
+            }
+            System.out.println("------------------------------");
+        }
+    }
+}
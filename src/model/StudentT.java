@@ -0,0 +1,104 @@
+package model;
+
+/**
+ * Quantiles of the Student-t and standard normal distributions
+ */
+public class StudentT {
+    private StudentT() {
+
+    }
+
+    /**
+     * Student-t quantile, Hill's algorithm 396 (1970)
+     * @param p The lower tail probability, in (0, 1)
+     * @param degreesOfFreedom Degrees of freedom, at least 1
+     * @return The value t with P(T <= t) = p
+     */
+    public static double quantile(double p, long degreesOfFreedom) {
+        if (p <= 0 || p >= 1 || degreesOfFreedom < 1)
+            throw new IllegalArgumentException("Invalid quantile arguments");
+        if (p == 0.5)
+            return 0;
+        if (p < 0.5)
+            return -quantile(1 - p, degreesOfFreedom);
+
+        double twoTail = 2 * (1 - p);
+        double n = degreesOfFreedom;
+        if (degreesOfFreedom == 1) {
+            double angle = twoTail * Math.PI / 2;
+            return Math.cos(angle) / Math.sin(angle);
+        }
+        if (degreesOfFreedom == 2)
+            return Math.sqrt(2 / (twoTail * (2 - twoTail)) - 2);
+
+        double a = 1 / (n - 0.5);
+        double b = 48 / (a * a);
+        double c = ((20700 * a / b - 98) * a - 16) * a + 96.36;
+        double d = ((94.5 / (b + c) - 3) / b + 1) * Math.sqrt(a * Math.PI / 2) * n;
+        double x = d * twoTail;
+        double y = Math.pow(x, 2 / n);
+        if (y > 0.05 + a) {
+            //Asymptotic inverse expansion about the normal
+            x = normalQuantile(twoTail / 2);
+            y = x * x;
+            if (degreesOfFreedom < 5)
+                c += 0.3 * (n - 4.5) * (x + 0.6);
+            c = (((0.05 * d * x - 5) * x - 7) * x - 2) * x + b + c;
+            y = (((((0.4 * y + 6.3) * y + 36) * y + 94.5) / c - y - 3) / b + 1) * x;
+            y = a * y * y;
+            y = y > 0.002 ? Math.exp(y) - 1 : 0.5 * y * y + y;
+        } else {
+            y = ((1 / (((n + 6) / (n * y) - 0.089 * d - 0.822) * (n + 2) * 3) + 0.5 / (n + 4)) * y - 1)
+                    * (n + 1) / (n + 2) + 1 / y;
+        }
+        return Math.sqrt(n * y);
+    }
+
+    /**
+     * Standard normal quantile, Acklam's rational approximation with one Newton refinement step
+     * @param p The lower tail probability, in (0, 1)
+     * @return The value z with P(Z <= z) = p
+     */
+    public static double normalQuantile(double p) {
+        if (p <= 0 || p >= 1)
+            throw new IllegalArgumentException("Invalid probability");
+        double low = 0.02425;
+        double x;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            x = (((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q
+                    - 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00)
+                    / ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q
+                    + 3.754408661907416e+00) * q + 1);
+        } else if (p <= 1 - low) {
+            double q = p - 0.5;
+            double r = q * q;
+            x = (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r
+                    + 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q
+                    / (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r
+                    + 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+        } else {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            x = -(((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q
+                    - 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00)
+                    / ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q
+                    + 3.754408661907416e+00) * q + 1);
+        }
+        //Newton step on the normal CDF
+        double error = 0.5 * erfc(-x / Math.sqrt(2)) - p;
+        double u = error * Math.sqrt(2 * Math.PI) * Math.exp(x * x / 2);
+        return x - u / (1 + x * u / 2);
+    }
+
+    /**
+     * Complementary error function, Numerical Recipes erfcc with fractional error below 1.2e-7
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double result = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2 - result;
+    }
+}
@@ -0,0 +1,47 @@
+package model;
+
+/**
+ * Routing that looks its decisions up in a RoutingTable
+ * The only mutable state is the table state number, so one table serves any number of runs.
+ */
+public class TableRouting implements Insp1Routing {
+    private final RoutingTable table;
+    private int state;
+
+    //Table of the last candidates routed, looked up again only when the candidates change
+    private int[] lastCandidates;
+    private int lastTable;
+
+    public TableRouting(RoutingTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public int determineDestination(int[] levels, int[] capacities, int[] candidates) {
+        if (candidates != lastCandidates) {
+            lastTable = table.findTable(candidates, capacities);
+            if (lastTable == -1)
+                throw new IllegalArgumentException("Routing table is for a different line");
+            lastCandidates = candidates;
+        }
+        int entry = table.getEntry(table.index(lastTable, state, levels));
+        state = RoutingTable.stateOf(entry);
+        return RoutingTable.choiceOf(entry);
+    }
+
+    public RoutingTable getTable() {
+        return table;
+    }
+
+    @Override
+    public long getState() {
+        return state;
+    }
+
+    @Override
+    public void setState(long state) {
+        if (state < 0 || state >= table.getStateCount())
+            throw new IllegalArgumentException("Invalid routing state");
+        this.state = (int) state;
+    }
+}
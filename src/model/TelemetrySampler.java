@@ -0,0 +1,72 @@
+package model;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a line of SimulationTelemetry progress at a fixed period, from its own daemon thread
+ * The event rate is over the last period, the estimated time left over the whole campaign.
+ */
+public class TelemetrySampler {
+    private final SimulationTelemetry telemetry;
+    private final PrintStream out;
+    private final ScheduledExecutorService timer;
+    private long lastEvents;
+    private long lastTime;
+
+    /**
+     * @param telemetry The counts to sample
+     * @param out Where to print the lines
+     */
+    public TelemetrySampler(SimulationTelemetry telemetry, PrintStream out) {
+        this.telemetry = telemetry;
+        this.out = out;
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "telemetry-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start printing
+     * @param seconds Period between lines
+     */
+    public void start(long seconds) {
+        if (seconds <= 0)
+            throw new IllegalArgumentException("Invalid period");
+        lastEvents = telemetry.getEventsProcessed();
+        lastTime = System.nanoTime();
+        timer.scheduleAtFixedRate(this::sample, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop printing, without a final line
+     */
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    private void sample() {
+        long events = telemetry.getEventsProcessed();
+        long time = System.nanoTime();
+        double rate = (events - lastEvents) / Math.max(1e-9, (time - lastTime) / 1e9);
+        lastEvents = events;
+        lastTime = time;
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("Progress: runs %d done, %d active, %d left; %,d events (%,.0f/s); %d pending; %.0f minutes simulated;",
+                telemetry.getRunsCompleted(), telemetry.getActiveRuns(), telemetry.getRunsRemaining(), events, rate,
+                telemetry.getPendingEvents(), telemetry.getSimulatedMinutes()));
+        for (Map.Entry<String, Long> product : telemetry.getProductsCompleted().entrySet()) {
+            line.append(' ').append(product.getKey()).append(' ').append(product.getValue());
+        }
+        double remaining = telemetry.getEstimatedSecondsRemaining();
+        if (remaining >= 0)
+            line.append(String.format("; ETA %d:%02d", (long) remaining / 60, (long) remaining % 60));
+        out.println(line);
+    }
+}
@@ -0,0 +1,78 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Prints a trace written by TraceWriter as the simulation state table
+ */
+public class TraceDecoder {
+    /**
+     * @param args The trace file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace file>");
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        decode(args[0], out);
+        out.flush();
+    }
+
+    /**
+     * Write the table of a trace
+     * @param file The trace file
+     * @param out Receives the header line and one row per record
+     * @return The number of records
+     * @throws IOException If the file can't be read or is not a trace
+     */
+    public static long decode(String file, Writer out) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)), 1 << 16))) {
+            if (in.readInt() != TraceWriter.MAGIC || in.readInt() != TraceWriter.VERSION)
+                throw new IOException("Not a simulation trace: " + file);
+            TraceLayout layout = TraceLayout.read(in);
+            out.write(layout.formatHeader());
+
+            int recordSize = layout.getRecordSize();
+            byte[] packed = new byte[0];
+            byte[] records = new byte[0];
+            long total = 0;
+            while (true) {
+                int count;
+                try {
+                    count = in.readInt();
+                } catch (EOFException e) {
+                    return total;
+                }
+                int length = in.readInt();
+                if (count < 0 || (long) count * recordSize > Integer.MAX_VALUE / 2 || length < 0
+                        || length > TraceWriter.maxPackedSize(count, recordSize))
+                    throw new IOException("Corrupt trace chunk");
+                if (packed.length < length)
+                    packed = new byte[length];
+                if (records.length < count * recordSize)
+                    records = new byte[count * recordSize];
+                in.readFully(packed, 0, length);
+                if (TraceWriter.unpack(packed, count, recordSize, records) != length)
+                    throw new IOException("Corrupt trace chunk");
+
+                ByteBuffer buffer = ByteBuffer.wrap(records).order(ByteOrder.LITTLE_ENDIAN);
+                for (int r = 0; r < count; r++) {
+                    buffer.position(r * recordSize);
+                    out.write(layout.formatRecord(buffer));
+                }
+                total += count;
+            }
+        }
+    }
+}
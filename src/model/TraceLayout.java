@@ -0,0 +1,214 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width binary record of the simulation state after an event, and the table it prints as
+ * A record is the event kind (0 before the first event, EventType ordinal + 1 after), the
+ * component inspected for arrivals, the inspector or workstation, the clock, then the count of
+ * each component, the level of each buffer and the count of each product. Each inspector and
+ * workstation follows with its active flag and its active time up to the event, its idle time
+ * is the clock less the active time. All values are little-endian.
+ */
+public class TraceLayout {
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final String[] componentNames;
+    private final String[] bufferNames;
+    private final String[] productNames;
+    private final String[] stationNames; //inspectors, then workstations
+    private final int inspectorCount;
+    private final int recordSize;
+    private final String header;
+    private final String rowFormat;
+
+    public TraceLayout(String[] componentNames, String[] bufferNames, String[] productNames, String[] stationNames, int inspectorCount) {
+        this.componentNames = componentNames;
+        this.bufferNames = bufferNames;
+        this.productNames = productNames;
+        this.stationNames = stationNames;
+        this.inspectorCount = inspectorCount;
+        recordSize = 1 + 4 + 4 + 8 + 4 * (componentNames.length + bufferNames.length + productNames.length) + 9 * stationNames.length;
+
+        //Same columns as the original fixed table, including the trailing "s" of its row format
+        StringBuilder headerFormat = new StringBuilder("%10s %5s %5s %10s |");
+        StringBuilder row = new StringBuilder("%10s %5s %5s %10.3f |");
+        String[] groups = {" %4s", " %4s", " %4s"};
+        int[] sizes = {componentNames.length, bufferNames.length, productNames.length};
+        for (int g = 0; g < groups.length; g++) {
+            for (int i = 0; i < sizes[g]; i++) {
+                headerFormat.append(groups[g]);
+                row.append(" %4d");
+            }
+            headerFormat.append(" |");
+            row.append(" |");
+        }
+        for (int s = 0; s < stationNames.length; s++) {
+            if (s == inspectorCount) {
+                headerFormat.append(" |");
+                row.append(" |");
+            }
+            headerFormat.append(" %10s");
+            row.append(" %10.3f");
+        }
+        headerFormat.append("\n");
+        row.append("s\n");
+        rowFormat = row.toString();
+
+        Object[] names = new Object[4 + componentNames.length + bufferNames.length + productNames.length + stationNames.length];
+        names[0] = "Event";
+        names[1] = "Comp";
+        names[2] = "Prod";
+        names[3] = "Clock";
+        int next = 4;
+        for (String name : componentNames) {
+            names[next++] = name;
+        }
+        for (String name : bufferNames) {
+            names[next++] = name;
+        }
+        for (String name : productNames) {
+            names[next++] = name;
+        }
+        for (String name : stationNames) {
+            names[next++] = name + " Idle";
+        }
+        header = String.format(headerFormat.toString(), names);
+    }
+
+    /**
+     * @return The layout of a line's state
+     */
+    public static TraceLayout of(LineModel model) {
+        String[] components = new String[model.getComponentCount()];
+        for (int c = 0; c < components.length; c++) {
+            components[c] = model.getComponentName(c);
+        }
+        String[] buffers = new String[model.getBufferCount()];
+        for (int b = 0; b < buffers.length; b++) {
+            buffers[b] = model.getBufferName(b);
+        }
+        String[] products = new String[model.getWorkstationCount()];
+        String[] stations = new String[model.getInspectorCount() + model.getWorkstationCount()];
+        for (int i = 0; i < model.getInspectorCount(); i++) {
+            stations[i] = model.getInspectorName(i);
+        }
+        for (int w = 0; w < products.length; w++) {
+            products[w] = model.getProductName(w);
+            stations[model.getInspectorCount() + w] = model.getWorkstationName(w);
+        }
+        return new TraceLayout(components, buffers, products, stations, model.getInspectorCount());
+    }
+
+    /**
+     * Read a layout written by write
+     */
+    public static TraceLayout read(DataInput in) throws IOException {
+        String[] components = readNames(in);
+        String[] buffers = readNames(in);
+        String[] products = readNames(in);
+        String[] stations = readNames(in);
+        int inspectorCount = in.readInt();
+        int recordSize = in.readInt();
+        TraceLayout layout = new TraceLayout(components, buffers, products, stations, inspectorCount);
+        if (layout.recordSize != recordSize)
+            throw new IOException("Trace record size mismatch");
+        return layout;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        writeNames(out, componentNames);
+        writeNames(out, bufferNames);
+        writeNames(out, productNames);
+        writeNames(out, stationNames);
+        out.writeInt(inspectorCount);
+        out.writeInt(recordSize);
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Encode a record at the position of a little-endian buffer
+     * @param eventType The event, null before the first event
+     * @param component The component inspected for arrivals, otherwise ignored
+     * @param entity The inspector for arrivals, the workstation for departures
+     * @param active Whether each inspector, then each workstation, is in an active period
+     * @param activeTime Time each station has been active up to the event
+     */
+    public void encode(ByteBuffer out, EventType eventType, int component, int entity, double clock,
+                       int[] components, int[] buffers, int[] products, boolean[] active, double[] activeTime) {
+        out.put(eventType == null ? 0 : (byte) (eventType.ordinal() + 1));
+        out.putInt(eventType == EventType.Arrival ? component : -1);
+        out.putInt(eventType == null ? -1 : entity);
+        out.putDouble(clock);
+        for (int value : components) {
+            out.putInt(value);
+        }
+        for (int value : buffers) {
+            out.putInt(value);
+        }
+        for (int value : products) {
+            out.putInt(value);
+        }
+        for (int s = 0; s < active.length; s++) {
+            out.put(active[s] ? (byte) 1 : 0);
+            out.putDouble(activeTime[s]);
+        }
+    }
+
+    /**
+     * @return The column header line of the table
+     */
+    public String formatHeader() {
+        return header;
+    }
+
+    /**
+     * Format the record at the position of a little-endian buffer as a table row
+     */
+    public String formatRecord(ByteBuffer in) {
+        Object[] values = new Object[4 + componentNames.length + bufferNames.length + productNames.length + stationNames.length];
+        int kind = in.get();
+        int component = in.getInt();
+        int entity = in.getInt();
+        EventType eventType = kind == 0 ? null : EVENT_TYPES[kind - 1];
+        values[0] = eventType == null ? "" : eventType.toString();
+        values[1] = eventType == EventType.Arrival ? componentNames[component] : "";
+        values[2] = eventType == EventType.Departure ? productNames[entity] : "";
+        double clock = in.getDouble();
+        values[3] = clock;
+        int next = 4;
+        int counts = componentNames.length + bufferNames.length + productNames.length;
+        for (int i = 0; i < counts; i++) {
+            values[next++] = in.getInt();
+        }
+        for (int i = 0; i < stationNames.length; i++) {
+            in.get(); //active flag
+            values[next++] = clock - in.getDouble();
+        }
+        return String.format(rowFormat, values);
+    }
+
+    private static void writeNames(DataOutput out, String[] names) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static String[] readNames(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > 1 << 16)
+            throw new IOException("Invalid trace header");
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,234 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the binary state trace of a run to a gzip file on a background thread
+ * Records are encoded into a ring of fixed chunks. Full chunks are handed to the writer thread,
+ * which delta-packs and compresses them and returns them to the ring; the simulation only waits
+ * when every chunk is still being written. Read the file back with TraceDecoder.
+ */
+public class TraceWriter implements Closeable {
+    static final int MAGIC = 0x53494d45; //"SIME"
+    static final int VERSION = 2;
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BYTES = 1 << 18;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final TraceLayout layout;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(CHUNKS);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(CHUNKS + 1);
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer chunk;
+    private boolean closed;
+
+    /**
+     * @param file The gzip file to write, replaced if it exists
+     * @param layout The record layout of the line
+     */
+    public TraceWriter(String file, TraceLayout layout) throws IOException {
+        this.layout = layout;
+        int records = Math.max(1, CHUNK_BYTES / layout.getRecordSize());
+        for (int i = 0; i < CHUNKS; i++) {
+            free.add(ByteBuffer.allocate(records * layout.getRecordSize()).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        chunk = free.remove();
+
+        //Fastest compression level, the trace is written as fast as the simulation runs
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)), 1 << 16) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        });
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            layout.write(out);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        writer = new Thread(() -> drain(out), "trace-writer " + file);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Append the state after an event, see TraceLayout.encode
+     */
+    public void record(EventType eventType, int component, int entity, double clock, int[] components, int[] buffers,
+                       int[] products, boolean[] active, double[] activeTime) {
+        if (chunk.remaining() < layout.getRecordSize())
+            handOff();
+        layout.encode(chunk, eventType, component, entity, clock, components, buffers, products, active, activeTime);
+    }
+
+    /**
+     * Write the remaining records and wait for the file to be complete
+     * @throws UncheckedIOException If writing failed
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        chunk.flip();
+        putUninterruptibly(full, chunk);
+        putUninterruptibly(full, END);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (failure != null)
+            throw new UncheckedIOException("Trace write failed", failure);
+    }
+
+    /**
+     * Pass the current chunk to the writer and take an empty one
+     */
+    private void handOff() {
+        if (failure != null)
+            throw new UncheckedIOException("Trace write failed", failure);
+        chunk.flip();
+        putUninterruptibly(full, chunk);
+        chunk = takeUninterruptibly(free);
+        chunk.clear();
+    }
+
+    /**
+     * Writer thread, compresses chunks until the end marker
+     * After a failure chunks are still returned, so the simulation never blocks on the writer
+     */
+    private void drain(DataOutputStream out) {
+        int recordSize = layout.getRecordSize();
+        byte[] packed = new byte[maxPackedSize(chunk.capacity() / recordSize, recordSize)];
+        while (true) {
+            ByteBuffer next = takeUninterruptibly(full);
+            if (next == END)
+                break;
+            if (failure == null) {
+                try {
+                    int records = next.limit() / recordSize;
+                    int length = pack(next.array(), records, recordSize, packed);
+                    out.writeInt(records);
+                    out.writeInt(length);
+                    out.write(packed, 0, length);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            free.add(next);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+    }
+
+    /**
+     * Delta-pack a chunk: each record is XORed with the one before, then written as a bitmap of
+     * its non-zero bytes followed by those bytes. Consecutive states differ in few bytes, so this
+     * leaves several times less for the compressor to work through.
+     * @param out At least maxPackedSize bytes
+     * @return The packed length
+     */
+    static int pack(byte[] records, int count, int recordSize, byte[] out) {
+        int bitmapSize = (recordSize + 7) >>> 3;
+        int length = 0;
+        for (int r = 0; r < count; r++) {
+            int offset = r * recordSize;
+            int bitmap = length;
+            length += bitmapSize;
+            for (int i = 0; i < bitmapSize; i++) {
+                out[bitmap + i] = 0;
+            }
+            for (int i = 0; i < recordSize; i++) {
+                byte delta = r == 0 ? records[offset + i] : (byte) (records[offset + i] ^ records[offset - recordSize + i]);
+                if (delta != 0) {
+                    out[bitmap + (i >>> 3)] |= (byte) (1 << (i & 7));
+                    out[length++] = delta;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Undo pack
+     * @param records Receives count records
+     * @return The packed bytes read
+     */
+    static int unpack(byte[] packed, int count, int recordSize, byte[] records) {
+        int bitmapSize = (recordSize + 7) >>> 3;
+        int position = 0;
+        for (int r = 0; r < count; r++) {
+            int offset = r * recordSize;
+            int bitmap = position;
+            position += bitmapSize;
+            for (int i = 0; i < recordSize; i++) {
+                byte previous = r == 0 ? 0 : records[offset - recordSize + i];
+                if ((packed[bitmap + (i >>> 3)] & (1 << (i & 7))) != 0)
+                    previous ^= packed[position++];
+                records[offset + i] = previous;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return Largest packed length of count records
+     */
+    static int maxPackedSize(int count, int recordSize) {
+        return count * (recordSize + ((recordSize + 7) >>> 3));
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T value) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(value);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bounded time series of cumulative output snapshots, used to pick the warm-up cutoff of a run
+ * A snapshot is taken every windowProducts departures. When the series is full every other
+ * snapshot is dropped and the window doubles, so memory stays fixed however long the run.
+ * The cutoff is chosen with MSER-5 (White, 1997) on the throughput and each inspector's busy
+ * fraction of batches of five windows, taking the latest of the truncation points.
+ */
+public class WarmupSeries {
+    private static final int BATCH_WINDOWS = 5;
+
+    private final int capacity;
+    private final int products;
+    private final int inspectors;
+    private int windowProducts;
+    private int count;
+
+    //Snapshot i is the state after i * windowProducts departures
+    private final double[] clock;
+    private final int[] productCounts; //products x capacity
+    private final double[] inspectorActive; //inspectors x capacity
+
+    /**
+     * @param capacity Maximum snapshots kept, at least 2 * BATCH_WINDOWS
+     * @param windowProducts Departures between snapshots at the start of the run
+     * @param products Number of product types of the line
+     * @param inspectors Number of inspectors of the line
+     */
+    public WarmupSeries(int capacity, int windowProducts, int products, int inspectors) {
+        if (capacity < 2 * BATCH_WINDOWS || windowProducts < 1)
+            throw new IllegalArgumentException("Invalid warm-up series size");
+        this.capacity = capacity;
+        this.windowProducts = windowProducts;
+        this.products = products;
+        this.inspectors = inspectors;
+        clock = new double[capacity];
+        productCounts = new int[capacity * products];
+        inspectorActive = new double[capacity * inspectors];
+        count = 1; //the empty system at time 0
+    }
+
+    /**
+     * @return The product count at which the next snapshot is due
+     */
+    public long getNextObservation() {
+        return (long) count * windowProducts;
+    }
+
+    /**
+     * Record a snapshot, called once the product count reaches getNextObservation()
+     * @param clock The simulation time
+     * @param numberProducts Products completed by each workstation
+     * @param active Time each inspector has spent inspecting
+     */
+    public void record(double clock, int[] numberProducts, double[] active) {
+        if (count == capacity)
+            compact();
+        this.clock[count] = clock;
+        System.arraycopy(numberProducts, 0, productCounts, count * products, products);
+        System.arraycopy(active, 0, inspectorActive, count * inspectors, inspectors);
+        count++;
+    }
+
+    /**
+     * Choose the truncation point
+     * @return Index of the snapshot to measure from, 0 to keep the whole run
+     */
+    public int detectCutoff() {
+        int batches = (count - 1) / BATCH_WINDOWS;
+        if (batches < 2)
+            return 0;
+
+        double[] throughput = new double[batches];
+        double[] busy = new double[batches];
+        for (int k = 0; k < batches; k++) {
+            int from = k * BATCH_WINDOWS;
+            int to = from + BATCH_WINDOWS;
+            throughput[k] = (getProducts(to) - getProducts(from)) / (clock[to] - clock[from]);
+        }
+        int cutoff = mser(throughput);
+        for (int i = 0; i < inspectors; i++) {
+            for (int k = 0; k < batches; k++) {
+                int from = k * BATCH_WINDOWS;
+                int to = from + BATCH_WINDOWS;
+                busy[k] = (getInspectorActive(to, i) - getInspectorActive(from, i)) / (clock[to] - clock[from]);
+            }
+            cutoff = Math.max(cutoff, mser(busy));
+        }
+        return cutoff * BATCH_WINDOWS;
+    }
+
+    /**
+     * Marginal standard error rule
+     * @param series The batch means
+     * @return The number of leading batches minimizing the squared standard error of the rest,
+     * searched over the first half of the series
+     */
+    static int mser(double[] series) {
+        int n = series.length;
+        //Suffix sums so every truncation point is O(1)
+        double[] sum = new double[n + 1];
+        double[] sumSquares = new double[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            sum[i] = sum[i + 1] + series[i];
+            sumSquares[i] = sumSquares[i + 1] + series[i] * series[i];
+        }
+
+        int best = 0;
+        double bestStatistic = Double.POSITIVE_INFINITY;
+        for (int d = 0; d <= n / 2; d++) {
+            int remaining = n - d;
+            double mean = sum[d] / remaining;
+            double squares = Math.max(0, sumSquares[d] - remaining * mean * mean);
+            double statistic = squares / ((double) remaining * remaining);
+            if (statistic < bestStatistic) {
+                bestStatistic = statistic;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Total products completed at a snapshot
+     */
+    public int getProducts(int index) {
+        int total = 0;
+        for (int w = 0; w < products; w++) {
+            total += productCounts[index * products + w];
+        }
+        return total;
+    }
+
+    public int getProducts(int index, int product) {
+        return productCounts[index * products + product];
+    }
+
+    public double getClock(int index) {
+        return clock[index];
+    }
+
+    public double getInspectorActive(int index, int inspector) {
+        return inspectorActive[index * inspectors + inspector];
+    }
+
+    /**
+     * Save the snapshots taken so far, see readState
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(windowProducts);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(clock[i]);
+            for (int w = 0; w < products; w++) {
+                out.writeInt(productCounts[i * products + w]);
+            }
+            for (int n = 0; n < inspectors; n++) {
+                out.writeDouble(inspectorActive[i * inspectors + n]);
+            }
+        }
+    }
+
+    /**
+     * Continue from snapshots saved by writeState, for a series of the same size
+     */
+    public void readState(DataInput in) throws IOException {
+        int window = in.readInt();
+        int snapshots = in.readInt();
+        if (window < 1 || snapshots < 1 || snapshots > capacity)
+            throw new IOException("Invalid warm-up series state");
+        windowProducts = window;
+        count = snapshots;
+        for (int i = 0; i < count; i++) {
+            clock[i] = in.readDouble();
+            for (int w = 0; w < products; w++) {
+                productCounts[i * products + w] = in.readInt();
+            }
+            for (int n = 0; n < inspectors; n++) {
+                inspectorActive[i * inspectors + n] = in.readDouble();
+            }
+        }
+    }
+
+    /**
+     * Keep every other snapshot and double the window
+     */
+    private void compact() {
+        int kept = (count + 1) / 2;
+        for (int i = 1; i < kept; i++) {
+            clock[i] = clock[2 * i];
+            System.arraycopy(productCounts, 2 * i * products, productCounts, i * products, products);
+            System.arraycopy(inspectorActive, 2 * i * inspectors, inspectorActive, i * inspectors, inspectors);
+        }
+        count = kept;
+        windowProducts *= 2;
+    }
+}
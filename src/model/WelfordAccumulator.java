@@ -0,0 +1,68 @@
+package model;
+
+/**
+ * Streaming mean and variance of a series of observations (Welford's method)
+ */
+public class WelfordAccumulator {
+    private long count;
+    private double mean;
+    private double sumSquares; //sum of squared differences from the mean
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        sumSquares += delta * (value - mean);
+    }
+
+    /**
+     * Combine the observations of another accumulator into this one (Chan et al.)
+     * @param other The accumulator to merge
+     */
+    public void merge(WelfordAccumulator other) {
+        if (other.count == 0)
+            return;
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        sumSquares += other.sumSquares + delta * delta * ((double) count * other.count / total);
+        count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance, NaN with fewer than two observations
+     */
+    public double getVariance() {
+        return count > 1 ? sumSquares / (count - 1) : Double.NaN;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Half-width of the Student-t confidence interval of the mean
+     * @param confidence The confidence level, e.g. 0.95
+     * @return The half-width, NaN with fewer than two observations
+     */
+    public double getHalfWidth(double confidence) {
+        if (count < 2)
+            return Double.NaN;
+        return StudentT.quantile(1 - (1 - confidence) / 2, count - 1) * Math.sqrt(getVariance() / count);
+    }
+
+    /**
+     * @return The half-width divided by the magnitude of the mean
+     */
+    public double getRelativeHalfWidth(double confidence) {
+        return getHalfWidth(confidence) / Math.abs(mean);
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static model.SimulationTestSupport.ROUTINGS;
+import static model.SimulationTestSupport.raw;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchSimulationTest {
+    /**
+     * Every replication of a batch ends exactly as the same scenario run alone
+     * The historical data has times on a coarse grid, so it is where simultaneous events show up.
+     */
+    @Test
+    void matchesSimulation() {
+        for (Supplier<Insp1Routing> routing : ROUTINGS) {
+            for (boolean useInitialization : new boolean[]{false, true}) {
+                List<SimulationScenario> scenarios = new ArrayList<>();
+                scenarios.add(new SimulationScenario(0, 20000, routing, true, false, useInitialization));
+                for (long seed = 0; seed < 5; seed++) {
+                    scenarios.add(new SimulationScenario(seed, 20000, routing, false, false, useInitialization));
+                }
+                List<SimulationOutput> outputs = new BatchSimulation(scenarios).runSimulation();
+                for (int r = 0; r < scenarios.size(); r++) {
+                    assertEquals(raw(new Simulation(scenarios.get(r)).runSimulation()), raw(outputs.get(r)), "replication " + r);
+                }
+            }
+        }
+    }
+}
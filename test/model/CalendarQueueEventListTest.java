@@ -0,0 +1,133 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static model.SimulationTestSupport.ROUTINGS;
+import static model.SimulationTestSupport.raw;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CalendarQueueEventListTest {
+    /**
+     * Queue random events in both lists, polling as the simulation does, and compare every poll
+     */
+    @Test
+    void pollsInHeapOrder() {
+        Random random = new Random(1);
+        FutureEventList calendar = new CalendarQueueEventList();
+        FutureEventList heap = new HeapEventList();
+        double clock = 0;
+        for (int step = 0; step < 100000; step++) {
+            int adds = random.nextInt(3);
+            for (int a = 0; a < adds; a++) {
+                add(calendar, heap, clock + random.nextDouble() * 10, random);
+            }
+            if (random.nextInt(4) != 0)
+                clock = pollBoth(calendar, heap, clock);
+        }
+        drain(calendar, heap, clock);
+    }
+
+    /**
+     * Drain both lists part way through and queue the events again, as a checkpoint does
+     */
+    @Test
+    void pollsInHeapOrderAfterRefilling() {
+        Random random = new Random(2);
+        FutureEventList calendar = new CalendarQueueEventList();
+        FutureEventList heap = new HeapEventList();
+        double clock = 0;
+        for (int e = 0; e < 40; e++) {
+            add(calendar, heap, random.nextDouble() * 5, random);
+        }
+        for (int round = 0; round < 200; round++) {
+            for (int step = 0; step < 500; step++) {
+                add(calendar, heap, clock + random.nextDouble() * 5, random);
+                clock = pollBoth(calendar, heap, clock);
+            }
+            int pending = heap.size();
+            double[] times = new double[pending];
+            int[] kinds = new int[pending];
+            int[] entities = new int[pending];
+            for (int e = 0; e < pending; e++) {
+                calendar.poll();
+                heap.poll();
+                times[e] = heap.getPolledTime();
+                kinds[e] = heap.getPolledKind();
+                entities[e] = heap.getPolledEntity();
+            }
+            for (int e = 0; e < pending; e++) {
+                calendar.add(times[e], kinds[e], entities[e]);
+                heap.add(times[e], kinds[e], entities[e]);
+            }
+        }
+        drain(calendar, heap, clock);
+    }
+
+    /**
+     * Reuse both lists after clearing, starting over from time zero
+     */
+    @Test
+    void pollsInHeapOrderAfterClear() {
+        Random random = new Random(3);
+        FutureEventList calendar = new CalendarQueueEventList();
+        FutureEventList heap = new HeapEventList();
+        for (int round = 0; round < 20; round++) {
+            double clock = 0;
+            for (int step = 0; step < 2000; step++) {
+                add(calendar, heap, clock + random.nextDouble() * (round + 1), random);
+                add(calendar, heap, clock + random.nextDouble() * (round + 1), random);
+                clock = pollBoth(calendar, heap, clock);
+            }
+            calendar.clear();
+            heap.clear();
+            assertEquals(0, calendar.size());
+        }
+    }
+
+    /**
+     * Whole runs on the calendar queue end exactly as on the heap, including the historical data
+     */
+    @Test
+    void simulationMatchesHeap() {
+        for (Supplier<Insp1Routing> routing : ROUTINGS) {
+            for (long seed = -1; seed < 3; seed++) {
+                boolean historical = seed < 0;
+                SimulationScenario scenario = new SimulationScenario(historical ? 0 : seed, 20000, routing, historical, false, seed == 1);
+                String expected = raw(new Simulation(scenario).runSimulation());
+                scenario.setEventList(CalendarQueueEventList::new);
+                assertEquals(expected, raw(new Simulation(scenario).runSimulation()));
+            }
+        }
+    }
+
+    private static void add(FutureEventList calendar, FutureEventList heap, double time, Random random) {
+        //Coarse times so some events tie
+        time = Math.floor(time * 8) / 8;
+        int kind = random.nextInt(2);
+        int entity = random.nextInt(5);
+        calendar.add(time, kind, entity);
+        heap.add(time, kind, entity);
+    }
+
+    private static double pollBoth(FutureEventList calendar, FutureEventList heap, double clock) {
+        boolean polled = heap.poll();
+        assertEquals(polled, calendar.poll());
+        if (!polled)
+            return clock;
+        assertEquals(heap.getPolledTime(), calendar.getPolledTime());
+        assertEquals(heap.getPolledKind(), calendar.getPolledKind());
+        assertEquals(heap.getPolledEntity(), calendar.getPolledEntity());
+        assertEquals(heap.size(), calendar.size());
+        return heap.getPolledTime();
+    }
+
+    private static void drain(FutureEventList calendar, FutureEventList heap, double clock) {
+        while (heap.size() > 0) {
+            clock = pollBoth(calendar, heap, clock);
+        }
+        assertEquals(false, calendar.poll());
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoricalTraceTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void readsThroughSidecar() throws IOException {
+        File text = write("1.5 2.25\n3\n");
+        assertSamples(HistoricalTrace.load(text.getPath()), 1.5, 2.25, 3);
+        assertTrue(new File(text.getPath() + ".bin").isFile());
+        assertSamples(HistoricalTrace.load(text.getPath()), 1.5, 2.25, 3);
+    }
+
+    /**
+     * A sidecar that can't be written, here because a directory is in the way, leaves the samples in memory
+     */
+    @Test
+    void parsesIntoMemoryWithoutSidecar() throws IOException {
+        File text = write("1.5 2.25\n3\n");
+        assertTrue(new File(text.getPath() + ".bin.tmp").mkdir());
+        assertSamples(HistoricalTrace.load(text.getPath()), 1.5, 2.25, 3);
+        assertTrue(!new File(text.getPath() + ".bin").exists());
+    }
+
+    @Test
+    void keepsSamplesBeforeInvalidNumber() throws IOException {
+        File text = write("1.5 2.25 x 3\n");
+        assertSamples(HistoricalTrace.load(text.getPath()), 1.5, 2.25);
+        assertTrue(!new File(text.getPath() + ".bin").exists());
+    }
+
+    private File write(String content) throws IOException {
+        File text = new File(directory, "service.dat");
+        Files.write(text.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return text;
+    }
+
+    private static void assertSamples(HistoricalTrace trace, double... expected) {
+        assertEquals(expected.length, trace.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], trace.get(i));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import static model.SimulationTestSupport.ROUTINGS;
+import static model.SimulationTestSupport.raw;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModelCompilerTest {
+    /**
+     * The compiled built-in line ends exactly as Simulation, on seeded runs and the historical data
+     */
+    @Test
+    void builtInMatchesSimulation() {
+        LineModel model = LineModel.builtIn();
+        for (Supplier<Insp1Routing> routing : ROUTINGS) {
+            CompiledLine line = ModelCompiler.compile(model, routing);
+            for (boolean useInitialization : new boolean[]{false, true}) {
+                assertCompiledMatches(model, line, new SimulationScenario(0, 20000, routing, true, false, useInitialization));
+                for (long seed = 0; seed < 3; seed++) {
+                    assertCompiledMatches(model, line, new SimulationScenario(seed, 20000, routing, false, false, useInitialization));
+                }
+            }
+        }
+    }
+
+    /**
+     * Lines described in a configuration file, including changed capacities, compile to the same runs
+     */
+    @Test
+    void configuredLinesMatchSimulation() throws IOException {
+        LineConfiguration base = LineConfiguration.load("line.properties");
+        LineModel[] models = {base.compile(), base.withCapacity(0, 4).withCapacity(2, 1).compile(), base.withBufferCapacity(1, 0, 3).compile()};
+        for (LineModel model : models) {
+            for (Supplier<Insp1Routing> routing : ROUTINGS) {
+                CompiledLine line = ModelCompiler.compile(model, routing);
+                for (long seed = 0; seed < 2; seed++) {
+                    assertCompiledMatches(model, line, new SimulationScenario(seed, 20000, routing, false, false, seed == 1));
+                }
+            }
+        }
+    }
+
+    private static void assertCompiledMatches(LineModel model, CompiledLine line, SimulationScenario scenario) {
+        scenario.setModel(model);
+        assertEquals(raw(new Simulation(scenario).runSimulation()), raw(line.create(scenario).runSimulation()));
+    }
+}
@@ -0,0 +1,64 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static model.SimulationTestSupport.ROUTINGS;
+import static model.SimulationTestSupport.raw;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimulationCheckpointTest {
+    private static final List<Supplier<FutureEventList>> EVENT_LISTS = Arrays.asList(HeapEventList::new, CalendarQueueEventList::new);
+
+    @TempDir
+    File directory;
+
+    /**
+     * Saving checkpoints along the way must not change the run
+     */
+    @Test
+    void checkpointsLeaveRunUnchanged() {
+        for (Supplier<FutureEventList> eventList : EVENT_LISTS) {
+            for (Supplier<Insp1Routing> routing : ROUTINGS) {
+                for (long seed = 0; seed < 5; seed++) {
+                    SimulationScenario scenario = scenario(seed, routing, eventList);
+                    String expected = raw(new Simulation(scenario).runSimulation());
+                    SimulationScenario checkpointed = new SimulationScenario(scenario);
+                    checkpointed.setCheckpointFile(new File(directory, "run.ckpt").getPath(), 1000);
+                    assertEquals(expected, raw(new Simulation(checkpointed).runSimulation()));
+                }
+            }
+        }
+    }
+
+    /**
+     * A run restored from a checkpoint ends exactly as the run would have without the interruption
+     */
+    @Test
+    void restoreContinuesRun() {
+        for (Supplier<FutureEventList> eventList : EVENT_LISTS) {
+            for (Supplier<Insp1Routing> routing : ROUTINGS) {
+                for (long seed = 0; seed < 5; seed++) {
+                    SimulationScenario scenario = scenario(seed, routing, eventList);
+                    String expected = raw(new Simulation(scenario).runSimulation());
+                    Simulation interrupted = new Simulation(scenario);
+                    interrupted.runUntil(7000);
+                    SimulationCheckpoint checkpoint = SimulationCheckpoint.fromByteArray(interrupted.checkpoint().toByteArray());
+                    assertEquals(expected, raw(Simulation.restore(scenario, checkpoint).runSimulation()));
+                    assertEquals(expected, raw(interrupted.runSimulation()));
+                }
+            }
+        }
+    }
+
+    private static SimulationScenario scenario(long seed, Supplier<Insp1Routing> routing, Supplier<FutureEventList> eventList) {
+        SimulationScenario scenario = new SimulationScenario(seed, 20000, routing, false, false, true);
+        scenario.setEventList(eventList);
+        return scenario;
+    }
+}
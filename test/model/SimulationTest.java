@@ -0,0 +1,49 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimulationTest {
+    /**
+     * Outputs of the built-in line from the original hard-coded model, before the line was described as data
+     * Columns are the seed (-1 for the historical data), clock, P1 to P3 throughput and inspector 1 and 2 idle.
+     */
+    private static final double[][] P1_FIRST = {
+            {0, 206912.62345467025, 0.08521471385172767, 0.005688391458908999, 0.005756052869635189, 5.146009077772337E-5, 0.7930514780166789},
+            {1234, 208759.21957731966, 0.08438429706562223, 0.005906325969681664, 0.005513528946556039, 0.0, 0.7980553820136987},
+            {-1, 207121.64800000738, 0.08688130948050085, 0.004789455904676679, 0.004890845596207133, 0.0, 0.826315402820663},
+    };
+    private static final double[][] ROTATING_PRIORITY = {
+            {0, 206991.3218226717, 0.048755667199641146, 0.024141108699624138, 0.023725632344177336, 2.726222996195785E-4, 0.11532852377213741},
+            {1234, 208880.1011684154, 0.048046702121750676, 0.024071225415321085, 0.023630781354420222, 3.93829715917299E-4, 0.1146640968511004},
+            {-1, 207116.13200000735, 0.04787652175736677, 0.024512817765444846, 0.0241748431261734, 0.0, 0.10321275698601998},
+    };
+
+    @Test
+    void matchesOriginalModelP1First() {
+        assertOriginalOutputs(Insp1RoutingP1First::new, P1_FIRST);
+    }
+
+    @Test
+    void matchesOriginalModelRotatingPriority() {
+        assertOriginalOutputs(Insp1RoutingRotatingPriority::new, ROTATING_PRIORITY);
+    }
+
+    private static void assertOriginalOutputs(Supplier<Insp1Routing> routing, double[][] expected) {
+        for (double[] row : expected) {
+            boolean historical = row[0] < 0;
+            SimulationScenario scenario = new SimulationScenario(historical ? 0 : (long) row[0], 20000, routing, historical, false, false);
+            SimulationOutput output = new Simulation(scenario).runSimulation();
+            assertEquals(row[1], output.getClock());
+            for (int w = 0; w < 3; w++) {
+                assertEquals(row[2 + w], output.getThroughput(w), "throughput " + w);
+            }
+            for (int i = 0; i < 2; i++) {
+                assertEquals(row[5 + i], output.getInspectorIdle(i), "idle " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Scaffolding shared by the tests comparing engines and event lists with Simulation
+ */
+final class SimulationTestSupport {
+    static final List<Supplier<Insp1Routing>> ROUTINGS = Arrays.asList(Insp1RoutingP1First::new, Insp1RoutingRotatingPriority::new);
+
+    private SimulationTestSupport() {
+    }
+
+    /**
+     * @return The raw output row of a run, compared as text so every printed digit must match
+     */
+    static String raw(SimulationOutput output) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.printRawOutput(new PrintStream(bytes));
+        return bytes.toString();
+    }
+}